@@ -3,38 +3,87 @@ package com.optit;
 import java.awt.EventQueue;
 import java.awt.HeadlessException;
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.zip.ZipException;
 
 import javax.swing.JFrame;
 
+import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.ASTVisitor;
 import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
 import org.eclipse.jdt.core.dom.MethodDeclaration;
-import org.eclipse.jdt.core.dom.TypeDeclaration;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
 
 import com.optit.gui.ClassFinderGui;
+import com.optit.index.ArchiveClassReader;
+import com.optit.index.ClassIndex;
+import com.optit.index.DependencyGraph;
+import com.optit.index.IndexWatcher;
+import com.optit.index.TypeHierarchy;
 import com.optit.logger.CommandLineLogger;
+import com.optit.logger.CountingLogger;
 import com.optit.logger.Logger;
+import com.optit.logger.RecordingLogger;
+import com.optit.matcher.AnnotationQuery;
+import com.optit.matcher.ClassNameMatcher;
+import com.optit.matcher.MemberQuery;
+import com.optit.matcher.MultiNameMatcher;
+import com.optit.matcher.NameMatcher;
+import com.optit.matcher.PatternMatcher;
+import com.optit.matcher.ReferenceQuery;
+import com.optit.server.ClassFinderClient;
+import com.optit.server.ClassFinderServer;
+import com.optit.zip.ArchiveCursor;
+import com.optit.zip.CentralDirectory;
 import com.sun.tools.classfile.AccessFlags;
 import com.sun.tools.classfile.Attribute;
 import com.sun.tools.classfile.ClassFile;
 import com.sun.tools.classfile.ConstantPool;
 import com.sun.tools.classfile.ConstantPoolException;
+import com.sun.tools.classfile.Dependencies;
+import com.sun.tools.classfile.Dependencies.ClassFileNotFoundException;
+import com.sun.tools.classfile.Dependency;
 import com.sun.tools.classfile.Descriptor;
 import com.sun.tools.classfile.Descriptor.InvalidDescriptor;
 import com.sun.tools.classfile.DescriptorException;
 import com.sun.tools.classfile.Exceptions_attribute;
+import com.sun.tools.classfile.Field;
 import com.sun.tools.classfile.Method;
 import com.sun.tools.classfile.Signature;
 import com.sun.tools.classfile.Signature_attribute;
@@ -42,10 +91,93 @@ import com.sun.tools.classfile.Type;
 
 public class ClassFinder implements Runnable
 {
+	// Files found by the directory walker wait here for the search threads.
+	// Bounded, so the walker can't run away from the search on huge trees.
+	private static final int QUEUE_SIZE = 1024;
+	// Marks the end of the file queue
+	private static final File END_OF_FILES = new File("");
+	// The attributes of a member writeMethod() and writeField() need, all
+	// others are skipped
+	private static final String[] MEMBER_ATTRIBUTES = { Attribute.Signature,
+			Attribute.Exceptions };
+	// References are also searched for in the code of the methods
+	private static final String[] REFERENCE_ATTRIBUTES = { Attribute.Code,
+			Attribute.Signature, Attribute.Exceptions };
+	// Only the annotations are decoded on top of the member attributes
+	private static final String[] ANNOTATION_ATTRIBUTES = {
+			Attribute.RuntimeVisibleAnnotations,
+			Attribute.RuntimeInvisibleAnnotations, Attribute.Signature,
+			Attribute.Exceptions };
+	// Bound of the parsed classes and of the inflated nested archives kept
+	// while the dependency graph is built
+	private static final long GRAPH_CACHE_SIZE = 16 << 20;
+
 	private Properties parameters;
 	private LinkedList<File> files = new LinkedList<File>();
+	private BlockingQueue<File> queue;
 	private Logger logger;
-	private ASTParser astParser;
+	private ClassIndex index;
+	private boolean sharedIndex;
+
+
+	// Search criteria, set up once per search and shared by all search threads
+	private NameMatcher matcher;
+	private boolean searchNested;
+	// The members looked up in matching classes, null if only classes are
+	// searched for
+	private MemberQuery memberQuery;
+	// The class or member matching classes have to reference, null if none
+	private ReferenceQuery referenceQuery;
+	// The annotations matching classes or their members have to carry, null
+	// if none
+	private AnnotationQuery annotationQuery;
+	// Collects the supertypes of all classes when the type hierarchy is
+	// searched, null otherwise
+	private TypeHierarchy hierarchy;
+	// Serves the supertypes of the classes of archives, the index or one
+	// only kept for this search
+	private ClassIndex typeIndex;
+	// Early termination: counts the findings against the limit, the search
+	// stops once it is reached or the deadline has passed
+	private CountingLogger counter;
+	private long deadline;
+	private volatile boolean stopped;
+	// Archives searched so far by their fingerprint, identical copies only
+	// get searched once
+	private ConcurrentHashMap<String, ScannedArchive> scannedArchives;
+	// Class files of archives get inflated into one buffer per search thread
+	private final ThreadLocal<byte[]> inflateBuffer = new ThreadLocal<byte[]>();
+	// Idle ASTParsers. A parser isn't thread safe, each parse borrows one,
+	// so sources get parsed by all search threads at once. There are never
+	// more parsers than search threads, they are dropped after the search.
+	private final ConcurrentLinkedQueue<ASTParser> astParsers = new ConcurrentLinkedQueue<ASTParser>();
+
+	/**
+	 * An archive that is or has been searched. The thread that searches it
+	 * records the findings, threads coming across an identical copy wait for
+	 * them and report them for their copy.
+	 */
+	private static class ScannedArchive
+	{
+		private final CountDownLatch done = new CountDownLatch(1);
+		private RecordingLogger found;
+
+		/**
+		 * @return The findings, null if the search failed
+		 */
+		private RecordingLogger await()
+		{
+			try
+			{
+				done.await();
+			} catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return null;
+			}
+			return found;
+		}
+	}
 
 	public ClassFinder()
 	{
@@ -69,7 +201,34 @@ public class ClassFinder implements Runnable
 			// Parsing of arguments was successful
 			if (finder.parseArguments(args))
 			{
+				if (finder.parameters.getProperty(Parameters.server) != null)
+				{
+					finder.runServer();
+					return;
+				}
+				else if (finder.parameters.getProperty(Parameters.port) != null)
+				{
+					System.exit(finder.runClient(args));
+				}
+				else if (finder.parameters.getProperty(Parameters.watch) != null)
+				{
+					finder.runWatcher();
+					return;
+				}
+				else if (finder.parameters
+						.getProperty(Parameters.dependencyGraph) != null)
+				{
+					finder.runDependencyGraph();
+					return;
+				}
 				finder.findClass();
+				// Scripts only checking whether a class exists get the answer
+				// from the exit code
+				if (finder.parameters.getProperty(Parameters.exists).equals(
+						"true"))
+				{
+					System.exit(finder.getMatchCount() > 0 ? 0 : 1);
+				}
 			}
 			// Parsing of arguments was not successful, print help and exit
 			else
@@ -139,6 +298,18 @@ public class ClassFinder implements Runnable
 			parameters.setProperty(Parameters.recursiveSearch, "false");
 			parameters.setProperty(Parameters.verbose, "false");
 			parameters.setProperty(Parameters.matchMethodName, "");
+			parameters.setProperty(Parameters.matchFieldName, "");
+			parameters.setProperty(Parameters.memberDescriptor, "");
+			parameters.setProperty(Parameters.referencesTo, "");
+			parameters.setProperty(Parameters.annotatedWith, "");
+			parameters.setProperty(Parameters.subtypesOf, "");
+			parameters.setProperty(Parameters.supertypesOf, "");
+			parameters.setProperty(Parameters.threads, "1");
+			parameters.setProperty(Parameters.searchNested, "false");
+			parameters.setProperty(Parameters.regex, "false");
+			parameters.setProperty(Parameters.limit, "0");
+			parameters.setProperty(Parameters.timeBudget, "0");
+			parameters.setProperty(Parameters.exists, "false");
 
 			for(int i = 0;i < args.length;i++)
 			{
@@ -148,13 +319,70 @@ public class ClassFinder implements Runnable
 				}
 				else if (args[i].equals(Parameters.classname))
 				{
-					parameters.setProperty(Parameters.classname, args[++i]);
+					// Several class names get searched for in one go
+					addClassnames(args[++i]);
+				}
+				else if (args[i].equals(Parameters.classnameFile))
+				{
+					String file = args[++i];
+					try
+					{
+						readClassnames(new File(file));
+					} catch (IOException e)
+					{
+						logger.log("Error reading class names from " + file
+								+ ": " + e.getMessage());
+						logger.log();
+						return false;
+					}
 				}
 				else if (args[i].equals(Parameters.matchMethodName))
 				{
 					parameters.setProperty(Parameters.matchMethodName,
 							args[++i]);
 				}
+				else if (args[i].equals(Parameters.matchFieldName))
+				{
+					parameters.setProperty(Parameters.matchFieldName,
+							args[++i]);
+				}
+				else if (args[i].equals(Parameters.memberDescriptor))
+				{
+					parameters.setProperty(Parameters.memberDescriptor,
+							args[++i]);
+				}
+				else if (args[i].equals(Parameters.referencesTo))
+				{
+					parameters.setProperty(Parameters.referencesTo, args[++i]);
+				}
+				else if (args[i].equals(Parameters.annotatedWith))
+				{
+					parameters.setProperty(Parameters.annotatedWith, args[++i]);
+				}
+				else if (args[i].equals(Parameters.subtypesOf))
+				{
+					parameters.setProperty(Parameters.subtypesOf, args[++i]);
+				}
+				else if (args[i].equals(Parameters.supertypesOf))
+				{
+					parameters.setProperty(Parameters.supertypesOf, args[++i]);
+				}
+				else if (args[i].equals(Parameters.dependencyGraph))
+				{
+					parameters.setProperty(Parameters.dependencyGraph,
+							args[++i]);
+				}
+				else if (args[i].equals(Parameters.apiAccess))
+				{
+					String access = args[++i];
+					if (toAccessFlag(access) == -1)
+					{
+						logger.log("Invalid access: " + access);
+						logger.log();
+						return false;
+					}
+					parameters.setProperty(Parameters.apiAccess, access);
+				}
 				else if (args[i].equals(Parameters.matchCase))
 				{
 					parameters.setProperty(Parameters.matchCase, "true");
@@ -167,6 +395,79 @@ public class ClassFinder implements Runnable
 				{
 					parameters.setProperty(Parameters.verbose, "true");
 				}
+				else if (args[i].equals(Parameters.searchNested))
+				{
+					parameters.setProperty(Parameters.searchNested, "true");
+				}
+				else if (args[i].equals(Parameters.regex))
+				{
+					parameters.setProperty(Parameters.regex, "true");
+				}
+				else if (args[i].equals(Parameters.index))
+				{
+					parameters.setProperty(Parameters.index, args[++i]);
+				}
+				else if (args[i].equals(Parameters.threads))
+				{
+					String threads = args[++i];
+					if (!isPositiveNumber(threads))
+					{
+						logger.log("Invalid number of threads: " + threads);
+						logger.log();
+						return false;
+					}
+					parameters.setProperty(Parameters.threads, threads);
+				}
+				else if (args[i].equals(Parameters.limit))
+				{
+					String limit = args[++i];
+					if (!isPositiveNumber(limit))
+					{
+						logger.log("Invalid number of matches: " + limit);
+						logger.log();
+						return false;
+					}
+					parameters.setProperty(Parameters.limit, limit);
+				}
+				else if (args[i].equals(Parameters.timeBudget))
+				{
+					String timeBudget = args[++i];
+					if (!isPositiveNumber(timeBudget))
+					{
+						logger.log("Invalid time budget: " + timeBudget);
+						logger.log();
+						return false;
+					}
+					parameters.setProperty(Parameters.timeBudget, timeBudget);
+				}
+				else if (args[i].equals(Parameters.exists))
+				{
+					parameters.setProperty(Parameters.exists, "true");
+				}
+				else if (args[i].equals(Parameters.server)
+						|| args[i].equals(Parameters.port))
+				{
+					String parameter = args[i];
+					String port = args[++i];
+					if (!isPositiveNumber(port))
+					{
+						logger.log("Invalid port: " + port);
+						logger.log();
+						return false;
+					}
+					parameters.setProperty(parameter, port);
+				}
+				else if (args[i].equals(Parameters.watch))
+				{
+					String interval = args[++i];
+					if (!isPositiveNumber(interval))
+					{
+						logger.log("Invalid watch interval: " + interval);
+						logger.log();
+						return false;
+					}
+					parameters.setProperty(Parameters.watch, interval);
+				}
 				else if (args[i].equals(Parameters.directory)
 						|| args[i].equals(Parameters.directory)
 						|| args[i].equals(Parameters.directory)
@@ -183,27 +484,212 @@ public class ClassFinder implements Runnable
 					return false;
 				}
 			}
+
+			if (!parameters.getProperty(Parameters.referencesTo).equals("")
+					&& !parameters.getProperty(Parameters.annotatedWith)
+							.equals(""))
+			{
+				logger.log("References and annotations can't be searched for at once");
+				logger.log();
+				return false;
+			}
+			if ((!parameters.getProperty(Parameters.subtypesOf).equals("") || !parameters
+					.getProperty(Parameters.supertypesOf).equals(""))
+					&& lookupMembersRequested())
+			{
+				logger.log("The type hierarchy can't be searched for together with members, references or annotations");
+				logger.log();
+				return false;
+			}
+			if (parameters.getProperty(Parameters.dependencyGraph) != null
+					&& (lookupMembersRequested()
+							|| !parameters.getProperty(Parameters.subtypesOf)
+									.equals("") || !parameters.getProperty(
+							Parameters.supertypesOf).equals("")))
+			{
+				logger.log("The dependency graph can't be written together with a search for members, references, annotations or types");
+				logger.log();
+				return false;
+			}
+			if (parameters.getProperty(Parameters.apiAccess) != null
+					&& parameters.getProperty(Parameters.dependencyGraph) == null)
+			{
+				logger.log("The access only applies to the dependency graph (-j)");
+				logger.log();
+				return false;
+			}
+
+			// Only the searches for members, references, annotations and types
+			// default to all classes
+			if (parameters.getProperty(Parameters.classname) == null
+					&& !lookupMembersRequested()
+					&& parameters.getProperty(Parameters.subtypesOf).equals("")
+					&& parameters.getProperty(Parameters.supertypesOf).equals("")
+					&& parameters.getProperty(Parameters.server) == null
+					&& parameters.getProperty(Parameters.watch) == null
+					&& parameters.getProperty(Parameters.dependencyGraph) == null)
+			{
+				logger.log("No class name given (-c or -f)");
+				logger.log();
+				return false;
+			}
+
+			// Patterns get compiled up front to report syntax errors
+			if (parameters.getProperty(Parameters.classname) != null)
+			{
+				try
+				{
+					compileMatcher();
+				} catch (IllegalArgumentException e)
+				{
+					logger.log("Invalid class name pattern: " + e.getMessage());
+					logger.log();
+					return false;
+				}
+			}
 			return true;
 		}
 	}
 
+	/**
+	 * @return Whether members, references or annotations are given to look
+	 *         up in the classes found
+	 */
+	private boolean lookupMembersRequested()
+	{
+		return !parameters.getProperty(Parameters.matchMethodName).equals("")
+				|| !parameters.getProperty(Parameters.matchFieldName)
+						.equals("")
+				|| !parameters.getProperty(Parameters.memberDescriptor)
+						.equals("")
+				|| !parameters.getProperty(Parameters.referencesTo).equals("")
+				|| !parameters.getProperty(Parameters.annotatedWith)
+						.equals("");
+	}
+
+	/**
+	 * @param access
+	 *            The access given with -z: public, protected, package or
+	 *            private
+	 * @return The access flag for the API dependency finder, -1 if the
+	 *         access is unknown
+	 */
+	private static int toAccessFlag(String access)
+	{
+		if (access.equals("public"))
+		{
+			return AccessFlags.ACC_PUBLIC;
+		}
+		else if (access.equals("protected"))
+		{
+			return AccessFlags.ACC_PROTECTED;
+		}
+		else if (access.equals("package"))
+		{
+			return 0;
+		}
+		else if (access.equals("private"))
+		{
+			return AccessFlags.ACC_PRIVATE;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param value
+	 *            The value of a parameter
+	 * @return Whether the value is a number greater than 0
+	 */
+	private static boolean isPositiveNumber(String value)
+	{
+		try
+		{
+			return Integer.parseInt(value) > 0;
+		} catch (NumberFormatException e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Adds class names to the ones to search for, separated by ';'
+	 * 
+	 * @param classnames
+	 *            The class names
+	 */
+	private void addClassnames(String classnames)
+	{
+		String current = parameters.getProperty(Parameters.classname);
+		parameters.setProperty(Parameters.classname,
+				(current == null ? "" : current + ";") + classnames);
+	}
+
+	/**
+	 * Reads the class names to search for from a file, one per line. Empty
+	 * lines and lines starting with '#' are skipped.
+	 * 
+	 * @param file
+	 *            The file
+	 * @throws IOException
+	 *             If the file can't be read
+	 */
+	private void readClassnames(File file) throws IOException
+	{
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				line = line.trim();
+				if (line.length() != 0 && !line.startsWith("#"))
+				{
+					addClassnames(line);
+				}
+			}
+		} finally
+		{
+			reader.close();
+		}
+	}
+
 	/**
 	 * Print usage help into stdout and Exit
 	 */
 	public void printHelp()
 	{
-		logger.log("Usage: java -jar ClassFinder.jar|com.optit.ClassFinder -d [directory] -c [classname] -m -v -help|-h|--help|-?");
+		logger.log("Usage: java -jar ClassFinder.jar|com.optit.ClassFinder -d [directory] -c [classname] -f [file] -m -v -o [method] -a [field] -y [descriptor] -g [class|class#member] -q [annotation] -u [type] -k [type] -j [file] -z [access] -t [threads] -i [indexfile] -n -x -l [count] -b [milliseconds] -e -s [port] -p [port] -w [milliseconds] -help|-h|--help|-?");
 		logger.log("");
 		logger.log("[-d]			The directory to search in");
-		logger.log("[-c]			The classname to search for");
+		logger.log("[-c]			The classname to search for, may be given several times, all classes if omitted with -o, -a, -y, -g, -q, -u or -k");
+		logger.log("[-f]			File with classnames to search for, one per line");
 		logger.log("[-m]			Match case");
 		logger.log("[-r]			Recursive search (search sub directories)");
 		logger.log("[-v]			Enables verbose output");
 		logger.log("[-o]			Match Method Name");
+		logger.log("[-a]			Match Field Name");
+		logger.log("[-y]			Match the descriptor or generic signature of methods and fields, * for any characters, e.g. \"(Ljava.lang.String;I)*\" or \"(*)Ljava.sql.Connection;\"");
+		logger.log("[-g]			Find the classes referencing a class or member, e.g. java.sql.DriverManager or java.sql.DriverManager#getConnection; an inherited member is only found when called through the class declaring it");
+		logger.log("[-q]			Find the classes, methods and fields annotated with an annotation, e.g. javax.ws.rs.Path, several ones separated by ';'");
+		logger.log("[-u]			Find all subclasses and implementors of a type, e.g. javax.sql.DataSource");
+		logger.log("[-k]			Find all superclasses and interfaces of a type found");
+		logger.log("[-j]			Write the dependency graph of all classes under the directory, and rolled up to packages and archives, to files starting with this path (.graph binary, .csv and .dot)");
+		logger.log("[-z]			Only follow the API dependencies of the dependency graph, of members with at least this access: public, protected, package or private");
+		logger.log("[-t]			Number of threads to search with (default 1)");
+		logger.log("[-i]			Index file to keep the archive contents in between searches");
+		logger.log("[-n]			Search archives nested in archives (e.g. WEB-INF/lib/*.jar in a war)");
+		logger.log("[-x]			Treat the class name as a regular expression");
+		logger.log("[-l]			Stop after this many matches");
+		logger.log("[-b]			Stop after this many milliseconds, reporting what was found so far");
+		logger.log("[-e]			Stop at the first match, exit code 0 if found and 1 if not");
+		logger.log("[-s]			Run as server on this port, keeping the index in memory; the directories are still walked for every search");
+		logger.log("[-p]			Send the search to the server running on this port");
+		logger.log("[-w]			Watch the directories and keep the index up to date, checking every given milliseconds");
 		logger.log("[-help|--help|-h|-?]	Display this help");
 		logger.log();
 		logger.log("The directory specified will be searched recursviely.");
 		logger.log("The class name can either just be the class name (e.g. String) or the fully qualified name (e.g. java.lang.String)");
+		logger.log("Wildcards are supported: * within a name, ** across packages, ? for one character (e.g. org.apache.**.Log*)");
 		logger.log();
 		logger.log("Good hunting!");
 	}
@@ -230,222 +716,1281 @@ public class ClassFinder implements Runnable
 	{
 		logger.setVerbose(parameters.getProperty(Parameters.verbose).equals(
 				"true"));
-		boolean matchCase = (parameters.getProperty(Parameters.matchCase)
+		searchNested = (parameters.getProperty(Parameters.searchNested)
 				.equals("true"));
 
-		// Class name contains some package qualifiers
-		boolean containsPackageQualifier = (parameters.getProperty(
-				Parameters.classname).indexOf(".") != -1);
-		// Change "." in package names to slashes (e.g. "org.apache.commons" ->
-		// "org/apache/commons")
-		String classname = parameters.getProperty(Parameters.classname)
-				.replaceAll("\\.", "/");
+		// The class name gets compiled once, the matcher is shared by all
+		// search threads
+		matcher = compileMatcher();
+		memberQuery = compileMemberQuery();
+		referenceQuery = compileReferenceQuery();
+		annotationQuery = compileAnnotationQuery();
 
-		// Not case sensitive
-		if (!matchCase)
+		if (!sharedIndex && parameters.getProperty(Parameters.index) != null)
 		{
-			classname = classname.toLowerCase();
+			index = ClassIndex.open(new File(parameters
+					.getProperty(Parameters.index)));
+			logger.logVerbose("Loaded index with " + index.size()
+					+ " archives");
 		}
 
-		logger.logVerbose("Building directory search tree...");
-		// Get file tree of directory
-		buildFileList(parameters.getProperty(Parameters.directory), parameters
-				.getProperty(Parameters.recursiveSearch).equals("true"));
+		scannedArchives = new ConcurrentHashMap<String, ScannedArchive>();
 
-		Iterator<File> fileIterator = files.iterator();
-		// Loop over all the filtered files
-		while (fileIterator.hasNext())
+		if (!parameters.getProperty(Parameters.subtypesOf, "").equals("")
+				|| !parameters.getProperty(Parameters.supertypesOf, "")
+						.equals(""))
 		{
-			File file = fileIterator.next();
-
-			// Use full qualified file name for logging, not the \ replaced one
-			// logger.logVerbose("Looking at: " + file.getAbsolutePath());
+			hierarchy = new TypeHierarchy();
+			typeIndex = (index != null) ? index : new ClassIndex(null);
+		}
 
-			String fullFileName = file.getAbsolutePath()
-					.replaceAll("\\\\", "/");
-			String fileName = file.getName();
+		// All findings are counted, the search stops once enough were found
+		int limit = Integer.parseInt(parameters.getProperty(Parameters.limit,
+				"0"));
+		if (parameters.getProperty(Parameters.exists, "false").equals("true"))
+		{
+			limit = 1;
+		}
+		long timeBudget = Long.parseLong(parameters.getProperty(
+				Parameters.timeBudget, "0"));
+		Logger resultLogger = logger;
+		counter = new CountingLogger(logger, limit);
+		logger = counter;
+		stopped = false;
+		deadline = (timeBudget == 0) ? 0 : System.currentTimeMillis()
+				+ timeBudget;
 
-			if (!matchCase)
+		// The directory walker feeds the files into the queue while they are
+		// searched already, so the first results show up right away and the
+		// file list never gets materialized
+		logger.logVerbose("Walking directory tree...");
+		queue = new ArrayBlockingQueue<File>(QUEUE_SIZE);
+		Thread walker = new Thread(new Runnable() {
+			public void run()
 			{
-				fullFileName = fullFileName.toLowerCase();
-				fileName = fileName.toLowerCase();
+				try
+				{
+					buildFileList(parameters.getProperty(Parameters.directory),
+							parameters.getProperty(Parameters.recursiveSearch)
+									.equals("true"));
+				} finally
+				{
+					endOfFiles();
+				}
 			}
+		}, "ClassFinder directory walker");
+		walker.setDaemon(true);
+		walker.start();
 
-			// Direct class files
-			if (fullFileName.endsWith(".class"))
+		int threads = Integer.parseInt(parameters.getProperty(
+				Parameters.threads, "1"));
+		// Single threaded: search the files in the order they are found
+		if (threads <= 1)
+		{
+			searchQueuedFiles();
+		}
+		// Parallel: the pool threads take the next file from the queue as
+		// soon as they are done, so one big archive doesn't hold up the small
+		// ones.
+		else
+		{
+			logger.logVerbose("Searching with " + threads + " threads...");
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			for(int i = 0;i < threads;i++)
 			{
-				// IF:
-				// Package qualifier was defined or a part of (e.g.
-				// apache.commons.Random -> apache/commons/Random)
-				// AND
-				// The file name ends with that qualifier -->
-				// org.apache.commons.Random.class ends with
-				// "apache/commons/Random.class)
-				// --> CLASS FOUND!
-				// OR
-				// Package qualifier wasn't specified but just the class (e.g.
-				// Random)
-				// AND
-				// The FILE NAME (note the call to file.getName() rather than
-				// getAbsolutePath()) matches -->
-				// org.apache.commons.Random.class's file name is Random.class
-				// --> CLASS FOUND!
-				if ((containsPackageQualifier && fullFileName
-						.endsWith(classname + ".class"))
-						|| (!containsPackageQualifier && fileName
-								.equals(classname + ".class")))
-				{
-					// logger.log(file.getName(), file.getAbsolutePath());
-					try
-					{
-						findMethod(file.getName(), file.getAbsolutePath(), file);
-					} catch (IOException e)
-					{
-						logger.logVerbose("Error reading file " + fullFileName
-								+ ": " + e.getMessage());
-						logger.logErr(e.getMessage());
-					} catch (ConstantPoolException e)
-					{
-						logger.logVerbose("Error reading file from class "
-								+ fullFileName + ": " + e.getMessage());
-						logger.logErr(e.getMessage());
-					} catch (InvalidDescriptor e)
+				executor.execute(new Runnable() {
+					public void run()
 					{
-						logger.logVerbose("Error reading file from class "
-								+ fullFileName + ": " + e.getMessage());
-						logger.logErr(e.getMessage());
+						searchQueuedFiles();
 					}
-				}
+				});
+			}
+			executor.shutdown();
+			try
+			{
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e)
+			{
+				executor.shutdownNow();
+				walker.interrupt();
+				Thread.currentThread().interrupt();
+			}
+		}
+		queue = null;
+		scannedArchives = null;
+		astParsers.clear();
+		if (hierarchy != null)
+		{
+			searchHierarchy();
+			hierarchy = null;
+			typeIndex = null;
+		}
+		logger = resultLogger;
+
+		if (index != null && !sharedIndex && index.isModified())
+		{
+			try
+			{
+				index.save();
+				logger.logVerbose("Saved index with " + index.size()
+						+ " archives");
+			} catch (IOException e)
+			{
+				logger.logErr("Error writing index "
+						+ index.getIndexFile().getAbsolutePath() + ": "
+						+ e.getMessage());
+			}
+		}
+
+		if (stopped)
+		{
+			if (counter.isLimitReached())
+			{
+				logger.logVerbose("Stopped after " + counter.getCount()
+						+ " matches");
+			}
+			else
+			{
+				logger.logErr("Time budget of " + timeBudget
+						+ "ms exceeded, the results are incomplete");
+			}
+		}
+		// In batch mode, tell which of the class names weren't found at all
+		else if (matcher instanceof MultiNameMatcher)
+		{
+			for (String classname : ((MultiNameMatcher) matcher).getNotFound())
+			{
+				logger.log("Class \"" + classname + "\" not found");
 			}
-			// Direct java source file
-			else if (fullFileName.endsWith(".java"))
-			{
-				// IF:
-				// Package qualifier was defined or a part of (e.g.
-				// apache.commons.Random -> apache/commons/Random)
-				// AND
-				// The file name ends with that qualifier -->
-				// org.apache.commons.Random.java ends with
-				// "apache/commons/Random.java)
-				// --> CLASS FOUND!
-				// OR
-				// Package qualifier wasn't specified but just the class (e.g.
-				// Random)
-				// AND
-				// The FILE NAME (note the call to file.getName() rather than
-				// getAbsolutePath()) matches -->
-				// org.apache.commons.Random.java's file name is Random.java
-				// --> CLASS FOUND!
-				if ((containsPackageQualifier && fullFileName
-						.endsWith(classname + ".java"))
-						|| (!containsPackageQualifier && fileName
-								.equals(classname + ".java")))
+		}
+
+		logger.logVerbose("Finished search");
+	}
+
+	/**
+	 * Runs as a server that keeps the index in memory and serves searches to
+	 * clients on the local machine, until the process is stopped. An index
+	 * file given with -i is read on start and written on shutdown.
+	 */
+	private void runServer()
+	{
+		logger.setVerbose(parameters.getProperty(Parameters.verbose).equals(
+				"true"));
+		final ClassIndex serverIndex;
+		if (parameters.getProperty(Parameters.index) != null)
+		{
+			serverIndex = ClassIndex.open(new File(parameters
+					.getProperty(Parameters.index)));
+			// Write the index back when the server gets stopped
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				public void run()
 				{
 					try
 					{
-						findMethodFromJava(file.getName(),
-								file.getAbsolutePath(), file);
+						if (serverIndex.isModified())
+						{
+							serverIndex.save();
+						}
 					} catch (IOException e)
 					{
-						logger.logVerbose("Error reading file " + fullFileName
+						logger.logErr("Error writing index "
+								+ serverIndex.getIndexFile().getAbsolutePath()
 								+ ": " + e.getMessage());
-						logger.logErr(e.getMessage());
-					} catch (ConstantPoolException e)
-					{
-						logger.logVerbose("Error reading file from java "
-								+ fullFileName + ": " + e.getMessage());
-						logger.logErr(e.getMessage());
-					} catch (InvalidDescriptor e)
-					{
-						logger.logVerbose("Error reading file from java "
-								+ fullFileName + ": " + e.getMessage());
-						logger.logErr(e.getMessage());
 					}
 				}
+			});
+		}
+		else
+		{
+			serverIndex = new ClassIndex(null);
+		}
+
+		// Keep the index up to date with the directories given with -d
+		if (parameters.getProperty(Parameters.watch) != null
+				&& parameters.getProperty(Parameters.directory) != null)
+		{
+			Thread watcher = new Thread(createWatcher(serverIndex),
+					"ClassFinder index watcher");
+			watcher.setDaemon(true);
+			watcher.start();
+		}
+
+		ClassFinderServer server = new ClassFinderServer(
+				Integer.parseInt(parameters.getProperty(Parameters.server)),
+				serverIndex, logger);
+		try
+		{
+			server.start();
+		} catch (IOException e)
+		{
+			logger.logErr("Can't start server on port "
+					+ parameters.getProperty(Parameters.server) + ": "
+					+ e.getMessage());
+			return;
+		}
+		server.serve();
+	}
+
+	/**
+	 * Watches the directories and keeps the index file given with -i up to
+	 * date, until the process is stopped. Searches using the index then
+	 * never have to scan an archive.
+	 */
+	private void runWatcher()
+	{
+		logger.setVerbose(parameters.getProperty(Parameters.verbose).equals(
+				"true"));
+		if (parameters.getProperty(Parameters.index) == null
+				|| parameters.getProperty(Parameters.directory) == null)
+		{
+			logger.logErr("Watching needs a directory (-d) and an index file (-i)");
+			return;
+		}
+		createWatcher(
+				ClassIndex.open(new File(parameters
+						.getProperty(Parameters.index)))).run();
+	}
+
+	/**
+	 * @param watchedIndex
+	 *            The index to keep up to date
+	 * @return A watcher for the directories given with -d
+	 */
+	private IndexWatcher createWatcher(ClassIndex watchedIndex)
+	{
+		List<File> roots = new ArrayList<File>();
+		for(String directory:parameters.getProperty(Parameters.directory)
+				.split(";"))
+		{
+			roots.add(new File(directory));
+		}
+		logger.logVerbose("Watching " + roots + " every "
+				+ parameters.getProperty(Parameters.watch) + "ms");
+		return new IndexWatcher(watchedIndex, roots, parameters.getProperty(
+				Parameters.recursiveSearch).equals("true"), Long
+				.parseLong(parameters.getProperty(Parameters.watch)), logger);
+	}
+
+	/**
+	 * Writes the dependency graph of all classes under the directories given
+	 * with -d: between the classes, and rolled up to their packages and
+	 * archives. Classes in the directories themselves come first, then the
+	 * ones of the archives in the order they are found, nested archives are
+	 * read in place.
+	 */
+	private void runDependencyGraph()
+	{
+		logger.setVerbose(parameters.getProperty(Parameters.verbose).equals(
+				"true"));
+		if (parameters.getProperty(Parameters.directory) == null)
+		{
+			logger.logErr("The dependency graph needs a directory (-d)");
+			return;
+		}
+		ClassIndex graphIndex = index;
+		if (graphIndex == null)
+		{
+			graphIndex = (parameters.getProperty(Parameters.index) != null) ? ClassIndex
+					.open(new File(parameters.getProperty(Parameters.index)))
+					: new ClassIndex(null);
+		}
+
+		List<File> classpath = new ArrayList<File>();
+		for(String directory:parameters.getProperty(Parameters.directory)
+				.split(";"))
+		{
+			if (new File(directory).isDirectory())
+			{
+				classpath.add(new File(directory));
+			}
+		}
+		files.clear();
+		buildFileList(parameters.getProperty(Parameters.directory), parameters
+				.getProperty(Parameters.recursiveSearch).equals("true"));
+		for(File file:files)
+		{
+			if (SearchableFileFilter.isArchive(file.getName()))
+			{
+				classpath.add(file);
+			}
+		}
+		files.clear();
+
+		String access = parameters.getProperty(Parameters.apiAccess);
+		Dependency.Finder finder = (access == null) ? Dependencies
+				.getDefaultFinder() : Dependencies
+				.getAPIFinder(toAccessFlag(access));
+		String path = parameters.getProperty(Parameters.dependencyGraph);
+		try
+		{
+			DependencyGraph graph;
+			ArchiveClassReader reader = new ArchiveClassReader(classpath,
+					graphIndex, GRAPH_CACHE_SIZE, parameters.getProperty(
+							Parameters.searchNested).equals("true"));
+			try
+			{
+				graph = buildDependencyGraph(reader, finder, Integer
+						.parseInt(parameters.getProperty(Parameters.threads,
+								"1")));
+			} finally
+			{
+				reader.close();
+			}
+			writeDependencyGraph(graph, path + "-classes", "classes");
+			writeDependencyGraph(graph.getPackageGraph(), path + "-packages",
+					"packages");
+			writeDependencyGraph(graph.getArchiveGraph(), path + "-archives",
+					"archives");
+		} catch (IOException e)
+		{
+			logger.logErr("Error writing dependency graph " + path + ": "
+					+ e.getMessage());
+		}
+
+		if (graphIndex != index && graphIndex.getIndexFile() != null
+				&& graphIndex.isModified())
+		{
+			try
+			{
+				graphIndex.save();
+			} catch (IOException e)
+			{
+				logger.logErr("Error writing index "
+						+ graphIndex.getIndexFile().getAbsolutePath() + ": "
+						+ e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Finds the dependencies of all classes of the reader. Only the
+	 * dependencies between them are kept, e.g. the ones on JDK classes are
+	 * left out.
+	 * 
+	 * @param reader
+	 *            The classes
+	 * @param finder
+	 *            Finds the dependencies of a class
+	 * @param threads
+	 *            The number of threads
+	 * @return The dependency graph
+	 */
+	private DependencyGraph buildDependencyGraph(
+			final ArchiveClassReader reader, final Dependency.Finder finder,
+			int threads)
+	{
+		final DependencyGraph graph = new DependencyGraph();
+		final List<String> classNames = new ArrayList<String>(reader
+				.getClassNames());
+		// The IDs are looked up by all workers without locking the graph, the
+		// map isn't changed once they start
+		final Map<String, Integer> ids = new HashMap<String, Integer>(
+				classNames.size() * 2);
+		for(String className:classNames)
+		{
+			ids.put(className, graph.addClass(className.replace('/', '.'),
+					getArchiveName(reader, className)));
+		}
+		logger.logVerbose("Finding the dependencies of " + classNames.size()
+				+ " classes...");
+
+		// The threads take the classes in classpath order, so that the ones
+		// of a nested archive are read while it is cached
+		final AtomicInteger next = new AtomicInteger();
+		Runnable worker = new Runnable() {
+			public void run()
+			{
+				int[] dependencies = new int[64];
+				int i;
+				while ((i = next.getAndIncrement()) < classNames.size())
+				{
+					String className = classNames.get(i);
+					int count = 0;
+					try
+					{
+						for(Dependency dependency:finder
+								.findDependencies(reader
+										.getClassFile(className)))
+						{
+							Integer target = ids.get(dependency.getTarget()
+									.getClassName());
+							if (target != null)
+							{
+								if (count == dependencies.length)
+								{
+									dependencies = Arrays.copyOf(
+											dependencies, count * 2);
+								}
+								dependencies[count++] = target;
+							}
+						}
+					} catch (ClassFileNotFoundException e)
+					{
+						logger.logVerbose("Can't read class " + className
+								+ ": " + e.getCause());
+						continue;
+					} catch (Dependencies.ClassFileError e)
+					{
+						logger.logVerbose("Can't read class " + className
+								+ ": " + e.getCause());
+						continue;
+					}
+					graph.addDependencies(ids.get(className), dependencies,
+							count);
+				}
+			}
+		};
+
+		if (threads <= 1)
+		{
+			worker.run();
+			return graph;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for(int i = 0;i < threads;i++)
+		{
+			executor.execute(worker);
+		}
+		executor.shutdown();
+		try
+		{
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e)
+		{
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		return graph;
+	}
+
+	/**
+	 * @return The archive a class is found in, including the nested archive,
+	 *         e.g. /a/b.war!/WEB-INF/lib/x.jar
+	 */
+	private static String getArchiveName(ArchiveClassReader reader,
+			String className)
+	{
+		String location = reader.getLocation(className).getAbsolutePath();
+		String entryName = reader.getEntryName(className);
+		int nested = entryName.lastIndexOf("!/");
+		return (nested == -1) ? location : location + "!/"
+				+ entryName.substring(0, nested);
+	}
+
+	/**
+	 * Writes a graph into path.graph in the binary format, path.csv and
+	 * path.dot
+	 */
+	private void writeDependencyGraph(DependencyGraph graph, String path,
+			String name) throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(path + ".graph"), 65536));
+		try
+		{
+			graph.write(out);
+		} finally
+		{
+			out.close();
+		}
+		Writer csv = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(path + ".csv"), "UTF-8"), 65536);
+		try
+		{
+			graph.writeCsv(csv);
+		} finally
+		{
+			csv.close();
+		}
+		Writer dot = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(path + ".dot"), "UTF-8"), 65536);
+		try
+		{
+			graph.writeDot(dot, name);
+		} finally
+		{
+			dot.close();
+		}
+		logger.log("Wrote " + graph.size() + " " + name + " with "
+				+ graph.getDependencyCount() + " dependencies to " + path
+				+ ".graph, .csv and .dot");
+	}
+
+	/**
+	 * Sends the search to a server instead of running it.
+	 * 
+	 * @param args
+	 *            The command line parameters
+	 * @return The exit code of the search
+	 */
+	private int runClient(String[] args)
+	{
+		// Everything but the port gets passed on to the server
+		List<String> serverArgs = new ArrayList<String>();
+		for(int i = 0;i < args.length;i++)
+		{
+			if (args[i].equals(Parameters.port))
+			{
+				i++;
+			}
+			else
+			{
+				serverArgs.add(args[i]);
+			}
+		}
+		try
+		{
+			return ClassFinderClient.search(Integer.parseInt(parameters
+					.getProperty(Parameters.port)), serverArgs
+					.toArray(new String[serverArgs.size()]), logger);
+		} catch (IOException e)
+		{
+			logger.logErr("Can't reach server on port "
+					+ parameters.getProperty(Parameters.port) + ": "
+					+ e.getMessage());
+			return 2;
+		}
+	}
+
+	/**
+	 * Uses an index that is shared with other searches, e.g. the one held by
+	 * the server, instead of opening the index file given with -i. The index
+	 * isn't written by the search.
+	 * 
+	 * @param index
+	 *            The index
+	 */
+	public void setIndex(ClassIndex index)
+	{
+		this.index = index;
+		this.sharedIndex = true;
+	}
+
+	/**
+	 * @return Whether the parsed arguments ask for a search, rather than for
+	 *         running a server (-s) or client (-p), watching (-w) or writing
+	 *         the dependency graph (-j)
+	 */
+	public boolean isSearch()
+	{
+		return parameters.getProperty(Parameters.server) == null
+				&& parameters.getProperty(Parameters.port) == null
+				&& parameters.getProperty(Parameters.watch) == null
+				&& parameters.getProperty(Parameters.dependencyGraph) == null;
+	}
+
+	/**
+	 * @return The number of classes (or methods) found by the last search
+	 */
+	public int getMatchCount()
+	{
+		return counter == null ? 0 : counter.getCount();
+	}
+
+	/**
+	 * Checks whether the search has to stop early as enough classes were
+	 * found or the time budget is used up. Checked between files and
+	 * archive entries, so all search threads stop promptly.
+	 * 
+	 * @return Whether to stop searching
+	 */
+	private boolean isStopped()
+	{
+		if (!stopped
+				&& counter != null
+				&& (counter.isLimitReached() || (deadline != 0 && System
+						.currentTimeMillis() >= deadline)))
+		{
+			stopped = true;
+		}
+		return stopped;
+	}
+
+	/**
+	 * Searches the files from the queue until the walker is done. Called by
+	 * every search thread.
+	 */
+	private void searchQueuedFiles()
+	{
+		try
+		{
+			File file;
+			while ((file = queue.take()) != END_OF_FILES)
+			{
+				// Once stopped, the queue is only drained to let the walker
+				// finish
+				if (!isStopped())
+				{
+					searchFile(file);
+				}
+			}
+			// Leave the marker for the other search threads
+			queue.put(END_OF_FILES);
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Tells the search threads that there are no more files to come.
+	 */
+	private void endOfFiles()
+	{
+		try
+		{
+			queue.put(END_OF_FILES);
+		} catch (InterruptedException e)
+		{
+			// The search got aborted, nobody is waiting anymore
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return The query for the methods and fields searched for, null if
+	 *         only classes are searched for
+	 */
+	private MemberQuery compileMemberQuery()
+	{
+		String methodName = parameters.getProperty(
+				Parameters.matchMethodName, "");
+		String fieldName = parameters.getProperty(Parameters.matchFieldName,
+				"");
+		String descriptor = parameters.getProperty(
+				Parameters.memberDescriptor, "");
+		if (methodName.equals("") && fieldName.equals("")
+				&& descriptor.equals(""))
+		{
+			return null;
+		}
+		return new MemberQuery(methodName, fieldName, descriptor);
+	}
+
+	/**
+	 * @return The query for the class or member matching classes have to
+	 *         reference, null if none is given
+	 */
+	private ReferenceQuery compileReferenceQuery()
+	{
+		String target = parameters.getProperty(Parameters.referencesTo, "");
+		if (target.equals(""))
+		{
+			return null;
+		}
+		return new ReferenceQuery(target);
+	}
+
+	/**
+	 * @return The query for the annotations matching classes or their
+	 *         members have to carry, null if none is given
+	 */
+	private AnnotationQuery compileAnnotationQuery()
+	{
+		String annotationTypes = parameters.getProperty(
+				Parameters.annotatedWith, "");
+		if (annotationTypes.equals(""))
+		{
+			return null;
+		}
+		return new AnnotationQuery(annotationTypes);
+	}
+
+	/**
+	 * @return Whether matching classes have to be read, for their members,
+	 *         references or annotations, rather than just being reported by name
+	 */
+	private boolean lookupMembers()
+	{
+		return memberQuery != null || referenceQuery != null
+				|| annotationQuery != null;
+	}
+
+	/**
+	 * Compiles the class name into the matcher: a regular expression if
+	 * requested, a wildcard pattern if it contains wildcards, or else a plain
+	 * class name. Several class names are looked up in one hash table. Without
+	 * a class name all classes match.
+	 * 
+	 * @return The matcher
+	 * @throws IllegalArgumentException
+	 *             If the pattern is invalid
+	 */
+	private NameMatcher compileMatcher()
+	{
+		String classname = parameters.getProperty(Parameters.classname);
+		boolean matchCase = parameters.getProperty(Parameters.matchCase)
+				.equals("true");
+		if (classname == null)
+		{
+			return PatternMatcher.forWildcards("*", matchCase);
+		}
+		if (parameters.getProperty(Parameters.regex).equals("true"))
+		{
+			return PatternMatcher.forRegex(classname, matchCase);
+		}
+
+		List<String> classnames = MultiNameMatcher.split(classname);
+		if (classnames.size() > 1)
+		{
+			for (String name : classnames)
+			{
+				if (PatternMatcher.isWildcardPattern(name))
+				{
+					throw new IllegalArgumentException(
+							"Wildcards can't be used when searching for several class names: "
+									+ name);
+				}
+			}
+			return new MultiNameMatcher(classnames, matchCase);
+		}
+		else if (classnames.size() == 1)
+		{
+			classname = classnames.get(0);
+		}
+		if (PatternMatcher.isWildcardPattern(classname))
+		{
+			return PatternMatcher.forWildcards(classname, matchCase);
+		}
+		return new ClassNameMatcher(classname, matchCase);
+	}
+
+	/**
+	 * Searches one file of the file list: a class file, a java source file
+	 * or an archive. Called concurrently when searching in parallel.
+	 * 
+	 * @param file
+	 *            The file to search
+	 */
+	private void searchFile(File file)
+	{
+		// Only the supertypes of all classes are collected, the hierarchy is
+		// searched once all files are read
+		if (hierarchy != null)
+		{
+			collectTypes(file);
+			return;
+		}
+
+		String fullFileName = file.getAbsolutePath();
+
+		// Direct class files
+		if (fullFileName.endsWith(".class"))
+		{
+			if (matcher.match(fullFileName) == NameMatcher.CLASS_MATCH)
+			{
+				try
+				{
+					findMethod(file.getName(), fullFileName, file);
+				} catch (IOException e)
+				{
+					logger.logVerbose("Error reading file " + fullFileName
+							+ ": " + e.getMessage());
+					logger.logErr(e.getMessage());
+				} catch (ConstantPoolException e)
+				{
+					logger.logVerbose("Error reading file from class "
+							+ fullFileName + ": " + e.getMessage());
+					logger.logErr(e.getMessage());
+				} catch (InvalidDescriptor e)
+				{
+					logger.logVerbose("Error reading file from class "
+							+ fullFileName + ": " + e.getMessage());
+					logger.logErr(e.getMessage());
+				}
+			}
+		}
+		// Direct java source file
+		else if (fullFileName.endsWith(".java"))
+		{
+			if (matcher.match(fullFileName) == NameMatcher.SOURCE_MATCH)
+			{
+				try
+				{
+					findMethodFromJava(file.getName(), fullFileName, file);
+				} catch (IOException e)
+				{
+					logger.logVerbose("Error reading file " + fullFileName
+							+ ": " + e.getMessage());
+					logger.logErr(e.getMessage());
+				} catch (ConstantPoolException e)
+				{
+					logger.logVerbose("Error reading file from java "
+							+ fullFileName + ": " + e.getMessage());
+					logger.logErr(e.getMessage());
+				} catch (InvalidDescriptor e)
+				{
+					logger.logVerbose("Error reading file from java "
+							+ fullFileName + ": " + e.getMessage());
+					logger.logErr(e.getMessage());
+				}
+			}
+		}
+		// The rest of the files: jar, war, ear, zip, rar
+		else
+		{
+			JarFile jarFile = null;
+			ArchiveCursor archive = null;
+			try
+			{
+				// With an index the archive only gets opened if a method has
+				// to be looked up
+				if (index == null || searchIndex(file))
+				{
+					archive = openArchive(file);
+					if (archive != null)
+					{
+						searchDistinctArchive(archive, file.getAbsolutePath(),
+								logger);
+					}
+					// Leave archives that can't be read directly to JarFile
+					else
+					{
+						jarFile = new JarFile(file);
+						Enumeration<JarEntry> entries = jarFile.entries();
+						while (!isStopped() && entries.hasMoreElements())
+						{
+							JarEntry entry = (JarEntry) entries.nextElement();
+							int match = matcher.match(entry.getName());
+							if (match != NameMatcher.NO_MATCH)
+							{
+								findInJar(file, jarFile, entry, match);
+							}
+						}
+					}
+				}
+			} catch (IOException e)
+			{
+				logger.logVerbose("Error reading file " + fullFileName
+						+ ": " + e.getMessage());
+				logger.logErr(e.getMessage());
+			} catch (ConstantPoolException e)
+			{
+				logger.logVerbose("Error reading file from jar "
+						+ fullFileName + ": " + e.getMessage());
+				logger.logErr(e.getMessage());
+			} catch (InvalidDescriptor e)
+			{
+				logger.logVerbose("Error reading file from jar "
+						+ fullFileName + ": " + e.getMessage());
+				logger.logErr(e.getMessage());
+			} finally
+			{
+				// Parallel searches open many archives at once, don't leak
+				// the file handles
+				try
+				{
+					if (jarFile != null)
+					{
+						jarFile.close();
+					}
+					if (archive != null)
+					{
+						archive.close();
+					}
+				} catch (IOException e)
+				{
+					// ignore
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the classes of a file to the type hierarchy, the ones of an
+	 * archive come from the index
+	 * 
+	 * @param file
+	 *            The class file or archive
+	 */
+	private void collectTypes(File file)
+	{
+		String fullFileName = file.getAbsolutePath();
+		try
+		{
+			if (fullFileName.endsWith(".class"))
+			{
+				ClassFile classFile = ClassFile.readLazily(ClassFile
+						.readBuffer(file));
+				String[] interfaces = new String[classFile.interfaces.length];
+				for(int i = 0;i < interfaces.length;i++)
+				{
+					interfaces[i] = classFile.getInterfaceName(i).replace("/",
+							".");
+				}
+				String superclass = (classFile.super_class == 0) ? null
+						: classFile.getSuperclassName().replace("/", ".");
+				hierarchy.add(classFile.getName().replace("/", "."),
+						superclass, interfaces, fullFileName, fullFileName);
+			}
+			// Sources aren't compiled
+			else if (!fullFileName.endsWith(".java"))
+			{
+				typeIndex.addTypes(file, hierarchy, searchNested);
+			}
+		} catch (IOException e)
+		{
+			logger.logVerbose("Error reading file " + fullFileName + ": "
+					+ e.getMessage());
+			logger.logErr(e.getMessage());
+		} catch (ConstantPoolException e)
+		{
+			logger.logVerbose("Error reading file from class "
+					+ fullFileName + ": " + e.getMessage());
+			logger.logErr(e.getMessage());
+		}
+	}
+
+	/**
+	 * Reports the subtypes and supertypes searched for, once all classes
+	 * are in the type hierarchy
+	 */
+	private void searchHierarchy()
+	{
+		String subtypesOf = parameters.getProperty(Parameters.subtypesOf, "");
+		String supertypesOf = parameters.getProperty(Parameters.supertypesOf,
+				"");
+		if (!subtypesOf.equals(""))
+		{
+			searchHierarchy(subtypesOf, true);
+		}
+		if (!supertypesOf.equals(""))
+		{
+			searchHierarchy(supertypesOf, false);
+		}
+	}
+
+	/**
+	 * @param type
+	 *            The type, e.g. javax.sql.DataSource
+	 * @param subtypes
+	 *            Whether its subtypes or its supertypes are reported
+	 */
+	private void searchHierarchy(String type, boolean subtypes)
+	{
+		int id = hierarchy.getId(type.replace("/", "."));
+		if (id == -1)
+		{
+			logger.log("Class \"" + type + "\" not found");
+			return;
+		}
+		int[] types = subtypes ? hierarchy.getSubtypes(id) : hierarchy
+				.getSupertypes(id);
+		logger.logVerbose("Found " + types.length
+				+ (subtypes ? " subtypes of " : " supertypes of ") + type);
+		for(int found:types)
+		{
+			String[] entryNames = hierarchy.getEntryNames(found);
+			String[] locations = hierarchy.getLocations(found);
+			if (entryNames.length == 0)
+			{
+				logger.logVerbose("Type " + hierarchy.getName(found)
+						+ " isn't found in the searched files");
+			}
+			for(int i = 0;i < entryNames.length;i++)
+			{
+				if (isStopped())
+				{
+					return;
+				}
+				// Class files outside of archives are located at themselves
+				if (entryNames[i].equals(locations[i]))
+				{
+					if (matcher.match(entryNames[i]) == NameMatcher.CLASS_MATCH)
+					{
+						logger.log(new File(entryNames[i]).getName(),
+								entryNames[i]);
+					}
+				}
+				else if (matchesIndexed(entryNames[i]))
+				{
+					logIndexed(entryNames[i], new File(locations[i]));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Searches an archive unless an identical copy has been searched
+	 * already, in which case the findings of the copy are reported for this
+	 * archive. Deployments tend to hold the same libraries over and over.
+	 * 
+	 * @param archive
+	 *            The archive
+	 * @param location
+	 *            The location of the archive to report
+	 * @param out
+	 *            The logger to report the findings to
+	 * @throws IOException
+	 * @throws ConstantPoolException
+	 * @throws InvalidDescriptor
+	 */
+	private void searchDistinctArchive(ArchiveCursor archive, String location,
+			Logger out) throws IOException, ConstantPoolException,
+			InvalidDescriptor
+	{
+		String fingerprint = archive.getFingerprint();
+		if (fingerprint == null)
+		{
+			searchArchive(archive, location, out);
+			return;
+		}
+
+		ScannedArchive scanned = new ScannedArchive();
+		ScannedArchive copy = scannedArchives.putIfAbsent(fingerprint, scanned);
+		if (copy != null)
+		{
+			RecordingLogger found = copy.await();
+			if (found != null)
+			{
+				logger.logVerbose("Archive " + location + " is identical to "
+						+ found.getLocation());
+				found.replay(out, location);
+				return;
+			}
+			// The search of the copy failed, search this one on its own
+			searchArchive(archive, location, out);
+			return;
+		}
+
+		RecordingLogger recorder = new RecordingLogger(out, location);
+		try
+		{
+			searchArchive(archive, location, recorder);
+			scanned.found = recorder;
+		} finally
+		{
+			scanned.done.countDown();
+		}
+	}
+
+	/**
+	 * Searches all entries of an archive and, if enabled, of the archives
+	 * nested within it. Results within nested archives are reported with
+	 * the full chain, e.g. "app.ear!/web.war!/WEB-INF/lib/x.jar".
+	 * 
+	 * @param archive
+	 *            The archive
+	 * @param location
+	 *            The location of the archive to report
+	 * @param out
+	 *            The logger to report the findings to
+	 * @throws IOException
+	 * @throws ConstantPoolException
+	 * @throws InvalidDescriptor
+	 */
+	private void searchArchive(ArchiveCursor archive, String location,
+			Logger out) throws IOException, ConstantPoolException,
+			InvalidDescriptor
+	{
+		while (!isStopped() && archive.next())
+		{
+			int match = matcher.match(archive);
+			if (match != NameMatcher.NO_MATCH)
+			{
+				// Only names are needed, no need to read the entry
+				if (!lookupMembers())
+				{
+					out.log(archive.getName(), location);
+				}
+				else
+				{
+					InputStream in = archive.openEntry();
+					try
+					{
+						if (match == NameMatcher.CLASS_MATCH)
+						{
+							readMembers(archive.getName(), location,
+									inflate(in), out);
+						}
+						else
+						{
+							readJavaMembers(archive.getName(), location,
+									inflate(in), out);
+						}
+					} finally
+					{
+						in.close();
+					}
+				}
+			}
+			else if (searchNested && archive.isArchive())
+			{
+				String nestedLocation = location + "!/" + archive.getName();
+				ArchiveCursor nested = null;
+				try
+				{
+					nested = archive.openNested();
+					searchDistinctArchive(nested, nestedLocation, out);
+				} catch (IOException e)
+				{
+					// A broken nested archive doesn't stop the search of
+					// the outer one
+					logger.logVerbose("Error reading archive "
+							+ nestedLocation + ": " + e.getMessage());
+					logger.logErr(e.getMessage());
+				} finally
+				{
+					if (nested != null)
+					{
+						nested.close();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Searches the entry names of an archive that are held by the index.
+	 * Matches are reported right away unless methods have to be looked up.
+	 * 
+	 * @param file
+	 *            The archive
+	 * @return Whether the archive has to be searched itself to look up the
+	 *         methods of matching entries
+	 * @throws IOException
+	 */
+	private boolean searchIndex(File file) throws IOException
+	{
+		if (annotationQuery != null)
+		{
+			return searchAnnotationIndex(file);
+		}
+		boolean lookupMethods = lookupMembers();
+		for(String entryName:index.getEntryNames(file))
+		{
+			if (isStopped())
+			{
+				return false;
+			}
+			if (matchesIndexed(entryName))
+			{
+				if (lookupMethods)
+				{
+					return true;
+				}
+				logIndexed(entryName, file);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Searches the annotations of an archive that are held by the index.
+	 * Annotated classes are reported right away, the archive only has to be
+	 * searched if it holds matching classes with annotated members.
+	 * 
+	 * @param file
+	 *            The archive
+	 * @return Whether the archive has to be searched itself to look up the
+	 *         annotated members of matching entries
+	 * @throws IOException
+	 */
+	private boolean searchAnnotationIndex(File file) throws IOException
+	{
+		// A class may carry several of the annotations
+		Set<String> annotatedClasses = new LinkedHashSet<String>();
+		for(String type:annotationQuery.getTypeNames())
+		{
+			for(String entryName:index.getClassesWithAnnotatedMembers(file,
+					type))
+			{
+				if (matchesIndexed(entryName))
+				{
+					return true;
+				}
 			}
-			// The rest of the files: jar, war, ear, zip, rar
-			else
+			// Only members are reported when they are looked up
+			if (memberQuery == null)
 			{
-				JarFile jarFile;
-				try
+				for(String entryName:index.getAnnotatedClasses(file, type))
 				{
-					jarFile = new JarFile(file);
-					Enumeration<JarEntry> entries = jarFile.entries();
-					while (entries.hasMoreElements())
+					if (matchesIndexed(entryName))
 					{
-						JarEntry entry = (JarEntry) entries.nextElement();
-						String entryName = entry.getName();
-						if (!matchCase)
-						{
-							entryName = entryName.toLowerCase();
-						}
-
-						if (containsPackageQualifier)
-						{
-							if (entryName.endsWith(classname + ".class"))
-							{
-								findMethod(file.getAbsolutePath(), jarFile,
-										entry);
-							}
-							else if (entryName.endsWith(classname + ".java"))
-							{
-								findJavaMethodInJar(file.getAbsolutePath(),
-										jarFile, entry);
-							}
-						}
-						// No package qualified, just Class Name
-						else
-						{
-							// IF:
-							// -- 95% scenario first: Class is in a sub package
-							// of the jar file
-							// The Class name ends with "/Classname.class" OR
-							// "/Classname.java" (e.g.
-							// org.apache.commons.Random.class ends with
-							// "/Random.class")
-							// OR
-							// In the case that the class doesn't belong to any
-							// package or it was just a ZIPPED file of a .class
-							// The file name equals classname.class or
-							// classname.java (e.g. Random.java got zipped up
-							// into Random.zip. The only thing in there is
-							// Random.java and as no package qualifier was
-							// given, the class is found)
-							if (entryName.endsWith("/" + classname + ".class")
-									|| entryName.equals(classname + ".class"))
-							{
-								findMethod(file.getAbsolutePath(), jarFile,
-										entry);
-							}
-							else if (entryName.endsWith("/" + classname
-									+ ".java")
-									|| entryName.equals(classname + ".java"))
-							{
-								findJavaMethodInJar(file.getAbsolutePath(),
-										jarFile, entry);
-							}
-						}
+						annotatedClasses.add(entryName);
 					}
-				} catch (IOException e)
-				{
-					logger.logVerbose("Error reading file " + fullFileName
-							+ ": " + e.getMessage());
-					logger.logErr(e.getMessage());
-				} catch (ConstantPoolException e)
-				{
-					logger.logVerbose("Error reading file from jar "
-							+ fullFileName + ": " + e.getMessage());
-					logger.logErr(e.getMessage());
-				} catch (InvalidDescriptor e)
-				{
-					logger.logVerbose("Error reading file from jar "
-							+ fullFileName + ": " + e.getMessage());
-					logger.logErr(e.getMessage());
 				}
 			}
 		}
+		for(String entryName:annotatedClasses)
+		{
+			logIndexed(entryName, file);
+		}
+		return false;
+	}
 
-		logger.logVerbose("Finished search");
+	/**
+	 * @param entryName
+	 *            The name of an indexed entry
+	 * @return Whether the entry matches the class name searched for
+	 */
+	private boolean matchesIndexed(String entryName)
+	{
+		// Entries of nested archives are indexed with their chain, e.g.
+		// "WEB-INF/lib/x.jar!/a/B.class"
+		int nestedEnd = entryName.lastIndexOf("!/");
+		if (nestedEnd != -1 && !searchNested)
+		{
+			return false;
+		}
+		int start = (nestedEnd == -1 ? 0 : nestedEnd + 2);
+		return matcher.match(entryName, start) != NameMatcher.NO_MATCH;
+	}
+
+	/**
+	 * Reports an indexed entry at the archive, or at the nested archive, it
+	 * is found in
+	 */
+	private void logIndexed(String entryName, File file)
+	{
+		int nestedEnd = entryName.lastIndexOf("!/");
+		if (nestedEnd == -1)
+		{
+			logger.log(entryName, file.getAbsolutePath());
+		}
+		else
+		{
+			logger.log(entryName.substring(nestedEnd + 2),
+					file.getAbsolutePath() + "!/"
+							+ entryName.substring(0, nestedEnd));
+		}
+	}
+
+	/**
+	 * Opens an archive for reading its entries through the central directory
+	 * 
+	 * @return The archive or null if the archive can't be read that way and
+	 *         has to go through JarFile
+	 * @throws IOException
+	 */
+	private ArchiveCursor openArchive(File file) throws IOException
+	{
+		try
+		{
+			return CentralDirectory.open(file);
+		} catch (ZipException e)
+		{
+			logger.logVerbose("Can't read central directory of "
+					+ file.getAbsolutePath() + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Hands a matching archive entry on to the class or source lookup
+	 */
+	private void findInJar(File file, JarFile jarFile, JarEntry entry,
+			int match) throws IOException, ConstantPoolException,
+			InvalidDescriptor
+	{
+		if (match == NameMatcher.CLASS_MATCH)
+		{
+			findMethod(file.getAbsolutePath(), jarFile, entry);
+		}
+		else
+		{
+			findJavaMethodInJar(file.getAbsolutePath(), jarFile, entry);
+		}
 	}
 
 	/**
@@ -459,19 +2004,15 @@ public class ClassFinder implements Runnable
 	public void findMethod(String pathName, JarFile jarFile, JarEntry entry)
 			throws IOException, ConstantPoolException, InvalidDescriptor
 	{
-		if (!parameters.getProperty(Parameters.matchMethodName).equals(""))
+		if (lookupMembers())
 		{
 			InputStream in = jarFile.getInputStream(entry);
-			ClassFile classFile = (ClassFile) ClassFile.read(in);
-
-			for(Method method:classFile.methods)
+			try
 			{
-				if (method.getName(classFile.constant_pool).equals(
-						parameters.getProperty(Parameters.matchMethodName)))
-				{
-					logger.log(entry.getName(), pathName,
-							writeMethod(classFile, method));
-				}
+				readMembers(entry.getName(), pathName, inflate(in), logger);
+			} finally
+			{
+				in.close();
 			}
 		}
 		else
@@ -492,33 +2033,15 @@ public class ClassFinder implements Runnable
 			JarEntry entry) throws IOException, ConstantPoolException,
 			InvalidDescriptor
 	{
-		if (!parameters.getProperty(Parameters.matchMethodName).equals(""))
+		if (lookupMembers())
 		{
-			if (astParser == null)
-				astParser = ASTParser.newParser(AST.JLS4);
-
-			BufferedInputStream bufferedInputStream;
 			InputStream in = jarFile.getInputStream(entry);
-			bufferedInputStream = new BufferedInputStream(in);
-			byte[] input = new byte[bufferedInputStream.available()];
-			bufferedInputStream.read(input);
-			bufferedInputStream.close();
-			astParser.setSource(new String(input).toCharArray());
-			CompilationUnit result = (CompilationUnit) astParser
-					.createAST(null);
-			TypeDeclaration type = (TypeDeclaration) result.types().get(0);
-			MethodDeclaration[] methodList = type.getMethods();
-			for(MethodDeclaration methodDeclaration:methodList)
+			try
 			{
-				if (methodDeclaration
-						.getName()
-						.toString()
-						.equals(parameters
-								.getProperty(Parameters.matchMethodName)))
-				{
-					logger.log(entry.getName(), pathName,
-							writeMethod(methodDeclaration));
-				}
+				readJavaMembers(entry.getName(), pathName, inflate(in), logger);
+			} finally
+			{
+				in.close();
 			}
 		}
 		else
@@ -530,18 +2053,30 @@ public class ClassFinder implements Runnable
 	public void findMethod(String className, String pathName, File file)
 			throws IOException, ConstantPoolException, InvalidDescriptor
 	{
-		if (!parameters.getProperty(Parameters.matchMethodName).equals(""))
+		if (lookupMembers())
+		{
+			readMembers(file.getName(), file.getAbsolutePath(),
+					ClassFile.readBuffer(file), logger);
+		}
+		else
 		{
-			ClassFile classFile = (ClassFile) ClassFile.read(file);
+			logger.log(file.getName(), file.getAbsolutePath());
+		}
+	}
 
-			for(Method method:classFile.methods)
+	public void findMethodFromJava(String className, String pathName, File file)
+			throws IOException, ConstantPoolException, InvalidDescriptor
+	{
+		if (lookupMembers())
+		{
+			InputStream in = new FileInputStream(file);
+			try
 			{
-				if (method.getName(classFile.constant_pool).equals(
-						parameters.getProperty(Parameters.matchMethodName)))
-				{
-					logger.log(file.getName(), file.getAbsolutePath(),
-							writeMethod(classFile, method));
-				}
+				readJavaMembers(file.getName(), file.getAbsolutePath(),
+						inflate(in), logger);
+			} finally
+			{
+				in.close();
 			}
 		}
 		else
@@ -550,45 +2085,323 @@ public class ClassFinder implements Runnable
 		}
 	}
 
-	public void findMethodFromJava(String className, String pathName, File file)
-			throws IOException, ConstantPoolException, InvalidDescriptor
+	/**
+	 * Reads a class file and logs the fields and methods matching the
+	 * member query, or those referencing the class or member or carrying
+	 * the annotations searched for
+	 * 
+	 * @param className
+	 *            The name of the class file or archive entry to report
+	 * @param location
+	 *            The location to report
+	 * @param classBytes
+	 *            The content of the class file
+	 * @param out
+	 *            The logger to report the members to
+	 * @throws IOException
+	 * @throws ConstantPoolException
+	 * @throws InvalidDescriptor
+	 */
+	private void readMembers(String className, String location,
+			ByteBuffer classBytes, Logger out) throws IOException,
+			ConstantPoolException, InvalidDescriptor
+	{
+		if (referenceQuery != null)
+		{
+			readReferences(className, location, classBytes, out);
+			return;
+		}
+		if (annotationQuery != null)
+		{
+			readAnnotations(className, location, classBytes, out);
+			return;
+		}
+		// Most classes can't have a matching member and aren't parsed
+		if (!memberQuery.mayMatchClass(classBytes))
+		{
+			return;
+		}
+		ClassFile classFile = ClassFile.readLazily(classBytes,
+				MEMBER_ATTRIBUTES);
+		for(Field field:classFile.fields)
+		{
+			if (memberQuery.matches(classFile, field))
+			{
+				out.logField(className, location, writeField(classFile, field));
+			}
+		}
+		for(Method method:classFile.methods)
+		{
+			if (memberQuery.matches(classFile, method))
+			{
+				out.log(className, location, writeMethod(classFile, method));
+			}
+		}
+	}
+
+	/**
+	 * Reads a class file and logs the fields and methods referencing the
+	 * class or member searched for, restricted to the ones matching the
+	 * member query if given. A class referencing it outside of any member,
+	 * e.g. by extending it or by an annotation, is logged on its own.
+	 * 
+	 * @param className
+	 *            The name of the class file or archive entry to report
+	 * @param location
+	 *            The location to report
+	 * @param classBytes
+	 *            The content of the class file
+	 * @param out
+	 *            The logger to report the references to
+	 * @throws IOException
+	 * @throws ConstantPoolException
+	 * @throws InvalidDescriptor
+	 */
+	private void readReferences(String className, String location,
+			ByteBuffer classBytes, Logger out) throws IOException,
+			ConstantPoolException, InvalidDescriptor
+	{
+		// Classes not naming the target in their constant pool aren't parsed
+		if (!referenceQuery.mayMatchClass(classBytes))
+		{
+			return;
+		}
+		ClassFile classFile = ClassFile.readLazily(classBytes,
+				REFERENCE_ATTRIBUTES);
+		boolean[] references = referenceQuery.findReferences(classFile);
+		if (references == null)
+		{
+			return;
+		}
+
+		boolean found = false;
+		for(Field field:classFile.fields)
+		{
+			if ((memberQuery == null || memberQuery.matches(classFile, field))
+					&& referenceQuery.references(classFile, field, references))
+			{
+				out.logField(className, location, writeField(classFile, field));
+				found = true;
+			}
+		}
+		for(Method method:classFile.methods)
+		{
+			if ((memberQuery == null || memberQuery.matches(classFile, method))
+					&& referenceQuery.references(classFile, method, references))
+			{
+				out.log(className, location, writeMethod(classFile, method));
+				found = true;
+			}
+		}
+		if (!found && memberQuery == null)
+		{
+			out.log(className, location);
+		}
+	}
+
+	/**
+	 * Reads a class file and logs it if it carries any of the annotations
+	 * searched for, as well as its annotated fields and methods, restricted
+	 * to the ones matching the member query if given
+	 * 
+	 * @param className
+	 *            The name of the class file or archive entry to report
+	 * @param location
+	 *            The location to report
+	 * @param classBytes
+	 *            The content of the class file
+	 * @param out
+	 *            The logger to report the annotated class and members to
+	 * @throws IOException
+	 * @throws ConstantPoolException
+	 * @throws InvalidDescriptor
+	 */
+	private void readAnnotations(String className, String location,
+			ByteBuffer classBytes, Logger out) throws IOException,
+			ConstantPoolException, InvalidDescriptor
 	{
+		// Classes not naming any of the annotation types aren't parsed
+		if (!annotationQuery.mayMatchClass(classBytes))
+		{
+			return;
+		}
+		ClassFile classFile = ClassFile.readLazily(classBytes,
+				ANNOTATION_ATTRIBUTES);
+		if (memberQuery == null
+				&& annotationQuery.matches(classFile, classFile.attributes))
+		{
+			out.log(className, location);
+		}
+		for(Field field:classFile.fields)
+		{
+			if ((memberQuery == null || memberQuery.matches(classFile, field))
+					&& annotationQuery.matches(classFile, field.attributes))
+			{
+				out.logField(className, location, writeField(classFile, field));
+			}
+		}
+		for(Method method:classFile.methods)
+		{
+			if ((memberQuery == null || memberQuery.matches(classFile, method))
+					&& annotationQuery.matches(classFile, method.attributes))
+			{
+				out.log(className, location, writeMethod(classFile, method));
+			}
+		}
+	}
 
-		if (!parameters.getProperty(Parameters.matchMethodName).equals(""))
+	/**
+	 * Parses a java source and logs the fields and methods matching the
+	 * member query
+	 * 
+	 * @param className
+	 *            The name of the java file or archive entry to report
+	 * @param location
+	 *            The location to report
+	 * @param source
+	 *            The content of the java file
+	 * @param out
+	 *            The logger to report the members to
+	 */
+	private void readJavaMembers(final String className,
+			final String location, ByteBuffer source, final Logger out)
+	{
+		// A source declaring the member has its name in it, unless written
+		// with unicode escapes. References are only known once compiled,
+		// annotations are only searched for in class files.
+		if (referenceQuery != null || annotationQuery != null
+				|| !memberQuery.mayMatchSource(source))
 		{
-			if (astParser == null)
-				astParser = ASTParser.newParser(AST.JLS4);
+			return;
+		}
+		CompilationUnit result = parseCompilationUnit(new String(
+				source.array(), 0, source.limit()).toCharArray());
 
-			BufferedInputStream bufferedInputStream;
+		// Visits the members of all types, top-level, nested or anonymous
+		// ones in field initializers, be they classes, interfaces or enums
+		result.accept(new ASTVisitor()
+		{
+			@Override
+			public boolean visit(FieldDeclaration fieldDeclaration)
+			{
+				for(Object fragment:fieldDeclaration.fragments())
+				{
+					VariableDeclarationFragment variable = (VariableDeclarationFragment) fragment;
+					if (memberQuery.matchesField(variable.getName()
+							.getIdentifier()))
+					{
+						out.logField(className, location,
+								writeField(fieldDeclaration, variable));
+					}
+				}
+				return true;
+			}
 
-			bufferedInputStream = new BufferedInputStream(new FileInputStream(
-					file));
-			byte[] input = new byte[bufferedInputStream.available()];
-			bufferedInputStream.read(input);
-			bufferedInputStream.close();
-			astParser.setSource(new String(input).toCharArray());
-			CompilationUnit result = (CompilationUnit) astParser
-					.createAST(null);
-			TypeDeclaration type = (TypeDeclaration) result.types().get(0);
-			MethodDeclaration[] methodList = type.getMethods();
-			for(MethodDeclaration methodDeclaration:methodList)
+			@Override
+			public boolean visit(MethodDeclaration methodDeclaration)
 			{
-				if (methodDeclaration
-						.getName()
-						.toString()
-						.equals(parameters
-								.getProperty(Parameters.matchMethodName)))
+				if (memberQuery.matchesMethod(methodDeclaration.getName()
+						.getIdentifier()))
 				{
-					logger.log(file.getName(), file.getAbsolutePath(),
-							writeMethod(methodDeclaration));
+					out.log(className, location, writeMethod(methodDeclaration));
 				}
+				// The body wasn't parsed
+				return false;
 			}
+		});
+	}
 
+	/**
+	 * Inflates a class or java file into the buffer of the current thread.
+	 * The content is only valid until the thread inflates the next one.
+	 */
+	private ByteBuffer inflate(InputStream in) throws IOException
+	{
+		byte[] buffer = inflateBuffer.get();
+		if (buffer == null)
+		{
+			buffer = new byte[8192];
 		}
-		else
+		int length = 0;
+		int read;
+		while ((read = in.read(buffer, length, buffer.length - length)) != -1)
 		{
-			logger.log(file.getName(), file.getAbsolutePath());
+			length += read;
+			if (length == buffer.length)
+			{
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+			}
 		}
+		inflateBuffer.set(buffer);
+		return ByteBuffer.wrap(buffer, 0, length);
+	}
+
+	/**
+	 * Parses a java source into a compilation unit, with an idle parser or
+	 * a new one if all are busy.
+	 * 
+	 * @param source
+	 *            The java source
+	 * @return The parsed compilation unit
+	 */
+	private CompilationUnit parseCompilationUnit(char[] source)
+	{
+		ASTParser astParser = astParsers.poll();
+		if (astParser == null)
+			astParser = ASTParser.newParser(AST.JLS4);
+
+		try
+		{
+			// The parser forgets its settings after each parse. Only the
+			// declarations are needed, method bodies are skipped.
+			astParser.setCompilerOptions(SourceOptions.OPTIONS);
+			astParser.setIgnoreMethodBodies(true);
+			astParser.setSource(source);
+			return (CompilationUnit) astParser.createAST(null);
+		} finally
+		{
+			astParsers.offer(astParser);
+		}
+	}
+
+	/**
+	 * The compiler options sources are parsed with: Java 7, to know about
+	 * enums, generics and annotations. Held apart, so that JDT only gets
+	 * initialized by the first parse, not by the client or name searches.
+	 */
+	private static class SourceOptions
+	{
+		static final Map<?, ?> OPTIONS = sourceOptions();
+
+		private static Map<?, ?> sourceOptions()
+		{
+			// JDT only returns a raw Hashtable
+			@SuppressWarnings("unchecked")
+			Map<String, String> options = JavaCore.getOptions();
+			JavaCore.setComplianceOptions(JavaCore.VERSION_1_7, options);
+			return options;
+		}
+	}
+
+	private String writeField(FieldDeclaration fieldDeclaration,
+			VariableDeclarationFragment variable)
+	{
+		StringBuffer strField = new StringBuffer();
+
+		List modifiers = fieldDeclaration.modifiers();
+		for(int i = 0;i < modifiers.size();i++)
+		{
+			strField.append(modifiers.get(i));
+			strField.append(" ");
+		}
+		strField.append(fieldDeclaration.getType());
+		for(int i = 0;i < variable.getExtraDimensions();i++)
+		{
+			strField.append("[]");
+		}
+		strField.append(" ");
+		strField.append(variable.getName());
+		return strField.toString();
 	}
 
 	private String writeMethod(MethodDeclaration methodDeclaration)
@@ -644,6 +2457,43 @@ public class ClassFinder implements Runnable
 		return strMethod.toString();
 	}
 
+	protected String writeField(ClassFile classFile, Field f)
+			throws ConstantPoolException, InvalidDescriptor
+	{
+		StringBuffer strField = new StringBuffer();
+		ConstantPool constant_pool = classFile.constant_pool;
+
+		for(Object item:f.access_flags.getFieldModifiers())
+		{
+			strField.append(item);
+			strField.append(" ");
+		}
+
+		String type = null;
+		Signature_attribute sigAttr = (Signature_attribute) f.attributes
+				.get(Attribute.Signature);
+		if (sigAttr != null)
+		{
+			try
+			{
+				type = sigAttr.getParsedSignature().getFieldType(constant_pool);
+			} catch (ConstantPoolException e)
+			{
+				// fall back on standard descriptor
+			}
+		}
+		if (type == null)
+		{
+			type = f.descriptor.getFieldType(constant_pool);
+		}
+		strField.append(type.replace("/", "."));
+		strField.append(" ");
+		strField.append(f.getName(constant_pool));
+		strField.append(";");
+
+		return strField.toString();
+	}
+
 	protected String writeMethod(ClassFile classFile, Method m)
 			throws ConstantPoolException, InvalidDescriptor
 	{
@@ -802,12 +2652,25 @@ public class ClassFinder implements Runnable
 		else if (!directory.isDirectory()
 				&& new SearchableFileFilter().accept(directory))
 		{
-			files.add(directory);
+			addFile(directory);
 		}
 		else
 		{
-			for(File file:directory.listFiles(new SearchableFileFilter()))
+			File[] directoryFiles = directory.listFiles(new SearchableFileFilter());
+			// Directory can't be read
+			if (directoryFiles == null)
 			{
+				logger.logVerbose("Can't read directory "
+						+ directory.getAbsolutePath());
+				return;
+			}
+			for(File file:directoryFiles)
+			{
+				// The search got aborted or stopped early
+				if (Thread.currentThread().isInterrupted() || isStopped())
+				{
+					return;
+				}
 				// Build recursive tree if recursive flag is set
 				if (file.isDirectory())
 				{
@@ -818,9 +2681,33 @@ public class ClassFinder implements Runnable
 				}
 				else
 				{
-					files.add(file);
+					addFile(file);
 				}
 			}
 		}
 	}
+
+	/**
+	 * Hands a file over to the search threads if a search is running,
+	 * otherwise adds it to the file list
+	 * 
+	 * @param file
+	 *            The file to search
+	 */
+	private void addFile(File file)
+	{
+		if (queue == null)
+		{
+			files.add(file);
+			return;
+		}
+		try
+		{
+			// Waits while the search threads are behind
+			queue.put(file);
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
 }
@@ -14,4 +14,23 @@ public abstract class Parameters
 	public static final String recursiveSearch = "-r";
 	public static final String verbose = "-v";
 	public static final String matchMethodName = "-o";
+	public static final String matchFieldName = "-a";
+	public static final String memberDescriptor = "-y";
+	public static final String referencesTo = "-g";
+	public static final String annotatedWith = "-q";
+	public static final String subtypesOf = "-u";
+	public static final String supertypesOf = "-k";
+	public static final String dependencyGraph = "-j";
+	public static final String apiAccess = "-z";
+	public static final String threads = "-t";
+	public static final String index = "-i";
+	public static final String searchNested = "-n";
+	public static final String regex = "-x";
+	public static final String classnameFile = "-f";
+	public static final String limit = "-l";
+	public static final String timeBudget = "-b";
+	public static final String exists = "-e";
+	public static final String server = "-s";
+	public static final String port = "-p";
+	public static final String watch = "-w";
 }
@@ -4,6 +4,11 @@ import java.io.File;
 
 public final class SearchableFileFilter extends javax.swing.filechooser.FileFilter implements java.io.FileFilter
 {
+	/**
+	 * The extensions of the archives that get searched
+	 */
+	public static final String[] ARCHIVE_EXTENSIONS = {".jar", ".war", ".ear", ".zip", ".rar"};
+	
 	@Override
 	public boolean accept(File pathname)
 	{
@@ -11,17 +16,27 @@ public final class SearchableFileFilter extends javax.swing.filechooser.FileFilt
 			return true;
 		
 		String fileName = pathname.getName();
-		if (fileName.endsWith(".jar")
-			|| fileName.endsWith(".war")
-			|| fileName.endsWith(".ear")
-			|| fileName.endsWith(".zip")
-			|| fileName.endsWith(".rar")
+		if (isArchive(fileName)
 			|| fileName.endsWith(".class")
 			|| fileName.endsWith(".java"))
 			return true;
 		else
 			return false;
 	}
+	
+	/**
+	 * @param fileName The file or archive entry name
+	 * @return Whether the name is the one of an archive (jar, war, ear, zip, rar)
+	 */
+	public static boolean isArchive(String fileName)
+	{
+		for (String extension : ARCHIVE_EXTENSIONS)
+		{
+			if (fileName.endsWith(extension))
+				return true;
+		}
+		return false;
+	}
 
 	@Override
 	public String getDescription()
@@ -15,9 +15,11 @@ import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
 import javax.swing.JTable;
 import javax.swing.JTextField;
 import javax.swing.LayoutStyle.ComponentPlacement;
+import javax.swing.SpinnerNumberModel;
 import javax.swing.UIManager;
 
 import com.optit.ClassFinder;
@@ -41,6 +43,7 @@ public class ClassFinderGui {
 	private JTable resultsTable;
 	private JLabel statusBar;
 	private JCheckBox chckbxRecursiveSearch;
+	private JSpinner spinnerThreads;
 
 	/**
 	 * Create the application.
@@ -154,6 +157,11 @@ public class ClassFinderGui {
 		chckbxRecursiveSearch = new JCheckBox("");
 		chckbxRecursiveSearch.setSelected(true);
 		
+		JLabel lblThreads = new JLabel("Threads:");
+		
+		// Search with all cores by default
+		spinnerThreads = new JSpinner(new SpinnerNumberModel(Runtime.getRuntime().availableProcessors(), 1, 256, 1));
+		
 		GroupLayout groupLayout = new GroupLayout(frame.getContentPane());
 		groupLayout.setHorizontalGroup(
 			groupLayout.createParallelGroup(Alignment.LEADING)
@@ -183,7 +191,11 @@ public class ClassFinderGui {
 									.addGap(18)
 									.addComponent(lblRecursive, GroupLayout.PREFERRED_SIZE, 80, GroupLayout.PREFERRED_SIZE)
 									.addGap(20)
-									.addComponent(chckbxRecursiveSearch, GroupLayout.PREFERRED_SIZE, 21, GroupLayout.PREFERRED_SIZE))))
+									.addComponent(chckbxRecursiveSearch, GroupLayout.PREFERRED_SIZE, 21, GroupLayout.PREFERRED_SIZE)
+									.addGap(18)
+									.addComponent(lblThreads)
+									.addGap(18)
+									.addComponent(spinnerThreads, GroupLayout.PREFERRED_SIZE, 50, GroupLayout.PREFERRED_SIZE))))
 						.addComponent(statusBar))
 					.addContainerGap())
 		);
@@ -212,7 +224,10 @@ public class ClassFinderGui {
 							.addGroup(groupLayout.createSequentialGroup()
 								.addGap(7)
 								.addComponent(lblRecursive))
-							.addComponent(chckbxRecursiveSearch, GroupLayout.PREFERRED_SIZE, 21, GroupLayout.PREFERRED_SIZE)))
+							.addComponent(chckbxRecursiveSearch, GroupLayout.PREFERRED_SIZE, 21, GroupLayout.PREFERRED_SIZE)
+							.addGroup(groupLayout.createParallelGroup(Alignment.BASELINE)
+								.addComponent(lblThreads)
+								.addComponent(spinnerThreads, GroupLayout.PREFERRED_SIZE, GroupLayout.DEFAULT_SIZE, GroupLayout.PREFERRED_SIZE))))
 					.addGap(13)
 					.addComponent(scrollPane, GroupLayout.DEFAULT_SIZE, 285, Short.MAX_VALUE)
 					.addPreferredGap(ComponentPlacement.RELATED)
@@ -220,7 +235,7 @@ public class ClassFinderGui {
 					.addGap(6))
 		);
 		frame.getContentPane().setLayout(groupLayout);
-		frame.setFocusTraversalPolicy(new FocusTraversalOnArray(new Component[]{tfJarFileFolder, btnBrowse, tfClassName, tfMethodName, chckbxMatchCase, chckbxRecursiveSearch, btnSearch}));
+		frame.setFocusTraversalPolicy(new FocusTraversalOnArray(new Component[]{tfJarFileFolder, btnBrowse, tfClassName, tfMethodName, chckbxMatchCase, chckbxRecursiveSearch, spinnerThreads, btnSearch}));
 	}
 	
 	private void performSearch()
@@ -265,6 +280,9 @@ public class ClassFinderGui {
 				params.add(Parameters.recursiveSearch);
 			}
 			
+			params.add(Parameters.threads);
+			params.add(spinnerThreads.getValue().toString());
+			
 			ClassFinder finder = new ClassFinder(new GuiLogger(tm, statusBar));
 			if (finder.parseArguments(params.toArray(new String[] {})))
 				new Thread(finder).start();
@@ -0,0 +1,516 @@
+package com.optit.index;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.optit.zip.ArchiveCursor;
+import com.optit.zip.CentralDirectory;
+import com.sun.tools.classfile.ClassFile;
+import com.sun.tools.classfile.ConstantPoolException;
+import com.sun.tools.classfile.Dependencies.ClassFileNotFoundException;
+import com.sun.tools.classfile.Dependencies.ClassFileReader;
+
+/**
+ * Reads the class files of a classpath of archives and directories for the
+ * {@link com.sun.tools.classfile.Dependencies} engine, e.g. to analyze the
+ * dependencies of a whole war without extracting it.
+ * <p>
+ * The class names are looked up once from the {@link ClassIndex}, so
+ * resolving a class to its archive entry is a single hash lookup. Like on a
+ * classpath, the first definition of a class wins: the classpath elements
+ * count in their order, and within an archive its own entries and
+ * WEB-INF/classes come before the archives nested in it, e.g.
+ * WEB-INF/lib/x.jar. The class files within a directory are named by the
+ * class they define, wherever they are below the directory, e.g.
+ * classes/a/B.class of a deployment tree defines a/B.
+ * <p>
+ * Entries of archives on disk are read straight from the archive. The class
+ * files of a nested archive are inflated into memory together on first
+ * access, nothing is extracted to disk. Parsed class files and the class
+ * files of nested archives are kept in caches bounded by the size of the
+ * class files, the least recently used ones are dropped first. A reader may
+ * be used by several threads at once.
+ */
+public class ArchiveClassReader implements ClassFileReader, Closeable
+{
+	private static final String CLASS_SUFFIX = ".class";
+	// Separates the entries of nested archives, e.g. "WEB-INF/lib/x.jar!/a/B.class"
+	private static final String NESTED_SEPARATOR = "!/";
+	// Classes of a web application that aren't in a jar
+	private static final String WEB_CLASSES = "WEB-INF/classes/";
+
+	private final File[] classpath;
+	// Internal class name, e.g. a/b/C, to where it is defined first, in
+	// classpath order
+	private final LinkedHashMap<String, Location> locations = new LinkedHashMap<String, Location>();
+	// Archives on disk, opened on first access
+	private final ZipFile[] zipFiles;
+	private final LruCache<ClassFile> classFiles;
+	// Class files of nested archives, keyed by archive and entry of the
+	// nested archive, e.g. "/a/b.war!/WEB-INF/lib/x.jar"
+	private final LruCache<Map<String, byte[]>> nestedArchives;
+
+	/**
+	 * @param classpath The archives and directories, in the order in which
+	 *            classes are looked up. Missing files are left out.
+	 * @param index The index the entry names of the archives are taken from
+	 * @param cacheSize The bound in bytes of each cache
+	 * @throws IOException If an archive can't be read
+	 */
+	public ArchiveClassReader(List<File> classpath, ClassIndex index, long cacheSize) throws IOException
+	{
+		this(classpath, index, cacheSize, true);
+	}
+
+	/**
+	 * @param classpath The archives and directories, in the order in which
+	 *            classes are looked up. Missing files are left out.
+	 * @param index The index the entry names of the archives are taken from
+	 * @param cacheSize The bound in bytes of each cache
+	 * @param nested Whether the classes of archives nested in the archives
+	 *            are read as well
+	 * @throws IOException If an archive can't be read
+	 */
+	public ArchiveClassReader(List<File> classpath, ClassIndex index, long cacheSize, boolean nested)
+			throws IOException
+	{
+		this.classpath = classpath.toArray(new File[classpath.size()]);
+		zipFiles = new ZipFile[this.classpath.length];
+		classFiles = new LruCache<ClassFile>(cacheSize);
+		nestedArchives = new LruCache<Map<String, byte[]>>(cacheSize);
+
+		for (int root = 0; root < this.classpath.length; root++)
+		{
+			File file = this.classpath[root];
+			if (file.isDirectory())
+			{
+				addDirectory(root, file, "");
+			}
+			else if (file.isFile())
+			{
+				String[] entryNames = index.getEntryNames(file);
+				// Entries of the archive itself first, then the ones of nested archives
+				for (String entryName : entryNames)
+				{
+					if (entryName.indexOf(NESTED_SEPARATOR) == -1)
+					{
+						addEntry(root, entryName);
+					}
+				}
+				for (String entryName : entryNames)
+				{
+					if (nested && entryName.indexOf(NESTED_SEPARATOR) != -1)
+					{
+						addEntry(root, entryName);
+					}
+				}
+			}
+		}
+	}
+
+	private void addDirectory(int root, File directory, String prefix)
+	{
+		File[] files = directory.listFiles();
+		if (files == null)
+		{
+			return;
+		}
+		for (File file : files)
+		{
+			if (file.isDirectory())
+			{
+				addDirectory(root, file, prefix + file.getName() + "/");
+			}
+			else if (file.getName().endsWith(CLASS_SUFFIX))
+			{
+				// The path below the directory needn't be the package
+				try
+				{
+					addLocation(root, ClassFile.readLazily(ClassFile.readBuffer(file)).getName(),
+							prefix + file.getName());
+				}
+				catch (IOException e)
+				{
+					// Broken class files are left out
+				}
+				catch (ConstantPoolException e)
+				{
+					// Broken class files are left out
+				}
+			}
+		}
+	}
+
+	private void addEntry(int root, String entryName)
+	{
+		String className = toClassName(entryName);
+		if (className != null)
+		{
+			addLocation(root, className, entryName);
+		}
+	}
+
+	private void addLocation(int root, String className, String entryName)
+	{
+		if (!locations.containsKey(className))
+		{
+			locations.put(className, new Location(root, entryName));
+		}
+	}
+
+	/**
+	 * @param entryName The name of an archive entry or of a file relative to
+	 *            a classpath directory, e.g. "WEB-INF/lib/x.jar!/a/b/C.class"
+	 * @return The internal name of the class, e.g. a/b/C; null if the entry
+	 *         isn't a class file
+	 */
+	static String toClassName(String entryName)
+	{
+		if (!entryName.endsWith(CLASS_SUFFIX))
+		{
+			return null;
+		}
+		int start = entryName.lastIndexOf(NESTED_SEPARATOR);
+		start = (start == -1 ? 0 : start + NESTED_SEPARATOR.length());
+		if (entryName.startsWith(WEB_CLASSES, start))
+		{
+			start += WEB_CLASSES.length();
+		}
+		return entryName.substring(start, entryName.length() - CLASS_SUFFIX.length());
+	}
+
+	/**
+	 * @return The internal names of all classes on the classpath, e.g. a/b/C,
+	 *         in classpath order, so that the classes of an archive follow
+	 *         each other
+	 */
+	public Set<String> getClassNames()
+	{
+		return Collections.unmodifiableSet(locations.keySet());
+	}
+
+	/**
+	 * @param className The internal name of a class, e.g. a/b/C
+	 * @return The archive or directory defining the class, null if it isn't
+	 *         on the classpath
+	 */
+	public File getLocation(String className)
+	{
+		Location location = locations.get(className);
+		return location == null ? null : classpath[location.root];
+	}
+
+	/**
+	 * @param className The internal name of a class, e.g. a/b/C
+	 * @return The entry defining the class, e.g.
+	 *         "WEB-INF/lib/x.jar!/a/b/C.class"; null if it isn't on the
+	 *         classpath
+	 */
+	public String getEntryName(String className)
+	{
+		Location location = locations.get(className);
+		return location == null ? null : location.entryName;
+	}
+
+	public ClassFile getClassFile(String className) throws ClassFileNotFoundException
+	{
+		ClassFile classFile = classFiles.get(className);
+		if (classFile != null)
+		{
+			return classFile;
+		}
+		Location location = locations.get(className);
+		if (location == null)
+		{
+			throw new ClassFileNotFoundException(className);
+		}
+		try
+		{
+			byte[] bytes = read(location);
+			classFile = ClassFile.read(ByteBuffer.wrap(bytes));
+			classFiles.put(className, classFile, bytes.length);
+			return classFile;
+		}
+		catch (IOException e)
+		{
+			throw new ClassFileNotFoundException(className, e);
+		}
+		catch (ConstantPoolException e)
+		{
+			throw new ClassFileNotFoundException(className, e);
+		}
+	}
+
+	private byte[] read(Location location) throws IOException
+	{
+		File file = classpath[location.root];
+		if (file.isDirectory())
+		{
+			return readFully(new FileInputStream(new File(file, location.entryName)));
+		}
+
+		int separator = location.entryName.indexOf(NESTED_SEPARATOR);
+		if (separator == -1)
+		{
+			ZipFile zipFile = getZipFile(location.root);
+			ZipEntry entry = zipFile.getEntry(location.entryName);
+			if (entry == null)
+			{
+				throw new IOException("Entry " + location.entryName + " not found in " + file);
+			}
+			return readFully(zipFile.getInputStream(entry));
+		}
+
+		byte[] bytes = getNestedArchive(location.root, location.entryName.substring(0, separator)).get(
+				location.entryName.substring(separator + NESTED_SEPARATOR.length()));
+		if (bytes == null)
+		{
+			throw new IOException("Entry " + location.entryName + " not found in " + file);
+		}
+		return bytes;
+	}
+
+	private synchronized ZipFile getZipFile(int root) throws IOException
+	{
+		if (zipFiles[root] == null)
+		{
+			zipFiles[root] = new ZipFile(classpath[root]);
+		}
+		return zipFiles[root];
+	}
+
+	/**
+	 * Inflates the class files of a nested archive that are the first
+	 * definition of their class, including the ones of archives nested
+	 * further. Loading is synchronized, so that threads asking for classes of
+	 * the same archive don't inflate it twice.
+	 * @param root The classpath archive
+	 * @param nestedName The entry of the nested archive, e.g. WEB-INF/lib/x.jar
+	 * @return The class files by their entry names within the nested archive
+	 * @throws IOException If an archive can't be read
+	 */
+	private synchronized Map<String, byte[]> getNestedArchive(int root, String nestedName) throws IOException
+	{
+		String key = classpath[root].getAbsolutePath() + NESTED_SEPARATOR + nestedName;
+		Map<String, byte[]> classes = nestedArchives.get(key);
+		if (classes != null)
+		{
+			return classes;
+		}
+
+		classes = new HashMap<String, byte[]>();
+		int[] size = new int[1];
+		CentralDirectory centralDirectory = CentralDirectory.open(classpath[root]);
+		try
+		{
+			byte[] name = CentralDirectory.toBytes(nestedName);
+			while (centralDirectory.next())
+			{
+				if (centralDirectory.nameEquals(name, false))
+				{
+					ArchiveCursor nested = centralDirectory.openNested();
+					try
+					{
+						readClasses(nested, root, nestedName + NESTED_SEPARATOR, "", classes, size);
+					}
+					finally
+					{
+						nested.close();
+					}
+					break;
+				}
+			}
+		}
+		finally
+		{
+			centralDirectory.close();
+		}
+		nestedArchives.put(key, classes, size[0]);
+		return classes;
+	}
+
+	private void readClasses(ArchiveCursor archive, int root, String entryPrefix, String prefix,
+			Map<String, byte[]> classes, int[] size) throws IOException
+	{
+		while (archive.next())
+		{
+			if (archive.isArchive())
+			{
+				ArchiveCursor nested = null;
+				try
+				{
+					nested = archive.openNested();
+					readClasses(nested, root, entryPrefix, prefix + archive.getName() + NESTED_SEPARATOR, classes,
+							size);
+				}
+				catch (IOException e)
+				{
+					// Broken nested archives aren't indexed either
+				}
+				finally
+				{
+					if (nested != null)
+					{
+						nested.close();
+					}
+				}
+				continue;
+			}
+			String name = prefix + archive.getName();
+			String className = toClassName(name);
+			if (className == null)
+			{
+				continue;
+			}
+			// Classes shadowed by an earlier definition are never read
+			Location location = locations.get(className);
+			if (location != null && location.root == root && location.entryName.equals(entryPrefix + name))
+			{
+				byte[] bytes = readFully(archive.openEntry());
+				classes.put(name, bytes);
+				size[0] += bytes.length;
+			}
+		}
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException
+	{
+		try
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+			byte[] chunk = new byte[4096];
+			int read;
+			while ((read = in.read(chunk)) != -1)
+			{
+				out.write(chunk, 0, read);
+			}
+			return out.toByteArray();
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * @return The size in bytes of the class files parsed and cached
+	 */
+	public long getCachedSize()
+	{
+		return classFiles.getWeight();
+	}
+
+	/**
+	 * Closes the archives and drops the caches.
+	 */
+	public synchronized void close() throws IOException
+	{
+		IOException failure = null;
+		for (int i = 0; i < zipFiles.length; i++)
+		{
+			if (zipFiles[i] != null)
+			{
+				try
+				{
+					zipFiles[i].close();
+				}
+				catch (IOException e)
+				{
+					failure = e;
+				}
+				zipFiles[i] = null;
+			}
+		}
+		classFiles.clear();
+		nestedArchives.clear();
+		if (failure != null)
+		{
+			throw failure;
+		}
+	}
+
+	/**
+	 * Where a class is defined
+	 */
+	private static class Location
+	{
+		// Index of the classpath element
+		final int root;
+		// The archive entry or the file relative to the directory
+		final String entryName;
+
+		Location(int root, String entryName)
+		{
+			this.root = root;
+			this.entryName = entryName;
+		}
+	}
+
+	/**
+	 * Map holding values up to a total weight, dropping the least recently
+	 * used ones beyond. The most recent value is kept even if it alone
+	 * exceeds the bound.
+	 */
+	private static class LruCache<V>
+	{
+		private final LinkedHashMap<String, V> values = new LinkedHashMap<String, V>(64, 0.75f, true);
+		private final HashMap<String, Integer> weights = new HashMap<String, Integer>();
+		private final long capacity;
+		private long weight = 0;
+
+		LruCache(long capacity)
+		{
+			this.capacity = capacity;
+		}
+
+		synchronized V get(String key)
+		{
+			return values.get(key);
+		}
+
+		synchronized void put(String key, V value, int valueWeight)
+		{
+			Integer previous = weights.put(key, valueWeight);
+			if (previous != null)
+			{
+				weight -= previous;
+			}
+			values.put(key, value);
+			weight += valueWeight;
+
+			Iterator<String> eldest = values.keySet().iterator();
+			while (weight > capacity && values.size() > 1)
+			{
+				String evicted = eldest.next();
+				eldest.remove();
+				weight -= weights.remove(evicted);
+			}
+		}
+
+		synchronized long getWeight()
+		{
+			return weight;
+		}
+
+		synchronized void clear()
+		{
+			values.clear();
+			weights.clear();
+			weight = 0;
+		}
+	}
+}
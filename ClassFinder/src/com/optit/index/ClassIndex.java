@@ -0,0 +1,898 @@
+package com.optit.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import com.optit.matcher.AnnotationQuery;
+import com.optit.zip.ArchiveCursor;
+import com.optit.zip.CentralDirectory;
+import com.sun.tools.classfile.ClassFile;
+import com.sun.tools.classfile.ConstantPoolException;
+import com.sun.tools.classfile.Field;
+import com.sun.tools.classfile.Method;
+
+/**
+ * Persistent index of the class and source entries of archives.
+ * Every archive is recorded with its absolute path, size and last modified
+ * time. As long as that fingerprint doesn't change, the entry names are
+ * served from the index and the archive itself is never opened.
+ * Archives that are new or have changed get re-scanned on access.
+ * On demand, the annotations and the supertypes of the classes of an
+ * archive get indexed as well, in one pass over its class files, so that
+ * repeated annotation and type hierarchy searches don't read any class file.
+ * The index is safe to be used by several search threads at once.
+ */
+public class ClassIndex
+{
+	// "CFIX"
+	private static final int MAGIC = 0x43464958;
+	private static final int VERSION = 4;
+	private static final byte[] CLASS_SUFFIX = { '.', 'c', 'l', 'a', 's', 's' };
+	private static final byte[] SOURCE_SUFFIX = { '.', 'j', 'a', 'v', 'a' };
+
+	private final File indexFile;
+	private final ConcurrentHashMap<String, IndexedArchive> archives = new ConcurrentHashMap<String, IndexedArchive>();
+	private volatile boolean modified = false;
+
+	/**
+	 * Creates a new index that is stored in the given file.
+	 * Call {@link #load()} to read the existing content.
+	 * @param indexFile The file the index is stored in, null for an index
+	 *            that is only kept in memory
+	 */
+	public ClassIndex(File indexFile)
+	{
+		this.indexFile = indexFile;
+	}
+
+	/**
+	 * Opens the index stored in the given file. A missing, outdated or
+	 * corrupt index file results in an empty index that is rebuilt on use.
+	 * @param indexFile The file the index is stored in
+	 * @return The index
+	 */
+	public static ClassIndex open(File indexFile)
+	{
+		ClassIndex index = new ClassIndex(indexFile);
+		try
+		{
+			index.load();
+		}
+		catch (IOException e)
+		{
+			index.archives.clear();
+			index.modified = true;
+		}
+		return index;
+	}
+
+	/**
+	 * Reads the index file. Nothing happens if the file doesn't exist yet.
+	 * @throws IOException If the index file can't be read or is corrupt
+	 */
+	public void load() throws IOException
+	{
+		if (!indexFile.exists())
+		{
+			return;
+		}
+
+		// Every count is checked against the file length, so that a corrupt
+		// file can't make us allocate huge arrays
+		long maxCount = indexFile.length();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), 65536));
+		try
+		{
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+			{
+				throw new IOException("Unknown index file format: " + indexFile.getAbsolutePath());
+			}
+
+			int archiveCount = readCount(in, maxCount);
+			for (int i = 0; i < archiveCount; i++)
+			{
+				String path = in.readUTF();
+				long size = in.readLong();
+				long lastModified = in.readLong();
+				String[] entryNames = new String[readCount(in, maxCount)];
+				// Entry names are front coded: consecutive entries of an archive
+				// mostly share the package path
+				String previous = "";
+				for (int j = 0; j < entryNames.length; j++)
+				{
+					int prefix = in.readUnsignedShort();
+					if (prefix > previous.length())
+					{
+						throw new IOException("Corrupt index file: " + indexFile.getAbsolutePath());
+					}
+					previous = previous.substring(0, prefix) + in.readUTF();
+					entryNames[j] = previous;
+				}
+				IndexedClasses classes = null;
+				if (in.readBoolean())
+				{
+					Map<String, int[]> annotatedClasses = readAnnotations(in, maxCount, entryNames.length);
+					Map<String, int[]> annotatedMembers = readAnnotations(in, maxCount, entryNames.length);
+					String[] typeNames = new String[readCount(in, maxCount)];
+					for (int j = 0; j < typeNames.length; j++)
+					{
+						typeNames[j] = in.readUTF();
+					}
+					int[] types = new int[readCount(in, maxCount)];
+					for (int j = 0; j < types.length; j++)
+					{
+						types[j] = in.readInt();
+					}
+					checkTypes(types, entryNames.length, typeNames.length);
+					classes = new IndexedClasses(annotatedClasses, annotatedMembers, typeNames, types);
+				}
+				archives.put(path, new IndexedArchive(path, size, lastModified, entryNames, classes));
+			}
+		}
+		catch (EOFException e)
+		{
+			throw new IOException("Truncated index file: " + indexFile.getAbsolutePath());
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes the index file. The index is written into a temporary file first
+	 * so that an aborted run never leaves a broken index behind. Saving is
+	 * synchronized, the watcher thread and a server shutdown hook may save
+	 * the same index at the same time.
+	 * @throws IOException If the index file can't be written
+	 */
+	public synchronized void save() throws IOException
+	{
+		File tmpFile = new File(indexFile.getAbsolutePath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 65536));
+		// Archives added from now on still mark the index as modified
+		modified = false;
+		boolean written = false;
+		try
+		{
+			// Take a snapshot, other threads may still add archives
+			ArrayList<IndexedArchive> snapshot = new ArrayList<IndexedArchive>(archives.values());
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(snapshot.size());
+			for (IndexedArchive archive : snapshot)
+			{
+				out.writeUTF(archive.path);
+				out.writeLong(archive.size);
+				out.writeLong(archive.lastModified);
+				out.writeInt(archive.entryNames.length);
+				String previous = "";
+				for (String entryName : archive.entryNames)
+				{
+					int prefix = commonPrefix(previous, entryName);
+					out.writeShort(prefix);
+					out.writeUTF(entryName.substring(prefix));
+					previous = entryName;
+				}
+				IndexedClasses classes = archive.classes;
+				out.writeBoolean(classes != null);
+				if (classes != null)
+				{
+					writeAnnotations(out, classes.annotatedClasses);
+					writeAnnotations(out, classes.annotatedMembers);
+					out.writeInt(classes.typeNames.length);
+					for (String typeName : classes.typeNames)
+					{
+						out.writeUTF(typeName);
+					}
+					out.writeInt(classes.types.length);
+					for (int type : classes.types)
+					{
+						out.writeInt(type);
+					}
+				}
+			}
+			out.close();
+
+			if (indexFile.exists() && !indexFile.delete())
+			{
+				throw new IOException("Can't replace index file: " + indexFile.getAbsolutePath());
+			}
+			if (!tmpFile.renameTo(indexFile))
+			{
+				throw new IOException("Can't write index file: " + indexFile.getAbsolutePath());
+			}
+			written = true;
+		}
+		finally
+		{
+			out.close();
+			if (!written)
+			{
+				modified = true;
+			}
+		}
+	}
+
+	private static int readCount(DataInputStream in, long maxCount) throws IOException
+	{
+		int count = in.readInt();
+		if (count < 0 || count > maxCount)
+		{
+			throw new IOException("Corrupt index file");
+		}
+		return count;
+	}
+
+	private static Map<String, int[]> readAnnotations(DataInputStream in, long maxCount, int entryCount)
+			throws IOException
+	{
+		int typeCount = readCount(in, maxCount);
+		Map<String, int[]> annotations = new HashMap<String, int[]>(typeCount * 2);
+		for (int i = 0; i < typeCount; i++)
+		{
+			String type = in.readUTF();
+			int[] entries = new int[readCount(in, maxCount)];
+			for (int j = 0; j < entries.length; j++)
+			{
+				entries[j] = in.readInt();
+				if (entries[j] < 0 || entries[j] >= entryCount)
+				{
+					throw new IOException("Corrupt index file");
+				}
+			}
+			annotations.put(type, entries);
+		}
+		return annotations;
+	}
+
+	/**
+	 * Checks that the type records only refer to existing entries and type
+	 * names, see {@link IndexedClasses#types}
+	 */
+	private static void checkTypes(int[] types, int entryCount, int typeCount) throws IOException
+	{
+		int i = 0;
+		while (i < types.length)
+		{
+			if (i + 4 > types.length || types[i] < 0 || types[i] >= entryCount || types[i + 1] < 0
+					|| types[i + 1] >= typeCount || types[i + 2] < -1 || types[i + 2] >= typeCount
+					|| types[i + 3] < 0 || types[i + 3] > types.length - i - 4)
+			{
+				throw new IOException("Corrupt index file");
+			}
+			for (int j = 0; j < types[i + 3]; j++)
+			{
+				if (types[i + 4 + j] < 0 || types[i + 4 + j] >= typeCount)
+				{
+					throw new IOException("Corrupt index file");
+				}
+			}
+			i += 4 + types[i + 3];
+		}
+	}
+
+	private static void writeAnnotations(DataOutputStream out, Map<String, int[]> annotations) throws IOException
+	{
+		out.writeInt(annotations.size());
+		for (Map.Entry<String, int[]> annotation : annotations.entrySet())
+		{
+			out.writeUTF(annotation.getKey());
+			out.writeInt(annotation.getValue().length);
+			for (int entry : annotation.getValue())
+			{
+				out.writeInt(entry);
+			}
+		}
+	}
+
+	/**
+	 * Returns the names of the class and source entries of an archive.
+	 * The archive is only opened if it isn't indexed yet or if its size or
+	 * last modified time changed since it got indexed.
+	 * @param archive The archive
+	 * @return The entry names
+	 * @throws IOException If the archive has to be scanned and can't be read
+	 */
+	public String[] getEntryNames(File archive) throws IOException
+	{
+		String path = archive.getAbsolutePath();
+		long size = archive.length();
+		long lastModified = archive.lastModified();
+
+		IndexedArchive indexed = archives.get(path);
+		if (indexed != null && indexed.size == size && indexed.lastModified == lastModified)
+		{
+			return indexed.entryNames;
+		}
+
+		indexed = new IndexedArchive(path, size, lastModified, scan(archive), null);
+		archives.put(path, indexed);
+		modified = true;
+		return indexed.entryNames;
+	}
+
+	/**
+	 * Returns the classes of an archive annotated with an annotation type.
+	 * The class files of the archive are only read if its annotations
+	 * aren't indexed yet or if it changed since.
+	 * @param archive The archive
+	 * @param annotationType The annotation type, e.g. javax.ws.rs.Path
+	 * @return The entry names of the classes
+	 * @throws IOException If the archive has to be scanned and can't be read
+	 */
+	public String[] getAnnotatedClasses(File archive, String annotationType) throws IOException
+	{
+		IndexedArchive indexed = getClasses(archive);
+		return indexed.getEntryNames(indexed.classes.annotatedClasses.get(annotationType));
+	}
+
+	/**
+	 * Returns the classes of an archive having fields or methods annotated
+	 * with an annotation type, see {@link #getAnnotatedClasses(File, String)}.
+	 * @param archive The archive
+	 * @param annotationType The annotation type, e.g. javax.ws.rs.Path
+	 * @return The entry names of the classes
+	 * @throws IOException If the archive has to be scanned and can't be read
+	 */
+	public String[] getClassesWithAnnotatedMembers(File archive, String annotationType) throws IOException
+	{
+		IndexedArchive indexed = getClasses(archive);
+		return indexed.getEntryNames(indexed.classes.annotatedMembers.get(annotationType));
+	}
+
+	/**
+	 * Adds the classes of an archive with their superclass and interfaces
+	 * to a type hierarchy. The class files of the archive are only read if
+	 * its classes aren't indexed yet or if it changed since.
+	 * @param archive The archive
+	 * @param hierarchy The type hierarchy
+	 * @param nested Whether the classes of archives nested in the archive
+	 *            are added as well
+	 * @throws IOException If the archive has to be scanned and can't be read
+	 */
+	public void addTypes(File archive, TypeHierarchy hierarchy, boolean nested) throws IOException
+	{
+		IndexedArchive indexed = getClasses(archive);
+		String[] typeNames = indexed.classes.typeNames;
+		int[] types = indexed.classes.types;
+		String location = archive.getAbsolutePath();
+		for (int i = 0; i < types.length; i += 4 + types[i + 3])
+		{
+			String entryName = indexed.entryNames[types[i]];
+			if (!nested && entryName.indexOf("!/") != -1)
+			{
+				continue;
+			}
+			String[] interfaces = new String[types[i + 3]];
+			for (int j = 0; j < interfaces.length; j++)
+			{
+				interfaces[j] = typeNames[types[i + 4 + j]];
+			}
+			hierarchy.add(typeNames[types[i + 1]], types[i + 2] == -1 ? null : typeNames[types[i + 2]], interfaces,
+					entryName, location);
+		}
+	}
+
+	private IndexedArchive getClasses(File archive) throws IOException
+	{
+		String path = archive.getAbsolutePath();
+		long size = archive.length();
+		long lastModified = archive.lastModified();
+
+		IndexedArchive indexed = archives.get(path);
+		if (indexed != null && indexed.size == size && indexed.lastModified == lastModified
+				&& indexed.classes != null)
+		{
+			return indexed;
+		}
+
+		if (indexed == null || indexed.size != size || indexed.lastModified != lastModified)
+		{
+			indexed = new IndexedArchive(path, size, lastModified, scan(archive), null);
+		}
+		indexed = scanClasses(archive, indexed);
+		archives.put(path, indexed);
+		modified = true;
+		return indexed;
+	}
+
+	/**
+	 * Checks whether the archive is indexed with its current fingerprint.
+	 * @param archive The archive
+	 * @return True if the entry names can be served without opening the archive
+	 */
+	public boolean isUpToDate(File archive)
+	{
+		IndexedArchive indexed = archives.get(archive.getAbsolutePath());
+		return indexed != null && indexed.size == archive.length() && indexed.lastModified == archive.lastModified();
+	}
+
+	/**
+	 * Removes an archive from the index.
+	 * @param archive The archive
+	 */
+	public void remove(File archive)
+	{
+		if (archives.remove(archive.getAbsolutePath()) != null)
+		{
+			modified = true;
+		}
+	}
+
+	/**
+	 * @return The absolute paths of all indexed archives
+	 */
+	public Set<String> getArchivePaths()
+	{
+		return new HashSet<String>(archives.keySet());
+	}
+
+	/**
+	 * @return Whether the index changed since it got loaded or saved
+	 */
+	public boolean isModified()
+	{
+		return modified;
+	}
+
+	/**
+	 * @return The number of indexed archives
+	 */
+	public int size()
+	{
+		return archives.size();
+	}
+
+	/**
+	 * @return The file the index is stored in
+	 */
+	public File getIndexFile()
+	{
+		return indexFile;
+	}
+
+	/**
+	 * Reads the class and source entry names of an archive. The entries of
+	 * archives nested within the archive are recorded with the chain of
+	 * archive entries leading to them, e.g. "WEB-INF/lib/x.jar!/a/B.class".
+	 * @param archive The archive
+	 * @return The entry names
+	 * @throws IOException If the archive can't be read
+	 */
+	private String[] scan(File archive) throws IOException
+	{
+		ArrayList<String> entryNames = new ArrayList<String>();
+		CentralDirectory centralDirectory;
+		try
+		{
+			centralDirectory = CentralDirectory.open(archive);
+		}
+		catch (ZipException e)
+		{
+			// Leave it to ZipFile to read whatever it can
+			centralDirectory = null;
+		}
+
+		if (centralDirectory != null)
+		{
+			try
+			{
+				scan(centralDirectory, "", entryNames);
+			}
+			finally
+			{
+				centralDirectory.close();
+			}
+			return entryNames.toArray(new String[entryNames.size()]);
+		}
+
+		ZipFile zipFile = new ZipFile(archive);
+		try
+		{
+			Enumeration<? extends ZipEntry> entries = zipFile.entries();
+			while (entries.hasMoreElements())
+			{
+				String entryName = entries.nextElement().getName();
+				if (isIndexed(entryName))
+				{
+					entryNames.add(entryName);
+				}
+			}
+		}
+		finally
+		{
+			zipFile.close();
+		}
+		return entryNames.toArray(new String[entryNames.size()]);
+	}
+
+	private void scan(ArchiveCursor archive, String prefix, ArrayList<String> entryNames) throws IOException
+	{
+		while (archive.next())
+		{
+			if (archive.nameEndsWith(CLASS_SUFFIX, false) || archive.nameEndsWith(SOURCE_SUFFIX, false))
+			{
+				entryNames.add(prefix + archive.getName());
+			}
+			else if (archive.isArchive())
+			{
+				ArchiveCursor nested = null;
+				try
+				{
+					nested = archive.openNested();
+					scan(nested, prefix + archive.getName() + "!/", entryNames);
+				}
+				catch (IOException e)
+				{
+					// Broken nested archives are left out
+				}
+				finally
+				{
+					if (nested != null)
+					{
+						nested.close();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the annotations and supertypes of the class entries of an
+	 * archive, and of the archives nested within it.
+	 * @param archive The archive
+	 * @param indexed The entry names of the archive
+	 * @return The archive with its classes
+	 * @throws IOException If the archive can't be read
+	 */
+	private IndexedArchive scanClasses(File archive, IndexedArchive indexed) throws IOException
+	{
+		ClassScan scan = new ClassScan(indexed.entryNames);
+
+		CentralDirectory centralDirectory;
+		try
+		{
+			centralDirectory = CentralDirectory.open(archive);
+		}
+		catch (ZipException e)
+		{
+			centralDirectory = null;
+		}
+
+		if (centralDirectory != null)
+		{
+			try
+			{
+				scanClasses(centralDirectory, "", scan);
+			}
+			finally
+			{
+				centralDirectory.close();
+			}
+		}
+		else
+		{
+			ZipFile zipFile = new ZipFile(archive);
+			try
+			{
+				Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+				while (zipEntries.hasMoreElements())
+				{
+					ZipEntry entry = zipEntries.nextElement();
+					if (entry.getName().endsWith(".class"))
+					{
+						InputStream in = zipFile.getInputStream(entry);
+						try
+						{
+							scan.read(entry.getName(), in);
+						}
+						finally
+						{
+							in.close();
+						}
+					}
+				}
+			}
+			finally
+			{
+				zipFile.close();
+			}
+		}
+		return new IndexedArchive(indexed.path, indexed.size, indexed.lastModified, indexed.entryNames,
+				scan.toIndexedClasses());
+	}
+
+	private void scanClasses(ArchiveCursor archive, String prefix, ClassScan scan) throws IOException
+	{
+		while (archive.next())
+		{
+			if (archive.nameEndsWith(CLASS_SUFFIX, false))
+			{
+				InputStream in = archive.openEntry();
+				try
+				{
+					scan.read(prefix + archive.getName(), in);
+				}
+				finally
+				{
+					in.close();
+				}
+			}
+			else if (archive.isArchive())
+			{
+				ArchiveCursor nested = null;
+				try
+				{
+					nested = archive.openNested();
+					scanClasses(nested, prefix + archive.getName() + "!/", scan);
+				}
+				catch (IOException e)
+				{
+					// Broken nested archives are left out
+				}
+				finally
+				{
+					if (nested != null)
+					{
+						nested.close();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Decides which entries are recorded. Only class and source files can be
+	 * found by a search, resources and directories are left out.
+	 * @param entryName The name of the archive entry
+	 * @return Whether the entry is recorded in the index
+	 */
+	static boolean isIndexed(String entryName)
+	{
+		return entryName.endsWith(".class") || entryName.endsWith(".java");
+	}
+
+	static int commonPrefix(String a, String b)
+	{
+		int max = Math.min(Math.min(a.length(), b.length()), 0xFFFF);
+		int i = 0;
+		while (i < max && a.charAt(i) == b.charAt(i))
+		{
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * An archive as it is recorded in the index
+	 */
+	private static class IndexedArchive
+	{
+		final String path;
+		final long size;
+		final long lastModified;
+		final String[] entryNames;
+		// What its class files hold, null until they got read
+		final IndexedClasses classes;
+
+		IndexedArchive(String path, long size, long lastModified, String[] entryNames, IndexedClasses classes)
+		{
+			this.path = path;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.entryNames = entryNames;
+			this.classes = classes;
+		}
+
+		String[] getEntryNames(int[] positions)
+		{
+			if (positions == null)
+			{
+				return new String[0];
+			}
+			String[] names = new String[positions.length];
+			for (int i = 0; i < positions.length; i++)
+			{
+				names[i] = entryNames[positions[i]];
+			}
+			return names;
+		}
+	}
+
+	/**
+	 * The annotations and supertypes of the classes of an archive, classes
+	 * are referred to by the position of their entry names
+	 */
+	private static class IndexedClasses
+	{
+		// Annotation type to the classes annotated with it on the class or on
+		// a member
+		final Map<String, int[]> annotatedClasses;
+		final Map<String, int[]> annotatedMembers;
+		// The type names used by the classes, e.g. java.lang.Object
+		final String[] typeNames;
+		// One record per class: entry position, type name, superclass name
+		// or -1, interface count, interface names
+		final int[] types;
+
+		IndexedClasses(Map<String, int[]> annotatedClasses, Map<String, int[]> annotatedMembers, String[] typeNames,
+				int[] types)
+		{
+			this.annotatedClasses = annotatedClasses;
+			this.annotatedMembers = annotatedMembers;
+			this.typeNames = typeNames;
+			this.types = types;
+		}
+	}
+
+	/**
+	 * Collects the annotations and supertypes while the class files of an
+	 * archive are read
+	 */
+	private static class ClassScan
+	{
+		private final Map<String, Integer> entries;
+		private final Map<String, ArrayList<Integer>> annotatedClasses = new HashMap<String, ArrayList<Integer>>();
+		private final Map<String, ArrayList<Integer>> annotatedMembers = new HashMap<String, ArrayList<Integer>>();
+		private final Map<String, Integer> typeIds = new HashMap<String, Integer>();
+		private final ArrayList<String> typeNames = new ArrayList<String>();
+		private int[] types = new int[1024];
+		private int typesLength = 0;
+
+		ClassScan(String[] entryNames)
+		{
+			entries = new HashMap<String, Integer>(entryNames.length * 2);
+			for (int i = 0; i < entryNames.length; i++)
+			{
+				entries.put(entryNames[i], i);
+			}
+		}
+
+		/**
+		 * Records the annotation types and supertypes of a class file, only
+		 * the annotation attributes are decoded.
+		 */
+		void read(String entryName, InputStream in) throws IOException
+		{
+			Integer position = entries.get(entryName);
+			if (position == null)
+			{
+				return;
+			}
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] chunk = new byte[8192];
+			int read;
+			while ((read = in.read(chunk)) != -1)
+			{
+				bytes.write(chunk, 0, read);
+			}
+
+			HashSet<String> classTypes = new HashSet<String>();
+			HashSet<String> memberTypes = new HashSet<String>();
+			String name;
+			String superclass;
+			String[] interfaces;
+			try
+			{
+				ClassFile classFile = ClassFile.readLazily(ByteBuffer.wrap(bytes.toByteArray()),
+						AnnotationQuery.ATTRIBUTES);
+				AnnotationQuery.addTypeNames(classFile, classFile.attributes, classTypes);
+				for (Field field : classFile.fields)
+				{
+					AnnotationQuery.addTypeNames(classFile, field.attributes, memberTypes);
+				}
+				for (Method method : classFile.methods)
+				{
+					AnnotationQuery.addTypeNames(classFile, method.attributes, memberTypes);
+				}
+				name = classFile.getName();
+				superclass = classFile.super_class == 0 ? null : classFile.getSuperclassName();
+				interfaces = new String[classFile.interfaces.length];
+				for (int i = 0; i < interfaces.length; i++)
+				{
+					interfaces[i] = classFile.getInterfaceName(i);
+				}
+			}
+			catch (IOException e)
+			{
+				// Broken class files are left out
+				return;
+			}
+			catch (ConstantPoolException e)
+			{
+				return;
+			}
+			add(annotatedClasses, classTypes, position);
+			add(annotatedMembers, memberTypes, position);
+
+			ensureCapacity(4 + interfaces.length);
+			types[typesLength++] = position;
+			types[typesLength++] = typeId(name);
+			types[typesLength++] = superclass == null ? -1 : typeId(superclass);
+			types[typesLength++] = interfaces.length;
+			for (String type : interfaces)
+			{
+				types[typesLength++] = typeId(type);
+			}
+		}
+
+		private void ensureCapacity(int length)
+		{
+			if (typesLength + length > types.length)
+			{
+				types = Arrays.copyOf(types, Math.max(types.length * 2, typesLength + length));
+			}
+		}
+
+		private int typeId(String internalName)
+		{
+			String typeName = internalName.replace('/', '.');
+			Integer id = typeIds.get(typeName);
+			if (id == null)
+			{
+				id = typeNames.size();
+				typeIds.put(typeName, id);
+				typeNames.add(typeName);
+			}
+			return id;
+		}
+
+		private static void add(Map<String, ArrayList<Integer>> annotations, Set<String> types, int position)
+		{
+			for (String type : types)
+			{
+				ArrayList<Integer> positions = annotations.get(type);
+				if (positions == null)
+				{
+					positions = new ArrayList<Integer>();
+					annotations.put(type, positions);
+				}
+				positions.add(position);
+			}
+		}
+
+		private static Map<String, int[]> toArrays(Map<String, ArrayList<Integer>> annotations)
+		{
+			Map<String, int[]> arrays = new HashMap<String, int[]>(annotations.size() * 2);
+			for (Map.Entry<String, ArrayList<Integer>> annotation : annotations.entrySet())
+			{
+				ArrayList<Integer> positions = annotation.getValue();
+				int[] array = new int[positions.size()];
+				for (int i = 0; i < array.length; i++)
+				{
+					array[i] = positions.get(i);
+				}
+				arrays.put(annotation.getKey(), array);
+			}
+			return arrays;
+		}
+
+		IndexedClasses toIndexedClasses()
+		{
+			return new IndexedClasses(toArrays(annotatedClasses), toArrays(annotatedMembers),
+					typeNames.toArray(new String[typeNames.size()]), Arrays.copyOf(types, typesLength));
+		}
+	}
+}
@@ -0,0 +1,531 @@
+package com.optit.index;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The dependencies between the classes found, e.g. to export the dependency
+ * graph of a deployment, rolled up to packages and archives.
+ * Like the {@link TypeHierarchy}, classes are referred to by integer IDs and
+ * the dependencies are kept in primitive int arrays, so graphs with tens of
+ * millions of dependencies fit into a normal heap. Once all dependencies are
+ * added, the graph is built on the first query: the classes are renumbered
+ * in the order of their names, IDs taken before become void, and the
+ * dependencies of each class are sorted into an adjacency array, duplicates
+ * dropped. A built graph only keeps the adjacency array, one int per
+ * dependency, and turns it back into a list of edges if more are added.
+ * <p>
+ * The binary format written by {@link #write(DataOutputStream)} holds the
+ * node names front coded like the entry names of the {@link ClassIndex},
+ * followed by the adjacency of every node: the number of its dependencies
+ * and the gaps between their IDs, as variable length integers.
+ * <p>
+ * Classes and their dependencies may be added by several threads at once.
+ */
+public class DependencyGraph
+{
+	private static final int MAGIC = 0x43464447;
+	private static final int VERSION = 1;
+
+	private final HashMap<String, Integer> ids = new HashMap<String, Integer>();
+	private final ArrayList<String> names = new ArrayList<String>();
+	// The archive of each class, an index into archiveNames, -1 if unknown
+	private int[] archives = new int[256];
+	private final HashMap<String, Integer> archiveIds = new HashMap<String, Integer>();
+	private final ArrayList<String> archiveNames = new ArrayList<String>();
+	// Pairs of origin and target IDs, as added; null once built
+	private int[] edges = new int[1024];
+	private int edgeCount = 0;
+
+	// Adjacency arrays, built on the first query after dependencies were
+	// added: the dependencies of node n are targets[start[n]] up to
+	// targets[start[n + 1]]
+	private int[] start;
+	private int[] targets;
+
+	/**
+	 * Adds a class, or looks up the one added already.
+	 * @param className The class, e.g. java.util.ArrayList
+	 * @param archive The archive or directory it is found in, null if
+	 *            unknown. The first one given counts.
+	 * @return The ID of the class
+	 */
+	public synchronized int addClass(String className, String archive)
+	{
+		Integer id = ids.get(className);
+		if (id != null)
+		{
+			return id;
+		}
+		unbuild();
+		id = names.size();
+		ids.put(className, id);
+		names.add(className);
+		if (id == archives.length)
+		{
+			archives = Arrays.copyOf(archives, id * 2);
+		}
+		archives[id] = archive == null ? -1 : getArchiveId(archive);
+		return id;
+	}
+
+	private int getArchiveId(String archive)
+	{
+		Integer id = archiveIds.get(archive);
+		if (id == null)
+		{
+			id = archiveNames.size();
+			archiveIds.put(archive, id);
+			archiveNames.add(archive);
+		}
+		return id;
+	}
+
+	/**
+	 * Adds the dependencies of a class. Dependencies of a class on itself are
+	 * left out.
+	 * @param origin The ID of the class
+	 * @param dependencies The IDs of the classes it depends on
+	 * @param count The number of IDs
+	 */
+	public synchronized void addDependencies(int origin, int[] dependencies, int count)
+	{
+		unbuild();
+		if ((edgeCount + count) * 2 > edges.length)
+		{
+			edges = Arrays.copyOf(edges, Math.max(edges.length * 2, (edgeCount + count) * 2));
+		}
+		for (int i = 0; i < count; i++)
+		{
+			if (dependencies[i] != origin)
+			{
+				edges[edgeCount * 2] = origin;
+				edges[edgeCount * 2 + 1] = dependencies[i];
+				edgeCount++;
+			}
+		}
+	}
+
+	/**
+	 * @param className A class, e.g. java.util.ArrayList
+	 * @return Its ID, -1 if it wasn't added
+	 */
+	public synchronized int getId(String className)
+	{
+		Integer id = ids.get(className);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * @param id The ID of a class
+	 * @return The class, e.g. java.util.ArrayList
+	 */
+	public synchronized String getName(int id)
+	{
+		build();
+		return names.get(id);
+	}
+
+	/**
+	 * @param id The ID of a class
+	 * @return The archive the class is found in, null if unknown
+	 */
+	public synchronized String getArchive(int id)
+	{
+		build();
+		return archives[id] == -1 ? null : archiveNames.get(archives[id]);
+	}
+
+	/**
+	 * @return The number of classes
+	 */
+	public synchronized int size()
+	{
+		return names.size();
+	}
+
+	/**
+	 * @return The number of distinct dependencies
+	 */
+	public synchronized int getDependencyCount()
+	{
+		build();
+		return targets.length;
+	}
+
+	/**
+	 * @param id The ID of a class
+	 * @return The IDs of the classes it depends on, in ascending order
+	 */
+	public synchronized int[] getDependencies(int id)
+	{
+		build();
+		return Arrays.copyOfRange(targets, start[id], start[id + 1]);
+	}
+
+	/**
+	 * @return The dependencies between the packages of the classes, e.g.
+	 *         java.util depending on java.lang. Dependencies within a package
+	 *         are left out.
+	 */
+	public synchronized DependencyGraph getPackageGraph()
+	{
+		build();
+		int[] groups = new int[names.size()];
+		HashMap<String, Integer> packageIds = new HashMap<String, Integer>();
+		ArrayList<String> packageNames = new ArrayList<String>();
+		for (int id = 0; id < groups.length; id++)
+		{
+			String name = names.get(id);
+			String packageName = name.substring(0, Math.max(name.lastIndexOf('.'), 0));
+			Integer packageId = packageIds.get(packageName);
+			if (packageId == null)
+			{
+				packageId = packageNames.size();
+				packageIds.put(packageName, packageId);
+				packageNames.add(packageName);
+			}
+			groups[id] = packageId;
+		}
+		return rollUp(groups, packageNames);
+	}
+
+	/**
+	 * @return The dependencies between the archives of the classes.
+	 *         Dependencies within an archive and of classes with unknown
+	 *         archives are left out.
+	 */
+	public synchronized DependencyGraph getArchiveGraph()
+	{
+		build();
+		return rollUp(Arrays.copyOf(archives, names.size()), archiveNames);
+	}
+
+	/**
+	 * @param groups The group of each node, -1 for none
+	 * @param groupNames The names of the groups
+	 * @return The graph of the groups
+	 */
+	private DependencyGraph rollUp(int[] groups, ArrayList<String> groupNames)
+	{
+		DependencyGraph graph = new DependencyGraph();
+		for (String groupName : groupNames)
+		{
+			graph.addClass(groupName, null);
+		}
+		int[] dependencies = new int[16];
+		for (int id = 0; id < names.size(); id++)
+		{
+			if (groups[id] == -1)
+			{
+				continue;
+			}
+			int count = 0;
+			for (int i = start[id]; i < start[id + 1]; i++)
+			{
+				if (groups[targets[i]] != -1)
+				{
+					if (count == dependencies.length)
+					{
+						dependencies = Arrays.copyOf(dependencies, count * 2);
+					}
+					dependencies[count++] = groups[targets[i]];
+				}
+			}
+			graph.addDependencies(groups[id], dependencies, count);
+		}
+		graph.build();
+		return graph;
+	}
+
+	/**
+	 * Numbers the nodes in the order of their names and sorts the edges by
+	 * origin and target, counting sort by origin
+	 */
+	private void build()
+	{
+		if (start != null)
+		{
+			return;
+		}
+		int nodeCount = names.size();
+		String[] sorted = names.toArray(new String[nodeCount]);
+		Arrays.sort(sorted);
+		// Old ID to new ID
+		int[] renumbered = new int[nodeCount];
+		int[] newArchives = new int[Math.max(nodeCount, 1)];
+		for (int i = 0; i < nodeCount; i++)
+		{
+			int id = ids.get(sorted[i]);
+			renumbered[id] = i;
+			newArchives[i] = archives[id];
+			ids.put(sorted[i], i);
+			names.set(i, sorted[i]);
+		}
+		archives = newArchives;
+
+		int[] counts = new int[nodeCount + 1];
+		for (int i = 0; i < edgeCount; i++)
+		{
+			edges[i * 2] = renumbered[edges[i * 2]];
+			edges[i * 2 + 1] = renumbered[edges[i * 2 + 1]];
+			counts[edges[i * 2]]++;
+		}
+		int[] starts = new int[nodeCount + 1];
+		int next = 0;
+		for (int i = 0; i <= nodeCount; i++)
+		{
+			starts[i] = next;
+			next += counts[i];
+		}
+		int[] nextTarget = starts.clone();
+		int[] sortedTargets = new int[edgeCount];
+		for (int i = 0; i < edgeCount; i++)
+		{
+			sortedTargets[nextTarget[edges[i * 2]]++] = edges[i * 2 + 1];
+		}
+
+		// Sort the dependencies of every node and drop the duplicates, moving
+		// them to the front
+		int distinct = 0;
+		for (int id = 0; id < nodeCount; id++)
+		{
+			int from = starts[id];
+			int to = starts[id + 1];
+			Arrays.sort(sortedTargets, from, to);
+			starts[id] = distinct;
+			for (int i = from; i < to; i++)
+			{
+				if (i == from || sortedTargets[i] != sortedTargets[i - 1])
+				{
+					sortedTargets[distinct++] = sortedTargets[i];
+				}
+			}
+		}
+		starts[nodeCount] = distinct;
+		targets = Arrays.copyOf(sortedTargets, distinct);
+		edges = null;
+		edgeCount = 0;
+		start = starts;
+	}
+
+	/**
+	 * Turns the adjacency arrays of a built graph back into the list of
+	 * edges, before classes or dependencies are added
+	 */
+	private void unbuild()
+	{
+		if (start == null)
+		{
+			return;
+		}
+		edgeCount = targets.length;
+		edges = new int[Math.max(edgeCount * 2, 1024)];
+		for (int id = 0; id < start.length - 1; id++)
+		{
+			for (int i = start[id]; i < start[id + 1]; i++)
+			{
+				edges[i * 2] = id;
+				edges[i * 2 + 1] = targets[i];
+			}
+		}
+		start = null;
+		targets = null;
+	}
+
+	/**
+	 * Writes the graph in the binary format.
+	 * @param out The stream
+	 * @throws IOException If writing fails
+	 */
+	public synchronized void write(DataOutputStream out) throws IOException
+	{
+		build();
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(names.size());
+		String previous = "";
+		for (String name : names)
+		{
+			int prefix = ClassIndex.commonPrefix(previous, name);
+			out.writeShort(prefix);
+			out.writeUTF(name.substring(prefix));
+			previous = name;
+		}
+		for (int id = 0; id < names.size(); id++)
+		{
+			writeVarInt(out, start[id + 1] - start[id]);
+			int last = -1;
+			for (int i = start[id]; i < start[id + 1]; i++)
+			{
+				writeVarInt(out, targets[i] - last);
+				last = targets[i];
+			}
+		}
+	}
+
+	/**
+	 * Reads a graph in the binary format. The archives of the classes aren't
+	 * part of it.
+	 * @param in The stream
+	 * @return The graph
+	 * @throws IOException If reading fails or the format is unknown
+	 */
+	public static DependencyGraph read(DataInputStream in) throws IOException
+	{
+		try
+		{
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+			{
+				throw new IOException("Unknown dependency graph format");
+			}
+			DependencyGraph graph = new DependencyGraph();
+			int nodeCount = in.readInt();
+			if (nodeCount < 0)
+			{
+				throw new IOException("Corrupt dependency graph");
+			}
+			String previous = "";
+			for (int id = 0; id < nodeCount; id++)
+			{
+				int prefix = in.readUnsignedShort();
+				if (prefix > previous.length())
+				{
+					throw new IOException("Corrupt dependency graph");
+				}
+				previous = previous.substring(0, prefix) + in.readUTF();
+				// A name that occurs twice would shift the IDs of the edges
+				if (graph.addClass(previous, null) != id)
+				{
+					throw new IOException("Corrupt dependency graph");
+				}
+			}
+			int[] dependencies = new int[16];
+			for (int id = 0; id < nodeCount; id++)
+			{
+				// The targets of a class are distinct and ascending
+				int count = readVarInt(in);
+				if (count < 0 || count > nodeCount)
+				{
+					throw new IOException("Corrupt dependency graph");
+				}
+				if (count > dependencies.length)
+				{
+					dependencies = new int[count];
+				}
+				int last = -1;
+				for (int i = 0; i < count; i++)
+				{
+					int delta = readVarInt(in);
+					last += delta;
+					if (delta < 1 || last >= nodeCount)
+					{
+						throw new IOException("Corrupt dependency graph");
+					}
+					dependencies[i] = last;
+				}
+				graph.addDependencies(id, dependencies, count);
+			}
+			graph.build();
+			return graph;
+		}
+		catch (EOFException e)
+		{
+			throw new IOException("Truncated dependency graph");
+		}
+	}
+
+	private static void writeVarInt(DataOutputStream out, int value) throws IOException
+	{
+		while ((value & ~0x7F) != 0)
+		{
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readVarInt(DataInputStream in) throws IOException
+	{
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7)
+		{
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+			{
+				return value;
+			}
+		}
+		throw new IOException("Corrupt dependency graph");
+	}
+
+	/**
+	 * Writes the dependencies as comma separated values, one per line with
+	 * origin and target.
+	 * @param out The writer
+	 * @throws IOException If writing fails
+	 */
+	public synchronized void writeCsv(Writer out) throws IOException
+	{
+		build();
+		out.write("origin,target\n");
+		for (int id = 0; id < names.size(); id++)
+		{
+			String origin = toCsv(names.get(id));
+			for (int i = start[id]; i < start[id + 1]; i++)
+			{
+				out.write(origin);
+				out.write(',');
+				out.write(toCsv(names.get(targets[i])));
+				out.write('\n');
+			}
+		}
+	}
+
+	private static String toCsv(String value)
+	{
+		if (value.indexOf(',') == -1 && value.indexOf('"') == -1)
+		{
+			return value;
+		}
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+
+	/**
+	 * Writes the graph in the DOT language of Graphviz, with all nodes,
+	 * including the ones without dependencies.
+	 * @param out The writer
+	 * @param graphName The name of the graph
+	 * @throws IOException If writing fails
+	 */
+	public synchronized void writeDot(Writer out, String graphName) throws IOException
+	{
+		build();
+		out.write("digraph " + toDot(graphName) + " {\n");
+		for (String name : names)
+		{
+			out.write("\t" + toDot(name) + ";\n");
+		}
+		for (int id = 0; id < names.size(); id++)
+		{
+			String origin = toDot(names.get(id));
+			for (int i = start[id]; i < start[id + 1]; i++)
+			{
+				out.write("\t" + origin + " -> " + toDot(names.get(targets[i])) + ";\n");
+			}
+		}
+		out.write("}\n");
+	}
+
+	private static String toDot(String value)
+	{
+		return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+}
@@ -0,0 +1,186 @@
+package com.optit.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.optit.SearchableFileFilter;
+import com.optit.logger.Logger;
+
+/**
+ * Keeps a {@link ClassIndex} up to date with the archives below a set of
+ * directories. The directories are polled: every round compares size and
+ * last modified time of the archives with the previous round. Only archives
+ * that were created or modified get re-scanned, deleted ones are removed
+ * from the index.
+ * <p>
+ * An archive gets re-scanned once it stopped changing between two rounds,
+ * so an archive that is still being copied or a burst of redeployments
+ * results in one scan instead of many.
+ */
+public class IndexWatcher implements Runnable
+{
+	private final ClassIndex index;
+	private final List<File> roots;
+	private final boolean recursive;
+	private final long interval;
+	private final Logger logger;
+	// Size and last modified time of every archive seen in the last round
+	private Map<String, long[]> snapshot;
+	private volatile boolean stopped = false;
+
+	/**
+	 * @param index The index to maintain
+	 * @param roots The directories (or single archives) to watch
+	 * @param recursive Whether sub directories are watched too
+	 * @param interval The time between two rounds in milliseconds
+	 * @param logger Reports the changes (verbose) and errors
+	 */
+	public IndexWatcher(ClassIndex index, List<File> roots, boolean recursive, long interval, Logger logger)
+	{
+		this.index = index;
+		this.roots = roots;
+		this.recursive = recursive;
+		this.interval = interval;
+		this.logger = logger;
+	}
+
+	/**
+	 * Polls until stopped. The index gets written after every round that
+	 * changed it, if it is stored in a file.
+	 */
+	public void run()
+	{
+		while (!stopped)
+		{
+			if (poll() != 0 && index.getIndexFile() != null)
+			{
+				try
+				{
+					index.save();
+				}
+				catch (IOException e)
+				{
+					logger.logErr("Error writing index " + index.getIndexFile().getAbsolutePath() + ": "
+							+ e.getMessage());
+				}
+			}
+			try
+			{
+				Thread.sleep(interval);
+			}
+			catch (InterruptedException e)
+			{
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Stops polling after the current round.
+	 */
+	public void stop()
+	{
+		stopped = true;
+	}
+
+	/**
+	 * Runs one round: compares the archives with the last round and updates
+	 * the index. The first round brings the index up to date with all
+	 * archives.
+	 * @return The number of archives re-scanned or removed
+	 */
+	public int poll()
+	{
+		Map<String, long[]> current = new HashMap<String, long[]>();
+		for (File root : roots)
+		{
+			list(root, current);
+		}
+
+		int changes = 0;
+		for (Map.Entry<String, long[]> archive : current.entrySet())
+		{
+			File file = new File(archive.getKey());
+			long[] previous = (snapshot == null) ? null : snapshot.get(archive.getKey());
+			// Still changing, wait for it to settle
+			if (snapshot != null
+					&& (previous == null || previous[0] != archive.getValue()[0] || previous[1] != archive.getValue()[1]))
+			{
+				continue;
+			}
+			if (!index.isUpToDate(file))
+			{
+				try
+				{
+					index.getEntryNames(file);
+					logger.logVerbose("Indexed " + archive.getKey());
+				}
+				catch (IOException e)
+				{
+					logger.logVerbose("Error indexing " + archive.getKey() + ": " + e.getMessage());
+				}
+				changes++;
+			}
+		}
+
+		// Archives that are gone, also the ones deleted while not watching
+		for (String path : index.getArchivePaths())
+		{
+			if (!current.containsKey(path) && isWatched(path))
+			{
+				index.remove(new File(path));
+				logger.logVerbose("Removed " + path);
+				changes++;
+			}
+		}
+
+		snapshot = current;
+		return changes;
+	}
+
+	private void list(File file, Map<String, long[]> archives)
+	{
+		if (file.isDirectory())
+		{
+			File[] files = file.listFiles();
+			if (files == null)
+			{
+				return;
+			}
+			for (File child : files)
+			{
+				if (recursive || !child.isDirectory())
+				{
+					list(child, archives);
+				}
+			}
+		}
+		else if (SearchableFileFilter.isArchive(file.getName()))
+		{
+			archives.put(file.getAbsolutePath(), new long[] { file.length(), file.lastModified() });
+		}
+	}
+
+	/**
+	 * @return Whether the archive lies below the watched directories
+	 */
+	private boolean isWatched(String path)
+	{
+		for (File root : roots)
+		{
+			String rootPath = root.getAbsolutePath();
+			if (path.equals(rootPath))
+			{
+				return true;
+			}
+			if (path.startsWith(rootPath + File.separator))
+			{
+				return recursive || path.indexOf(File.separatorChar, rootPath.length() + 1) == -1;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,274 @@
+package com.optit.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The supertype edges of all classes found, to look up the transitive
+ * subtypes, e.g. all implementors of javax.sql.DataSource, or supertypes of
+ * a type.
+ * Types are referred to by integer IDs and the edges are kept in primitive
+ * int arrays, so millions of classes fit in little memory. Once all classes
+ * are added, the edges get sorted into adjacency arrays in both directions
+ * and a query only walks them, it doesn't touch any class name but the
+ * results'.
+ * Classes may be added by several search threads at once.
+ */
+public class TypeHierarchy
+{
+	private final HashMap<String, Integer> ids = new HashMap<String, Integer>();
+	private final ArrayList<String> names = new ArrayList<String>();
+	// Pairs of subtype and supertype IDs, as added
+	private int[] edges = new int[1024];
+	private int edgeCount = 0;
+	// Where the classes are defined: their type ID, entry name and location.
+	// The same class may be found several times.
+	private int[] definedTypes = new int[256];
+	private String[] definitionEntries = new String[256];
+	private String[] definitionLocations = new String[256];
+	private int definitionCount = 0;
+
+	// Adjacency arrays, built on the first query after classes were added:
+	// the supertypes of type t are supers[superStart[t]] up to
+	// supers[superStart[t + 1]], likewise subtypes and definitions
+	private int[] superStart;
+	private int[] supers;
+	private int[] subStart;
+	private int[] subs;
+	private int[] definitionStart;
+	private int[] definitions;
+
+	/**
+	 * Adds a class with its direct supertypes.
+	 * @param type The class, e.g. java.util.ArrayList
+	 * @param superclass Its superclass, null for java.lang.Object
+	 * @param interfaces The interfaces it implements or extends
+	 * @param entryName The name of the class file or archive entry
+	 * @param location The archive or directory the class is found in
+	 */
+	public synchronized void add(String type, String superclass, String[] interfaces, String entryName,
+			String location)
+	{
+		int id = getOrCreateId(type);
+		if (superclass != null)
+		{
+			addEdge(id, getOrCreateId(superclass));
+		}
+		for (String name : interfaces)
+		{
+			addEdge(id, getOrCreateId(name));
+		}
+
+		if (definitionCount == definedTypes.length)
+		{
+			definedTypes = Arrays.copyOf(definedTypes, definitionCount * 2);
+			definitionEntries = Arrays.copyOf(definitionEntries, definitionCount * 2);
+			definitionLocations = Arrays.copyOf(definitionLocations, definitionCount * 2);
+		}
+		definedTypes[definitionCount] = id;
+		definitionEntries[definitionCount] = entryName;
+		definitionLocations[definitionCount] = location;
+		definitionCount++;
+		supers = null;
+	}
+
+	private int getOrCreateId(String type)
+	{
+		Integer id = ids.get(type);
+		if (id == null)
+		{
+			id = names.size();
+			ids.put(type, id);
+			names.add(type);
+		}
+		return id;
+	}
+
+	private void addEdge(int subtype, int supertype)
+	{
+		if (edgeCount * 2 == edges.length)
+		{
+			edges = Arrays.copyOf(edges, edges.length * 2);
+		}
+		edges[edgeCount * 2] = subtype;
+		edges[edgeCount * 2 + 1] = supertype;
+		edgeCount++;
+	}
+
+	/**
+	 * @param type A type, e.g. javax.sql.DataSource
+	 * @return Its ID, -1 if no class added has or is that type
+	 */
+	public synchronized int getId(String type)
+	{
+		Integer id = ids.get(type);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * @param id The ID of a type
+	 * @return The type, e.g. javax.sql.DataSource
+	 */
+	public synchronized String getName(int id)
+	{
+		return names.get(id);
+	}
+
+	/**
+	 * @return The number of types, classes added as well as their supertypes
+	 */
+	public synchronized int size()
+	{
+		return names.size();
+	}
+
+	/**
+	 * @param id The ID of a type
+	 * @return The IDs of its direct and indirect subtypes, in breadth first
+	 *         order
+	 */
+	public synchronized int[] getSubtypes(int id)
+	{
+		build();
+		return walk(id, subStart, subs);
+	}
+
+	/**
+	 * @param id The ID of a type
+	 * @return The IDs of its direct and indirect supertypes, in breadth first
+	 *         order
+	 */
+	public synchronized int[] getSupertypes(int id)
+	{
+		build();
+		return walk(id, superStart, supers);
+	}
+
+	/**
+	 * @param id The ID of a type
+	 * @return The entry names of the classes defining the type, empty if it
+	 *         isn't among the classes added, e.g. a JDK class
+	 */
+	public synchronized String[] getEntryNames(int id)
+	{
+		build();
+		String[] entryNames = new String[definitionStart[id + 1] - definitionStart[id]];
+		for (int i = 0; i < entryNames.length; i++)
+		{
+			entryNames[i] = definitionEntries[definitions[definitionStart[id] + i]];
+		}
+		return entryNames;
+	}
+
+	/**
+	 * @param id The ID of a type
+	 * @return The locations of the classes defining the type, in the order
+	 *         of {@link #getEntryNames(int)}
+	 */
+	public synchronized String[] getLocations(int id)
+	{
+		build();
+		String[] locations = new String[definitionStart[id + 1] - definitionStart[id]];
+		for (int i = 0; i < locations.length; i++)
+		{
+			locations[i] = definitionLocations[definitions[definitionStart[id] + i]];
+		}
+		return locations;
+	}
+
+	/**
+	 * Sorts the edges and definitions by type, counting sort in both
+	 * directions
+	 */
+	private void build()
+	{
+		if (supers != null)
+		{
+			return;
+		}
+		int typeCount = names.size();
+		int[] superCount = new int[typeCount + 1];
+		int[] subCount = new int[typeCount + 1];
+		int[] definitionCounts = new int[typeCount + 1];
+		for (int i = 0; i < edgeCount; i++)
+		{
+			superCount[edges[i * 2]]++;
+			subCount[edges[i * 2 + 1]]++;
+		}
+		for (int i = 0; i < definitionCount; i++)
+		{
+			definitionCounts[definedTypes[i]]++;
+		}
+		subStart = toStarts(subCount);
+		definitionStart = toStarts(definitionCounts);
+		int[] nextSuper = toStarts(superCount);
+		int[] nextSub = subStart.clone();
+		int[] nextDefinition = definitionStart.clone();
+
+		int[] newSupers = new int[edgeCount];
+		subs = new int[edgeCount];
+		for (int i = 0; i < edgeCount; i++)
+		{
+			int subtype = edges[i * 2];
+			int supertype = edges[i * 2 + 1];
+			newSupers[nextSuper[subtype]++] = supertype;
+			subs[nextSub[supertype]++] = subtype;
+		}
+		definitions = new int[definitionCount];
+		for (int i = 0; i < definitionCount; i++)
+		{
+			definitions[nextDefinition[definedTypes[i]]++] = i;
+		}
+		superStart = toStarts(superCount);
+		supers = newSupers;
+	}
+
+	/**
+	 * @return The start of the adjacency of each type, and the end of the
+	 *         last one at the end
+	 */
+	private static int[] toStarts(int[] counts)
+	{
+		int[] starts = new int[counts.length];
+		int start = 0;
+		for (int i = 0; i < counts.length; i++)
+		{
+			starts[i] = start;
+			start += counts[i];
+		}
+		return starts;
+	}
+
+	private int[] walk(int id, int[] start, int[] adjacent)
+	{
+		boolean[] visited = new boolean[names.size()];
+		int[] found = new int[16];
+		int count = 0;
+		visited[id] = true;
+		// The types found so far are the queue of the breadth first search
+		int next = -1;
+		int current = id;
+		while (true)
+		{
+			for (int i = start[current]; i < start[current + 1]; i++)
+			{
+				int type = adjacent[i];
+				if (!visited[type])
+				{
+					visited[type] = true;
+					if (count == found.length)
+					{
+						found = Arrays.copyOf(found, count * 2);
+					}
+					found[count++] = type;
+				}
+			}
+			if (++next == count)
+			{
+				return Arrays.copyOf(found, count);
+			}
+			current = found[next];
+		}
+	}
+}
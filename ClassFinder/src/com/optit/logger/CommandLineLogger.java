@@ -59,6 +59,12 @@ public class CommandLineLogger implements Logger
 		log ("Class \"" + className + "\" found at \"" + location + " and Method \"" + Method + "\"");
 	}
 	
+	@Override
+	public void logField(String className, String location, String field) 
+	{
+		log ("Class \"" + className + "\" found at \"" + location + " and Field \"" + field + "\"");
+	}
+	
 	/**
 	 * Logs a new line into the standard output
 	 */
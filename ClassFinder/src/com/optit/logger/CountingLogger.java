@@ -0,0 +1,106 @@
+package com.optit.logger;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Passes everything on to another logger and counts the classes found.
+ * Once the limit is reached, further findings are dropped, so exactly the
+ * requested number gets reported even if several search threads find
+ * classes at the same time.
+ */
+public class CountingLogger implements Logger
+{
+	private final Logger logger;
+	private final int limit;
+	private final AtomicInteger count = new AtomicInteger();
+
+	/**
+	 * @param logger The logger to pass everything on to
+	 * @param limit The maximum number of findings to report, 0 for no limit
+	 */
+	public CountingLogger(Logger logger, int limit)
+	{
+		this.logger = logger;
+		this.limit = limit;
+	}
+
+	/**
+	 * @return The number of findings reported
+	 */
+	public int getCount()
+	{
+		int reported = count.get();
+		return (limit != 0 && reported > limit) ? limit : reported;
+	}
+
+	/**
+	 * @return Whether the limit of findings has been reached
+	 */
+	public boolean isLimitReached()
+	{
+		return limit != 0 && count.get() >= limit;
+	}
+
+	/**
+	 * @return Whether the finding may still be reported
+	 */
+	private boolean count()
+	{
+		int reported = count.incrementAndGet();
+		return limit == 0 || reported <= limit;
+	}
+
+	public void log()
+	{
+		logger.log();
+	}
+
+	public void log(String line)
+	{
+		logger.log(line);
+	}
+
+	public void log(String className, String location)
+	{
+		if (count())
+		{
+			logger.log(className, location);
+		}
+	}
+
+	public void log(String className, String location, String method)
+	{
+		if (count())
+		{
+			logger.log(className, location, method);
+		}
+	}
+
+	public void logField(String className, String location, String field)
+	{
+		if (count())
+		{
+			logger.logField(className, location, field);
+		}
+	}
+
+	public void logErr(String line)
+	{
+		logger.logErr(line);
+	}
+
+	public void logVerbose(String line)
+	{
+		logger.logVerbose(line);
+	}
+
+	public void setVerbose(boolean verbose)
+	{
+		logger.setVerbose(verbose);
+	}
+
+	public boolean getVerbose()
+	{
+		return logger.getVerbose();
+	}
+}
@@ -1,6 +1,7 @@
 package com.optit.logger;
 
 import javax.swing.JLabel;
+import javax.swing.SwingUtilities;
 import javax.swing.table.DefaultTableModel;
 
 public class GuiLogger implements Logger
@@ -42,24 +43,51 @@ public class GuiLogger implements Logger
 	@Override
 	public void log(String className, String location) 
 	{
-		tm.addRow(new String[] {className, location,""});
+		addRow(new String[] {className, location,""});
 	}
 	
 	@Override
 	public void log(String className, String location, String Method) 
 	{
-		tm.addRow(new String[] {className, location, Method});
+		addRow(new String[] {className, location, Method});
+	}
+	
+	@Override
+	public void logField(String className, String location, String field) 
+	{
+		addRow(new String[] {className, location, field});
 	}
 
 	@Override
-	public void logVerbose(String line)
+	public void logVerbose(final String line)
 	{
-		statusBar.setText(line);
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run()
+			{
+				statusBar.setText(line);
+			}
+		});
 	}
 	
 	@Override
 	public void logErr(String line)
 	{
-		tm.addRow(new Object[] {line, line});
+		addRow(new Object[] {line, line});
+	}
+
+	/**
+	 * Adds a row to the results table. The search runs outside of the
+	 * event dispatch thread (possibly with several threads), so the table
+	 * model is only touched from within the event dispatch thread.
+	 * @param row The row to add
+	 */
+	private void addRow(final Object[] row)
+	{
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run()
+			{
+				tm.addRow(row);
+			}
+		});
 	}
 }
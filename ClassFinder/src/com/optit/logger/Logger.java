@@ -10,6 +10,8 @@ public interface Logger
 	
 	public void log(String className, String location, String Method);
 	
+	public void logField(String className, String location, String field);
+	
 	public void logErr(String line);
 	
 	public void logVerbose(String line);
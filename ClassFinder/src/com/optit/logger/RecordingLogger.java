@@ -0,0 +1,118 @@
+package com.optit.logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Passes everything on to another logger and records the classes found
+ * within an archive, relative to the location of the archive. The findings
+ * can then be reported again for an identical copy of the archive without
+ * searching it.
+ */
+public class RecordingLogger implements Logger
+{
+	private final Logger logger;
+	private final String location;
+	// className, location relative to the archive, method or field or null,
+	// whether it is a field
+	private final List<String[]> found = new ArrayList<String[]>();
+
+	/**
+	 * @param logger The logger to pass everything on to
+	 * @param location The location of the archive
+	 */
+	public RecordingLogger(Logger logger, String location)
+	{
+		this.logger = logger;
+		this.location = location;
+	}
+
+	/**
+	 * Reports the recorded classes again for another archive.
+	 * @param logger The logger to report to
+	 * @param location The location of the other archive
+	 */
+	public void replay(Logger logger, String location)
+	{
+		for (String[] line : found)
+		{
+			if (line[2] == null)
+			{
+				logger.log(line[0], location + line[1]);
+			}
+			else if (line[3] != null)
+			{
+				logger.logField(line[0], location + line[1], line[2]);
+			}
+			else
+			{
+				logger.log(line[0], location + line[1], line[2]);
+			}
+		}
+	}
+
+	/**
+	 * @return The location of the archive the findings were recorded for
+	 */
+	public String getLocation()
+	{
+		return location;
+	}
+
+	public void log()
+	{
+		logger.log();
+	}
+
+	public void log(String line)
+	{
+		logger.log(line);
+	}
+
+	public void log(String className, String location)
+	{
+		logger.log(className, location);
+		found.add(new String[] { className, relative(location), null, null });
+	}
+
+	public void log(String className, String location, String method)
+	{
+		logger.log(className, location, method);
+		found.add(new String[] { className, relative(location), method, null });
+	}
+
+	public void logField(String className, String location, String field)
+	{
+		logger.logField(className, location, field);
+		found.add(new String[] { className, relative(location), field, "field" });
+	}
+
+	public void logErr(String line)
+	{
+		logger.logErr(line);
+	}
+
+	public void logVerbose(String line)
+	{
+		logger.logVerbose(line);
+	}
+
+	public void setVerbose(boolean verbose)
+	{
+		logger.setVerbose(verbose);
+	}
+
+	public boolean getVerbose()
+	{
+		return logger.getVerbose();
+	}
+
+	/**
+	 * Strips the archive location, leaving "" or the chain of nested
+	 * archives, e.g. "!/WEB-INF/lib/x.jar".
+	 */
+	private String relative(String location)
+	{
+		return location.substring(Math.min(this.location.length(), location.length()));
+	}
+}
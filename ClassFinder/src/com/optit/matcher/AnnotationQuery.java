@@ -0,0 +1,140 @@
+package com.optit.matcher;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import com.sun.tools.classfile.Annotation;
+import com.sun.tools.classfile.Attribute;
+import com.sun.tools.classfile.Attributes;
+import com.sun.tools.classfile.ClassFile;
+import com.sun.tools.classfile.ConstantPool;
+import com.sun.tools.classfile.ConstantPoolException;
+import com.sun.tools.classfile.RuntimeAnnotations_attribute;
+
+/**
+ * Query for the classes, methods and fields carrying any of several
+ * annotations, e.g. javax.servlet.annotation.WebServlet;javax.ws.rs.Path.
+ * Runtime visible and invisible annotations count alike.
+ * <p>
+ * Only the annotation attributes have to be read, and their types are
+ * compared with the constant pool without decoding it. The descriptors of
+ * the annotation types are encoded once, when the query is created.
+ */
+public class AnnotationQuery
+{
+	// The attributes annotations are kept in
+	public static final String[] ATTRIBUTES = { Attribute.RuntimeVisibleAnnotations,
+			Attribute.RuntimeInvisibleAnnotations };
+
+	// The annotation types as given, e.g. javax.ws.rs.Path
+	private final List<String> typeNames = new ArrayList<String>();
+	// Their descriptors as stored in class files, e.g. Ljavax/ws/rs/Path;
+	private final byte[][] descriptors;
+	private final ByteSearcher prefilter;
+
+	/**
+	 * @param annotationTypes The annotation types separated by ';', with or
+	 *            without a leading '@'
+	 * @throws IllegalArgumentException If no type is given
+	 */
+	public AnnotationQuery(String annotationTypes)
+	{
+		for (String typeName : MultiNameMatcher.split(annotationTypes))
+		{
+			typeNames.add(typeName.startsWith("@") ? typeName.substring(1) : typeName);
+		}
+		if (typeNames.isEmpty())
+		{
+			throw new IllegalArgumentException("No annotation type given");
+		}
+		descriptors = new byte[typeNames.size()][];
+		for (int i = 0; i < descriptors.length; i++)
+		{
+			descriptors[i] = ConstantPool.toModifiedUTF8("L" + typeNames.get(i).replace('.', '/') + ";");
+		}
+		prefilter = new ByteSearcher(descriptors);
+	}
+
+	/**
+	 * @return The annotation types searched for, e.g. javax.ws.rs.Path
+	 */
+	public List<String> getTypeNames()
+	{
+		return typeNames;
+	}
+
+	/**
+	 * @param classBytes The class file from its position up to its limit
+	 * @return Whether the class may carry any of the annotations, false if
+	 *         it certainly doesn't
+	 */
+	public boolean mayMatchClass(ByteBuffer classBytes)
+	{
+		return prefilter.occursIn(classBytes);
+	}
+
+	/**
+	 * @param classFile The class file, read with at least the
+	 *            {@link #ATTRIBUTES}
+	 * @param attributes The attributes of the class itself or of one of its
+	 *            members
+	 * @return Whether any of the annotations is among them
+	 * @throws ConstantPoolException If the constant pool is broken
+	 */
+	public boolean matches(ClassFile classFile, Attributes attributes) throws ConstantPoolException
+	{
+		for (String name : ATTRIBUTES)
+		{
+			RuntimeAnnotations_attribute annotations = (RuntimeAnnotations_attribute) attributes.get(name);
+			if (annotations == null)
+			{
+				continue;
+			}
+			for (Annotation annotation : annotations.annotations)
+			{
+				for (byte[] descriptor : descriptors)
+				{
+					if (classFile.constant_pool.equalsUTF8(annotation.type_index, descriptor))
+					{
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Collects the types of all annotations among the attributes, for
+	 * indexing them.
+	 *
+	 * @param classFile The class file, read with at least the
+	 *            {@link #ATTRIBUTES}
+	 * @param attributes The attributes of the class itself or of one of its
+	 *            members
+	 * @param typeNames Receives the types, e.g. javax.ws.rs.Path
+	 * @throws ConstantPoolException If the constant pool is broken
+	 */
+	public static void addTypeNames(ClassFile classFile, Attributes attributes, Set<String> typeNames)
+			throws ConstantPoolException
+	{
+		for (String name : ATTRIBUTES)
+		{
+			RuntimeAnnotations_attribute annotations = (RuntimeAnnotations_attribute) attributes.get(name);
+			if (annotations == null)
+			{
+				continue;
+			}
+			for (Annotation annotation : annotations.annotations)
+			{
+				String descriptor = classFile.constant_pool.getUTF8Value(annotation.type_index);
+				if (descriptor.startsWith("L") && descriptor.endsWith(";"))
+				{
+					typeNames.add(descriptor.substring(1, descriptor.length() - 1).replace('/', '.'));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,785 @@
+package com.optit.matcher;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deterministic finite automaton over UTF-8 bytes, compiled from a regular
+ * expression. The whole automaton gets built up front, so evaluating it is
+ * one table lookup per byte and it can be shared by all search threads.
+ * <p>
+ * Supported are literals, escapes (\d \w \s \D \W \S \t \n \r \f \xhh
+ * \\uhhhh and escaped meta characters), '.', character classes with ranges
+ * and negation, groups (capturing or not), alternation and the quantifiers
+ * *, +, ?, {n}, {n,} and {n,m}, lazy ones being treated like greedy ones.
+ * '^' at the start and '$' at the end are accepted as the expression always
+ * has to match as a whole. Back references, anchors and look arounds can't
+ * be expressed in a DFA and are rejected.
+ * <p>
+ * A literal '.' (i.e. "\." or "[.]") matches '/' as packages are separated
+ * by '/' in file and entry names. Case is folded for ASCII letters only.
+ */
+class Automaton
+{
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// Guards against patterns that blow up on determinization
+	private static final int MAX_STATES = 10000;
+
+	// State 0 is the dead state, every transition leads back to it
+	private static final int DEAD = 0;
+
+	private final int[] byteClass;
+	private final int classes;
+	private final int[] transitions;
+	private final boolean[] accepting;
+	private final int start;
+
+	/**
+	 * Compiles a regular expression.
+	 * @param regex The expression
+	 * @param ignoreCase Whether ASCII letters match in both cases
+	 * @throws IllegalArgumentException If the expression is invalid or not
+	 *             supported
+	 */
+	Automaton(String regex, boolean ignoreCase)
+	{
+		Node node = new Parser(regex, ignoreCase).parse();
+
+		Nfa nfa = new Nfa();
+		int nfaStart = nfa.state();
+		int nfaEnd = nfa.build(node, nfaStart);
+		nfa.accept = nfaEnd;
+
+		// Bytes that behave the same in every state share a column of the
+		// transition table
+		byteClass = new int[256];
+		Map<BitSet, Integer> signatures = new HashMap<BitSet, Integer>();
+		for (int b = 0; b < 256; b++)
+		{
+			BitSet signature = new BitSet();
+			for (int s = 0; s < nfa.size(); s++)
+			{
+				if (nfa.sets.get(s) != null && nfa.sets.get(s).get(b))
+				{
+					signature.set(s);
+				}
+			}
+			Integer id = signatures.get(signature);
+			if (id == null)
+			{
+				id = signatures.size();
+				signatures.put(signature, id);
+			}
+			byteClass[b] = id;
+		}
+		classes = signatures.size();
+		int[] representative = new int[classes];
+		for (int b = 255; b >= 0; b--)
+		{
+			representative[byteClass[b]] = b;
+		}
+
+		// Subset construction
+		List<BitSet> states = new ArrayList<BitSet>();
+		Map<BitSet, Integer> ids = new HashMap<BitSet, Integer>();
+		BitSet dead = new BitSet();
+		states.add(dead);
+		ids.put(dead, DEAD);
+		BitSet initial = new BitSet();
+		nfa.closure(nfaStart, initial);
+		ids.put(initial, states.size());
+		states.add(initial);
+
+		int[] table = new int[16 * classes];
+		for (int i = 1; i < states.size(); i++)
+		{
+			BitSet current = states.get(i);
+			for (int c = 0; c < classes; c++)
+			{
+				BitSet next = new BitSet();
+				for (int s = current.nextSetBit(0); s >= 0; s = current.nextSetBit(s + 1))
+				{
+					BitSet set = nfa.sets.get(s);
+					if (set != null && set.get(representative[c]))
+					{
+						nfa.closure(nfa.out1.get(s), next);
+					}
+				}
+				Integer id = ids.get(next);
+				if (id == null)
+				{
+					if (states.size() == MAX_STATES)
+					{
+						throw new IllegalArgumentException("Pattern too complex: " + regex);
+					}
+					id = states.size();
+					ids.put(next, id);
+					states.add(next);
+				}
+				if ((i + 1) * classes > table.length)
+				{
+					int[] grown = new int[table.length * 2];
+					System.arraycopy(table, 0, grown, 0, table.length);
+					table = grown;
+				}
+				table[i * classes + c] = id;
+			}
+		}
+
+		transitions = new int[states.size() * classes];
+		System.arraycopy(table, 0, transitions, 0, transitions.length);
+		accepting = new boolean[states.size()];
+		for (int i = 0; i < accepting.length; i++)
+		{
+			accepting[i] = states.get(i).get(nfa.accept);
+		}
+		start = 1;
+	}
+
+	/**
+	 * @return The initial state
+	 */
+	int start()
+	{
+		return start;
+	}
+
+	/**
+	 * @param state The current state
+	 * @param b The next byte
+	 * @return The state after the byte, DEAD once no match is possible
+	 *         anymore
+	 */
+	int step(int state, int b)
+	{
+		return transitions[state * classes + byteClass[b & 0xFF]];
+	}
+
+	/**
+	 * Feeds a char as UTF-8. Surrogate pairs are encoded as two three-byte
+	 * sequences, which is good enough for matching as they don't occur in
+	 * class names.
+	 */
+	int stepChar(int state, char c)
+	{
+		if (c < 0x80)
+		{
+			return step(state, c);
+		}
+		else if (c < 0x800)
+		{
+			state = step(state, 0xC0 | (c >> 6));
+			return step(state, 0x80 | (c & 0x3F));
+		}
+		state = step(state, 0xE0 | (c >> 12));
+		state = step(state, 0x80 | ((c >> 6) & 0x3F));
+		return step(state, 0x80 | (c & 0x3F));
+	}
+
+	/**
+	 * @return Whether the state accepts, i.e. the input seen so far matches
+	 */
+	boolean isAccepting(int state)
+	{
+		return accepting[state];
+	}
+
+	/**
+	 * @return Whether no input can lead to a match anymore
+	 */
+	static boolean isDead(int state)
+	{
+		return state == DEAD;
+	}
+
+	/**
+	 * @return The number of states, including the dead one
+	 */
+	int size()
+	{
+		return accepting.length;
+	}
+
+	/**
+	 * Syntax tree of the expression: a set of bytes, a sequence, an
+	 * alternation or a repetition.
+	 */
+	private static class Node
+	{
+		static final int BYTES = 0;
+		static final int SEQUENCE = 1;
+		static final int ALTERNATION = 2;
+		static final int REPEAT = 3;
+
+		final int type;
+		final BitSet bytes;
+		final List<Node> children = new ArrayList<Node>();
+		int min;
+		int max;
+
+		Node(int type)
+		{
+			this.type = type;
+			this.bytes = null;
+		}
+
+		Node(BitSet bytes)
+		{
+			this.type = BYTES;
+			this.bytes = bytes;
+		}
+
+		static Node repeat(Node child, int min, int max)
+		{
+			Node node = new Node(REPEAT);
+			node.children.add(child);
+			node.min = min;
+			node.max = max;
+			return node;
+		}
+	}
+
+	/**
+	 * Thompson construction: states either consume one byte out of a set or
+	 * are epsilon states with up to two successors.
+	 */
+	private static class Nfa
+	{
+		final List<BitSet> sets = new ArrayList<BitSet>();
+		final List<Integer> out1 = new ArrayList<Integer>();
+		final List<Integer> out2 = new ArrayList<Integer>();
+		int accept;
+
+		int size()
+		{
+			return sets.size();
+		}
+
+		int state()
+		{
+			sets.add(null);
+			out1.add(-1);
+			out2.add(-1);
+			return sets.size() - 1;
+		}
+
+		void epsilon(int from, int to)
+		{
+			if (out1.get(from) == -1)
+			{
+				out1.set(from, to);
+			}
+			else
+			{
+				out2.set(from, to);
+			}
+		}
+
+		/**
+		 * Builds the node starting at the given epsilon state.
+		 * @return The epsilon state the node ends in
+		 */
+		int build(Node node, int from)
+		{
+			switch (node.type)
+			{
+				case Node.BYTES:
+				{
+					int to = state();
+					sets.set(from, node.bytes);
+					out1.set(from, to);
+					return to;
+				}
+				case Node.SEQUENCE:
+				{
+					int current = from;
+					for (Node child : node.children)
+					{
+						int next = state();
+						epsilon(current, next);
+						current = build(child, next);
+					}
+					return current;
+				}
+				case Node.ALTERNATION:
+				{
+					// Each state has two successors at most, the branches
+					// hang off a chain of splits
+					int end = state();
+					int current = from;
+					for (int i = 0; i < node.children.size(); i++)
+					{
+						int branch = state();
+						epsilon(current, branch);
+						epsilon(build(node.children.get(i), branch), end);
+						if (i < node.children.size() - 1)
+						{
+							int split = state();
+							epsilon(current, split);
+							current = split;
+						}
+					}
+					return end;
+				}
+				default:
+				{
+					Node child = node.children.get(0);
+					int current = from;
+					for (int i = 0; i < node.min; i++)
+					{
+						int next = state();
+						epsilon(current, next);
+						current = build(child, next);
+					}
+					int end = state();
+					if (node.max == -1)
+					{
+						int loop = state();
+						epsilon(current, loop);
+						int body = state();
+						epsilon(loop, body);
+						epsilon(loop, end);
+						epsilon(build(child, body), loop);
+					}
+					else
+					{
+						for (int i = node.min; i < node.max; i++)
+						{
+							int next = state();
+							epsilon(current, next);
+							epsilon(current, end);
+							current = build(child, next);
+						}
+						epsilon(current, end);
+					}
+					return end;
+				}
+			}
+		}
+
+		/**
+		 * Adds the state and all states reachable by epsilon transitions.
+		 */
+		void closure(int state, BitSet result)
+		{
+			if (state == -1 || result.get(state))
+			{
+				return;
+			}
+			result.set(state);
+			if (sets.get(state) == null)
+			{
+				closure(out1.get(state), result);
+				closure(out2.get(state), result);
+			}
+		}
+	}
+
+	/**
+	 * Recursive descent parser of the supported regular expression subset.
+	 */
+	private static class Parser
+	{
+		private static final BitSet ASCII = range(0x00, 0x7F);
+		private static final BitSet DIGIT = range('0', '9');
+		private static final BitSet WORD = new BitSet();
+		private static final BitSet SPACE = new BitSet();
+		static
+		{
+			WORD.or(range('a', 'z'));
+			WORD.or(range('A', 'Z'));
+			WORD.or(DIGIT);
+			WORD.set('_');
+			for (char c : " \t\n\u000B\f\r".toCharArray())
+			{
+				SPACE.set(c);
+			}
+		}
+
+		private final String regex;
+		private final boolean ignoreCase;
+		private int pos;
+
+		Parser(String regex, boolean ignoreCase)
+		{
+			this.regex = regex;
+			this.ignoreCase = ignoreCase;
+		}
+
+		Node parse()
+		{
+			if (peek('^'))
+			{
+				pos++;
+			}
+			Node node = alternation();
+			if (pos < regex.length())
+			{
+				throw error("Unmatched ')'");
+			}
+			return node;
+		}
+
+		private Node alternation()
+		{
+			Node node = new Node(Node.ALTERNATION);
+			node.children.add(sequence());
+			while (peek('|'))
+			{
+				pos++;
+				node.children.add(sequence());
+			}
+			return node.children.size() == 1 ? node.children.get(0) : node;
+		}
+
+		private Node sequence()
+		{
+			Node node = new Node(Node.SEQUENCE);
+			while (pos < regex.length() && !peek('|') && !peek(')'))
+			{
+				if (peek('$') && pos == regex.length() - 1)
+				{
+					pos++;
+					break;
+				}
+				Node atom = atom();
+				while (pos < regex.length())
+				{
+					char c = regex.charAt(pos);
+					if (c == '*')
+					{
+						atom = Node.repeat(atom, 0, -1);
+					}
+					else if (c == '+')
+					{
+						atom = Node.repeat(atom, 1, -1);
+					}
+					else if (c == '?')
+					{
+						atom = Node.repeat(atom, 0, 1);
+					}
+					else if (c == '{')
+					{
+						atom = bounds(atom);
+						continue;
+					}
+					else
+					{
+						break;
+					}
+					pos++;
+					// Lazy quantifier, same language
+					if (peek('?'))
+					{
+						pos++;
+					}
+				}
+				node.children.add(atom);
+			}
+			return node;
+		}
+
+		private Node bounds(Node atom)
+		{
+			int close = regex.indexOf('}', pos);
+			if (close == -1)
+			{
+				throw error("Unclosed repetition");
+			}
+			String bounds = regex.substring(pos + 1, close);
+			int min, max;
+			try
+			{
+				int comma = bounds.indexOf(',');
+				if (comma == -1)
+				{
+					min = max = Integer.parseInt(bounds);
+				}
+				else
+				{
+					min = Integer.parseInt(bounds.substring(0, comma));
+					max = (comma == bounds.length() - 1) ? -1 : Integer.parseInt(bounds.substring(comma + 1));
+				}
+			} catch (NumberFormatException e)
+			{
+				throw error("Invalid repetition");
+			}
+			if (min < 0 || (max != -1 && max < min) || min > 100 || max > 100)
+			{
+				throw error("Invalid repetition");
+			}
+			pos = close + 1;
+			if (peek('?'))
+			{
+				pos++;
+			}
+			return Node.repeat(atom, min, max);
+		}
+
+		private Node atom()
+		{
+			char c = regex.charAt(pos++);
+			switch (c)
+			{
+				case '(':
+				{
+					if (regex.startsWith("?:", pos))
+					{
+						pos += 2;
+					}
+					else if (peek('?'))
+					{
+						throw error("Look arounds and flags are not supported");
+					}
+					Node node = alternation();
+					if (!peek(')'))
+					{
+						throw error("Unclosed group");
+					}
+					pos++;
+					return node;
+				}
+				case '[':
+					return characterClass();
+				case '.':
+					return any(new BitSet(), true);
+				case '\\':
+					return escape(false);
+				case '*':
+				case '+':
+				case '?':
+				case '{':
+					throw error("Dangling meta character '" + c + "'");
+				case '^':
+				case '$':
+					throw error("Anchors are only supported at the start and the end");
+				default:
+					return literal(c);
+			}
+		}
+
+		/**
+		 * Parses an escape sequence following a '\'.
+		 * @param inClass Whether the escape is part of a character class,
+		 *            only sets are returned then
+		 */
+		private Node escape(boolean inClass)
+		{
+			if (pos >= regex.length())
+			{
+				throw error("Trailing '\\'");
+			}
+			char c = regex.charAt(pos++);
+			switch (c)
+			{
+				case 'd':
+					return new Node(fold(DIGIT));
+				case 'w':
+					return new Node(fold(WORD));
+				case 's':
+					return new Node(SPACE);
+				case 'D':
+					return any(DIGIT, true);
+				case 'W':
+					return any(WORD, true);
+				case 'S':
+					return any(SPACE, true);
+				case 't':
+					return literal('\t');
+				case 'n':
+					return literal('\n');
+				case 'r':
+					return literal('\r');
+				case 'f':
+					return literal('\f');
+				case 'x':
+					return literal(hex(2));
+				case 'u':
+					return literal(hex(4));
+				default:
+					if (Character.isLetterOrDigit(c))
+					{
+						throw error("Unsupported escape sequence \\" + c);
+					}
+					return literal(c);
+			}
+		}
+
+		private char hex(int digits)
+		{
+			if (pos + digits > regex.length())
+			{
+				throw error("Invalid hexadecimal escape");
+			}
+			try
+			{
+				char c = (char) Integer.parseInt(regex.substring(pos, pos + digits), 16);
+				pos += digits;
+				return c;
+			} catch (NumberFormatException e)
+			{
+				throw error("Invalid hexadecimal escape");
+			}
+		}
+
+		private Node characterClass()
+		{
+			boolean negated = peek('^');
+			if (negated)
+			{
+				pos++;
+			}
+			BitSet set = new BitSet();
+			List<Node> multiByte = new ArrayList<Node>();
+			boolean first = true;
+			while (true)
+			{
+				if (pos >= regex.length())
+				{
+					throw error("Unclosed character class");
+				}
+				char c = regex.charAt(pos++);
+				if (c == ']' && !first)
+				{
+					break;
+				}
+				first = false;
+				Node node;
+				if (c == '\\')
+				{
+					node = escape(true);
+				}
+				else if (pos + 1 < regex.length() && regex.charAt(pos) == '-' && regex.charAt(pos + 1) != ']')
+				{
+					char to = regex.charAt(pos + 1);
+					if (to == '\\' || to < c)
+					{
+						throw error("Invalid character range");
+					}
+					if (to >= 0x80)
+					{
+						throw error("Ranges are only supported for ASCII characters");
+					}
+					pos += 2;
+					node = new Node(fold(range(c, to)));
+				}
+				else
+				{
+					node = literal(c);
+				}
+				if (node.type == Node.BYTES)
+				{
+					set.or(node.bytes);
+				}
+				else if (negated)
+				{
+					throw error("Negated character classes are only supported for ASCII characters");
+				}
+				else
+				{
+					multiByte.add(node);
+				}
+			}
+			if (negated)
+			{
+				return any(set, true);
+			}
+			if (multiByte.isEmpty())
+			{
+				return new Node(set);
+			}
+			Node node = new Node(Node.ALTERNATION);
+			node.children.add(new Node(set));
+			node.children.addAll(multiByte);
+			return node;
+		}
+
+		/**
+		 * Any character except the given ASCII ones, non-ASCII characters
+		 * being matched as a lead byte followed by continuation bytes.
+		 */
+		private Node any(BitSet except, boolean withNonAscii)
+		{
+			BitSet set = (BitSet) ASCII.clone();
+			set.andNot(ignoreCase ? fold(except) : except);
+			if (!withNonAscii)
+			{
+				return new Node(set);
+			}
+			Node nonAscii = new Node(Node.SEQUENCE);
+			nonAscii.children.add(new Node(range(0xC0, 0xFF)));
+			nonAscii.children.add(Node.repeat(new Node(range(0x80, 0xBF)), 0, -1));
+			Node node = new Node(Node.ALTERNATION);
+			node.children.add(new Node(set));
+			node.children.add(nonAscii);
+			return node;
+		}
+
+		/**
+		 * A literal character as its UTF-8 bytes, '.' standing for the
+		 * package separator '/'.
+		 */
+		private Node literal(char c)
+		{
+			if (c == '.')
+			{
+				c = '/';
+			}
+			if (c < 0x80)
+			{
+				BitSet set = new BitSet();
+				set.set(c);
+				return new Node(fold(set));
+			}
+			byte[] bytes = String.valueOf(c).getBytes(UTF8);
+			Node node = new Node(Node.SEQUENCE);
+			for (byte b : bytes)
+			{
+				BitSet set = new BitSet();
+				set.set(b & 0xFF);
+				node.children.add(new Node(set));
+			}
+			return node;
+		}
+
+		private BitSet fold(BitSet set)
+		{
+			if (!ignoreCase)
+			{
+				return set;
+			}
+			BitSet folded = (BitSet) set.clone();
+			for (int c = 'a'; c <= 'z'; c++)
+			{
+				if (set.get(c) || set.get(c - 'a' + 'A'))
+				{
+					folded.set(c);
+					folded.set(c - 'a' + 'A');
+				}
+			}
+			return folded;
+		}
+
+		private static BitSet range(int from, int to)
+		{
+			BitSet set = new BitSet();
+			set.set(from, to + 1);
+			return set;
+		}
+
+		private boolean peek(char c)
+		{
+			return pos < regex.length() && regex.charAt(pos) == c;
+		}
+
+		private IllegalArgumentException error(String message)
+		{
+			return new IllegalArgumentException(message + " near index " + pos + ": " + regex);
+		}
+	}
+}
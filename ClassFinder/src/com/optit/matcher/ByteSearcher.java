@@ -0,0 +1,114 @@
+package com.optit.matcher;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Searches raw bytes, e.g. an inflated class file, for any of several byte
+ * patterns at once. Used to skip class files and sources that can't contain
+ * what is searched for before parsing them.
+ * <p>
+ * Set Horspool: a window of the length of the shortest pattern is shifted
+ * over the bytes by its last byte, and only the patterns ending the window
+ * with that byte are compared. Searching doesn't allocate, a searcher is
+ * safe to be shared by all search threads.
+ */
+public class ByteSearcher
+{
+	// Length of the shortest pattern, the window compared each step
+	private final int window;
+	// Shift by the last byte of the window
+	private final int[] shift = new int[256];
+	// The patterns whose window ends with the byte, null if none
+	private final byte[][][] candidates = new byte[256][][];
+
+	/**
+	 * @param patterns The patterns, none of them empty
+	 * @throws IllegalArgumentException If no pattern or an empty one is given
+	 */
+	public ByteSearcher(byte[]... patterns)
+	{
+		if (patterns.length == 0)
+		{
+			throw new IllegalArgumentException("No pattern given");
+		}
+		int shortest = Integer.MAX_VALUE;
+		for (byte[] pattern : patterns)
+		{
+			if (pattern.length == 0)
+			{
+				throw new IllegalArgumentException("Empty pattern");
+			}
+			shortest = Math.min(shortest, pattern.length);
+		}
+		this.window = shortest;
+
+		Arrays.fill(shift, window);
+		for (byte[] pattern : patterns)
+		{
+			for (int j = 0; j < window - 1; j++)
+			{
+				shift[pattern[j] & 0xFF] = Math.min(shift[pattern[j] & 0xFF], window - 1 - j);
+			}
+			int last = pattern[window - 1] & 0xFF;
+			byte[][] grown = candidates[last] == null ? new byte[1][]
+					: Arrays.copyOf(candidates[last], candidates[last].length + 1);
+			grown[grown.length - 1] = pattern;
+			candidates[last] = grown;
+		}
+	}
+
+	/**
+	 * @param buffer The bytes from the position up to the limit are searched,
+	 *            the position is left untouched
+	 * @return The absolute index of the first match of any pattern, -1 if
+	 *         none matches
+	 */
+	public int indexIn(ByteBuffer buffer)
+	{
+		int limit = buffer.limit();
+		for (int end = buffer.position() + window - 1; end < limit;)
+		{
+			int last = buffer.get(end) & 0xFF;
+			byte[][] found = candidates[last];
+			if (found != null)
+			{
+				int start = end - window + 1;
+				for (byte[] pattern : found)
+				{
+					if (regionMatches(buffer, start, limit, pattern))
+					{
+						return start;
+					}
+				}
+			}
+			end += shift[last];
+		}
+		return -1;
+	}
+
+	/**
+	 * @param buffer The bytes from the position up to the limit are searched
+	 * @return Whether any pattern occurs
+	 */
+	public boolean occursIn(ByteBuffer buffer)
+	{
+		return indexIn(buffer) != -1;
+	}
+
+	private static boolean regionMatches(ByteBuffer buffer, int start, int limit, byte[] pattern)
+	{
+		if (start + pattern.length > limit)
+		{
+			return false;
+		}
+		for (int i = 0; i < pattern.length; i++)
+		{
+			if (buffer.get(start + i) != pattern[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+}
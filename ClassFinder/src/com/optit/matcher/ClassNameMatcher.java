@@ -0,0 +1,112 @@
+package com.optit.matcher;
+
+import com.optit.zip.ArchiveCursor;
+import com.optit.zip.CentralDirectory;
+
+/**
+ * Matcher for a class name, either just the class name (e.g. Random) or the
+ * fully qualified one, or a part of it (e.g. apache.commons.Random).
+ * <p>
+ * IF:
+ * Package qualifier was defined or a part of (e.g. apache.commons.Random ->
+ * apache/commons/Random)
+ * AND
+ * The name ends with that qualifier --> org/apache/commons/Random.class ends
+ * with "apache/commons/Random.class"
+ * --> CLASS FOUND!
+ * OR
+ * Package qualifier wasn't specified but just the class (e.g. Random)
+ * AND
+ * The file name matches --> org/apache/commons/Random.class ends with
+ * "/Random.class" or the name is just Random.class (e.g. Random.class got
+ * zipped up into Random.zip, as no package qualifier was given, the class is
+ * found)
+ * --> CLASS FOUND!
+ * <p>
+ * The same applies to java sources.
+ */
+public class ClassNameMatcher extends NameMatcher
+{
+	private final boolean ignoreCase;
+	private final boolean containsPackageQualifier;
+	// "apache/commons/Random.class" or "/Random.class", lower case if the
+	// case is ignored
+	private final String classSuffix;
+	private final String sourceSuffix;
+	private final byte[] classSuffixBytes;
+	private final byte[] sourceSuffixBytes;
+	// "Random.class", only used without package qualifier
+	private final String classFileName;
+	private final String sourceFileName;
+	private final byte[] classFileNameBytes;
+	private final byte[] sourceFileNameBytes;
+
+	/**
+	 * @param classname The class name as given on the command line
+	 * @param matchCase Whether the case has to match
+	 */
+	public ClassNameMatcher(String classname, boolean matchCase)
+	{
+		this.ignoreCase = !matchCase;
+		this.containsPackageQualifier = (classname.indexOf('.') != -1);
+		// Change "." in package names to slashes (e.g. "org.apache.commons" ->
+		// "org/apache/commons")
+		String name = classname.replace('.', '/');
+		if (ignoreCase)
+		{
+			name = name.toLowerCase();
+		}
+
+		String prefix = containsPackageQualifier ? "" : "/";
+		classSuffix = prefix + name + ".class";
+		sourceSuffix = prefix + name + ".java";
+		classSuffixBytes = CentralDirectory.toBytes(classSuffix);
+		sourceSuffixBytes = CentralDirectory.toBytes(sourceSuffix);
+		classFileName = name + ".class";
+		sourceFileName = name + ".java";
+		classFileNameBytes = CentralDirectory.toBytes(classFileName);
+		sourceFileNameBytes = CentralDirectory.toBytes(sourceFileName);
+	}
+
+	@Override
+	public int match(String name, int start)
+	{
+		if (endsWith(name, start, classSuffix, ignoreCase)
+				|| (!containsPackageQualifier && isFileName(name, start, classFileName)))
+		{
+			return CLASS_MATCH;
+		}
+		else if (endsWith(name, start, sourceSuffix, ignoreCase)
+				|| (!containsPackageQualifier && isFileName(name, start, sourceFileName)))
+		{
+			return SOURCE_MATCH;
+		}
+		return NO_MATCH;
+	}
+
+	@Override
+	public int match(ArchiveCursor archive)
+	{
+		if (archive.nameEndsWith(classSuffixBytes, ignoreCase)
+				|| (!containsPackageQualifier && archive.nameEquals(classFileNameBytes, ignoreCase)))
+		{
+			return CLASS_MATCH;
+		}
+		else if (archive.nameEndsWith(sourceSuffixBytes, ignoreCase)
+				|| (!containsPackageQualifier && archive.nameEquals(sourceFileNameBytes, ignoreCase)))
+		{
+			return SOURCE_MATCH;
+		}
+		return NO_MATCH;
+	}
+
+	/**
+	 * Checks whether the name from start on equals the file name, i.e. an
+	 * entry without package.
+	 */
+	private boolean isFileName(String name, int start, String fileName)
+	{
+		return name.length() - start == fileName.length()
+				&& endsWith(name, start, fileName, ignoreCase);
+	}
+}
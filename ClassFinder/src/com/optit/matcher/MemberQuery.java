@@ -0,0 +1,234 @@
+package com.optit.matcher;
+
+import java.nio.ByteBuffer;
+
+import com.sun.tools.classfile.Attribute;
+import com.sun.tools.classfile.Attributes;
+import com.sun.tools.classfile.ClassFile;
+import com.sun.tools.classfile.ConstantPool;
+import com.sun.tools.classfile.ConstantPoolException;
+import com.sun.tools.classfile.Descriptor;
+import com.sun.tools.classfile.Field;
+import com.sun.tools.classfile.Method;
+import com.sun.tools.classfile.Signature_attribute;
+
+/**
+ * Query for the members of the classes found: methods and fields by name,
+ * by their descriptor or generic signature, or both. E.g. the fields named
+ * INSTANCE, the methods taking (Ljava/lang/String;I) or the methods
+ * returning a java.sql.Connection, "(*)Ljava/sql/Connection;".
+ * <p>
+ * A descriptor pattern has to match the whole erased descriptor or the
+ * whole Signature attribute of a member. '*' matches any characters, '.'
+ * may be used instead of '/'. Without a name, the pattern is matched
+ * against fields and methods alike.
+ * <p>
+ * Names are compared with the constant pool without decoding it. The
+ * descriptor pattern is compiled into an automaton up front, so matching a
+ * member only reads the query.
+ */
+public class MemberQuery
+{
+	// Starts a unicode escape in a java source
+	private static final byte[] UNICODE_ESCAPE = { '\\', 'u' };
+
+	private final String methodName;
+	private final String fieldName;
+	// Names as stored in class files, null if not searched for
+	private final byte[] methodNameBytes;
+	private final byte[] fieldNameBytes;
+	private final Automaton descriptor;
+	private final boolean searchMethods;
+	private final boolean searchFields;
+	// Find the class files and sources that may have a matching member,
+	// before they get parsed; null if any may have one
+	private final ByteSearcher classPrefilter;
+	private final ByteSearcher sourcePrefilter;
+
+	/**
+	 * @param methodName The method name, null or empty for none
+	 * @param fieldName The field name, null or empty for none
+	 * @param descriptor The descriptor pattern, null or empty for none
+	 * @throws IllegalArgumentException If neither is given
+	 */
+	public MemberQuery(String methodName, String fieldName, String descriptor)
+	{
+		this.methodName = isEmpty(methodName) ? null : methodName;
+		this.fieldName = isEmpty(fieldName) ? null : fieldName;
+		if (this.methodName == null && this.fieldName == null && isEmpty(descriptor))
+		{
+			throw new IllegalArgumentException("No member name or descriptor given");
+		}
+		methodNameBytes = this.methodName == null ? null : ConstantPool.toModifiedUTF8(this.methodName);
+		fieldNameBytes = this.fieldName == null ? null : ConstantPool.toModifiedUTF8(this.fieldName);
+		searchMethods = this.methodName != null || this.fieldName == null;
+		searchFields = this.fieldName != null || this.methodName == null;
+
+		if (isEmpty(descriptor))
+		{
+			this.descriptor = null;
+			classPrefilter = new ByteSearcher(names(methodNameBytes, fieldNameBytes));
+			// Sources are decoded with the default charset
+			byte[][] sourceNames = names(
+					this.methodName == null ? null : this.methodName.getBytes(),
+					this.fieldName == null ? null : this.fieldName.getBytes());
+			byte[][] patterns = new byte[sourceNames.length + 1][];
+			System.arraycopy(sourceNames, 0, patterns, 0, sourceNames.length);
+			patterns[sourceNames.length] = UNICODE_ESCAPE;
+			sourcePrefilter = new ByteSearcher(patterns);
+		}
+		else
+		{
+			String pattern = descriptor.replace('.', '/');
+			this.descriptor = new Automaton(toRegex(pattern), false);
+			if (this.methodName != null || this.fieldName != null)
+			{
+				classPrefilter = new ByteSearcher(names(methodNameBytes, fieldNameBytes));
+			}
+			else
+			{
+				// The longest literal part is in the constant pool of a
+				// class with a matching member
+				String longest = "";
+				for (String literal : pattern.split("\\*"))
+				{
+					if (literal.length() > longest.length())
+					{
+						longest = literal;
+					}
+				}
+				classPrefilter = longest.length() == 0 ? null
+						: new ByteSearcher(ConstantPool.toModifiedUTF8(longest));
+			}
+			// Descriptors aren't known without compiling the source
+			sourcePrefilter = null;
+		}
+	}
+
+	private static boolean isEmpty(String value)
+	{
+		return value == null || value.length() == 0;
+	}
+
+	private static byte[][] names(byte[] methodName, byte[] fieldName)
+	{
+		if (methodName == null)
+		{
+			return new byte[][] { fieldName };
+		}
+		else if (fieldName == null)
+		{
+			return new byte[][] { methodName };
+		}
+		return new byte[][] { methodName, fieldName };
+	}
+
+	private static String toRegex(String pattern)
+	{
+		StringBuilder regex = new StringBuilder();
+		for (char c : pattern.toCharArray())
+		{
+			if (c == '*')
+			{
+				regex.append(".*");
+			}
+			else
+			{
+				if (!Character.isLetterOrDigit(c) && c != '/')
+				{
+					regex.append('\\');
+				}
+				regex.append(c);
+			}
+		}
+		return regex.toString();
+	}
+
+	/**
+	 * @param classBytes The class file from its position up to its limit
+	 * @return Whether the class may have a matching member, false if it
+	 *         certainly has none
+	 */
+	public boolean mayMatchClass(ByteBuffer classBytes)
+	{
+		return classPrefilter == null || classPrefilter.occursIn(classBytes);
+	}
+
+	/**
+	 * @param source The java source from its position up to its limit
+	 * @return Whether the source may declare a matching member, always false
+	 *         for descriptor queries
+	 */
+	public boolean mayMatchSource(ByteBuffer source)
+	{
+		return sourcePrefilter != null && sourcePrefilter.occursIn(source);
+	}
+
+	/**
+	 * @param classFile The class file, read with at least the Signature
+	 *            attributes if a descriptor is searched for
+	 * @param method One of its methods
+	 * @return Whether the method matches
+	 * @throws ConstantPoolException If the constant pool is broken
+	 */
+	public boolean matches(ClassFile classFile, Method method) throws ConstantPoolException
+	{
+		return searchMethods
+				&& (methodNameBytes == null || classFile.constant_pool.equalsUTF8(method.name_index, methodNameBytes))
+				&& matches(classFile.constant_pool, method.descriptor, method.attributes);
+	}
+
+	/**
+	 * @param classFile The class file, read with at least the Signature
+	 *            attributes if a descriptor is searched for
+	 * @param field One of its fields
+	 * @return Whether the field matches
+	 * @throws ConstantPoolException If the constant pool is broken
+	 */
+	public boolean matches(ClassFile classFile, Field field) throws ConstantPoolException
+	{
+		return searchFields
+				&& (fieldNameBytes == null || classFile.constant_pool.equalsUTF8(field.name_index, fieldNameBytes))
+				&& matches(classFile.constant_pool, field.descriptor, field.attributes);
+	}
+
+	private boolean matches(ConstantPool constant_pool, Descriptor memberDescriptor, Attributes attributes)
+			throws ConstantPoolException
+	{
+		if (descriptor == null || matches(memberDescriptor.getValue(constant_pool)))
+		{
+			return true;
+		}
+		Attribute signature = attributes.get(Attribute.Signature);
+		return signature instanceof Signature_attribute
+				&& matches(((Signature_attribute) signature).getSignature(constant_pool));
+	}
+
+	private boolean matches(String value)
+	{
+		int state = descriptor.start();
+		for (int i = 0; i < value.length() && !Automaton.isDead(state); i++)
+		{
+			state = descriptor.stepChar(state, value.charAt(i));
+		}
+		return descriptor.isAccepting(state);
+	}
+
+	/**
+	 * @param name The name of a method declared in a java source
+	 * @return Whether the method matches
+	 */
+	public boolean matchesMethod(String name)
+	{
+		return sourcePrefilter != null && searchMethods && name.equals(methodName);
+	}
+
+	/**
+	 * @param name The name of a field declared in a java source
+	 * @return Whether the field matches
+	 */
+	public boolean matchesField(String name)
+	{
+		return sourcePrefilter != null && searchFields && name.equals(fieldName);
+	}
+}
@@ -0,0 +1,370 @@
+package com.optit.matcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.optit.zip.ArchiveCursor;
+import com.optit.zip.CentralDirectory;
+
+/**
+ * Matcher for many class names at once, e.g. all the classes of a stack
+ * trace. The names are held in a hash table keyed by the simple class name,
+ * so a name is matched with one hash lookup no matter how many class names
+ * are searched for. Each class name follows the rules of
+ * {@link ClassNameMatcher}.
+ * <p>
+ * The matcher remembers which class names were found, see
+ * {@link #getNotFound()}.
+ */
+public class MultiNameMatcher extends NameMatcher
+{
+	private static final byte[] CLASS_EXTENSION = CentralDirectory.toBytes(".class");
+	private static final byte[] SOURCE_EXTENSION = CentralDirectory.toBytes(".java");
+
+	/**
+	 * One of the class names searched for.
+	 */
+	private static class Query
+	{
+		final String classname;
+		// "apache/commons/Random", null without package qualifier
+		final byte[] path;
+		final int index;
+
+		Query(String classname, byte[] path, int index)
+		{
+			this.classname = classname;
+			this.path = path;
+			this.index = index;
+		}
+	}
+
+	private final boolean ignoreCase;
+	private final Query[] queries;
+	// Open addressing hash table, keyed by the simple class name
+	private final byte[][] keys;
+	private final Query[][] values;
+	private final int mask;
+	// Only ever set to true, read once all search threads are done
+	private final boolean[] found;
+
+	/**
+	 * @param classnames The class names as given on the command line,
+	 *            duplicates are ignored
+	 * @param matchCase Whether the case has to match
+	 */
+	public MultiNameMatcher(List<String> classnames, boolean matchCase)
+	{
+		this.ignoreCase = !matchCase;
+		Set<String> unique = new LinkedHashSet<String>(classnames);
+		queries = new Query[unique.size()];
+		found = new boolean[queries.length];
+
+		int capacity = Integer.highestOneBit(Math.max(queries.length, 1) * 2) * 2;
+		keys = new byte[capacity][];
+		values = new Query[capacity][];
+		mask = capacity - 1;
+
+		int i = 0;
+		for (String classname : unique)
+		{
+			String name = classname.replace('.', '/');
+			byte[] bytes = fold(CentralDirectory.toBytes(name));
+			int simpleStart = name.lastIndexOf('/') + 1;
+			byte[] key = fold(CentralDirectory.toBytes(name.substring(simpleStart)));
+			queries[i] = new Query(classname, simpleStart == 0 ? null : bytes, i);
+			put(key, queries[i]);
+			i++;
+		}
+	}
+
+	/**
+	 * Reads class names separated by ';', as given by one or more -c
+	 * parameters.
+	 * @param classnames The class names
+	 * @return The single class names, empty ones skipped
+	 */
+	public static List<String> split(String classnames)
+	{
+		List<String> result = new ArrayList<String>();
+		for (String classname : classnames.split(";"))
+		{
+			classname = classname.trim();
+			if (classname.length() != 0)
+			{
+				result.add(classname);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return The class names that didn't match any file or entry so far, in
+	 *         the order given
+	 */
+	public List<String> getNotFound()
+	{
+		List<String> notFound = new ArrayList<String>();
+		for (Query query : queries)
+		{
+			if (!found[query.index])
+			{
+				notFound.add(query.classname);
+			}
+		}
+		return notFound;
+	}
+
+	@Override
+	public int match(String name, int start)
+	{
+		int kind;
+		int end;
+		if (endsWith(name, start, ".class", ignoreCase))
+		{
+			kind = CLASS_MATCH;
+			end = name.length() - 6;
+		}
+		else if (endsWith(name, start, ".java", ignoreCase))
+		{
+			kind = SOURCE_MATCH;
+			end = name.length() - 5;
+		}
+		else
+		{
+			return NO_MATCH;
+		}
+
+		int simpleStart = end;
+		while (simpleStart > start && !isSeparator(name.charAt(simpleStart - 1)))
+		{
+			simpleStart--;
+		}
+
+		int hash = 0;
+		for (int i = simpleStart; i < end; i++)
+		{
+			char c = name.charAt(i);
+			for (int k = 0, n = utf8Length(c); k < n; k++)
+			{
+				hash = 31 * hash + fold(utf8Byte(c, k));
+			}
+		}
+
+		int result = NO_MATCH;
+		for (int slot = hash & mask; keys[slot] != null; slot = (slot + 1) & mask)
+		{
+			if (equals(keys[slot], name, simpleStart, end))
+			{
+				for (Query query : values[slot])
+				{
+					if (query.path == null || endsWith(name, start, end, query.path))
+					{
+						found[query.index] = true;
+						result = kind;
+					}
+				}
+				break;
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public int match(ArchiveCursor archive)
+	{
+		int kind;
+		int end = archive.getNameLength();
+		if (archive.nameEndsWith(CLASS_EXTENSION, ignoreCase))
+		{
+			kind = CLASS_MATCH;
+			end -= CLASS_EXTENSION.length;
+		}
+		else if (archive.nameEndsWith(SOURCE_EXTENSION, ignoreCase))
+		{
+			kind = SOURCE_MATCH;
+			end -= SOURCE_EXTENSION.length;
+		}
+		else
+		{
+			return NO_MATCH;
+		}
+
+		int simpleStart = end;
+		while (simpleStart > 0 && !isSeparator((char) archive.getNameByte(simpleStart - 1)))
+		{
+			simpleStart--;
+		}
+
+		int hash = 0;
+		for (int i = simpleStart; i < end; i++)
+		{
+			hash = 31 * hash + fold(archive.getNameByte(i));
+		}
+
+		int result = NO_MATCH;
+		for (int slot = hash & mask; keys[slot] != null; slot = (slot + 1) & mask)
+		{
+			byte[] key = keys[slot];
+			if (key.length == end - simpleStart && regionMatches(archive, simpleStart, key))
+			{
+				for (Query query : values[slot])
+				{
+					if (query.path == null
+							|| (query.path.length <= end && regionMatches(archive, end - query.path.length, query.path)))
+					{
+						found[query.index] = true;
+						result = kind;
+					}
+				}
+				break;
+			}
+		}
+		return result;
+	}
+
+	private void put(byte[] key, Query query)
+	{
+		int hash = 0;
+		for (byte b : key)
+		{
+			hash = 31 * hash + (b & 0xFF);
+		}
+		int slot = hash & mask;
+		while (keys[slot] != null && !Arrays.equals(keys[slot], key))
+		{
+			slot = (slot + 1) & mask;
+		}
+		if (keys[slot] == null)
+		{
+			keys[slot] = key;
+			values[slot] = new Query[] { query };
+		}
+		else
+		{
+			Query[] grown = new Query[values[slot].length + 1];
+			System.arraycopy(values[slot], 0, grown, 0, values[slot].length);
+			grown[grown.length - 1] = query;
+			values[slot] = grown;
+		}
+	}
+
+	private boolean regionMatches(ArchiveCursor archive, int offset, byte[] bytes)
+	{
+		for (int i = bytes.length - 1; i >= 0; i--)
+		{
+			if (fold(archive.getNameByte(offset + i)) != (bytes[i] & 0xFF))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Compares the chars from start to end, encoded as UTF-8, with the
+	 * bytes.
+	 */
+	private boolean equals(byte[] bytes, String name, int start, int end)
+	{
+		int j = 0;
+		for (int i = start; i < end; i++)
+		{
+			char c = name.charAt(i);
+			for (int k = 0, n = utf8Length(c); k < n; k++)
+			{
+				if (j == bytes.length || fold(utf8Byte(c, k)) != (bytes[j++] & 0xFF))
+				{
+					return false;
+				}
+			}
+		}
+		return j == bytes.length;
+	}
+
+	/**
+	 * Checks whether the chars from start to end, encoded as UTF-8, end with
+	 * the bytes.
+	 */
+	private boolean endsWith(String name, int start, int end, byte[] bytes)
+	{
+		int j = bytes.length;
+		for (int i = end - 1; i >= start && j > 0; i--)
+		{
+			char c = name.charAt(i);
+			if (c == '\\')
+			{
+				c = '/';
+			}
+			for (int k = utf8Length(c) - 1; k >= 0; k--)
+			{
+				if (j == 0 || fold(utf8Byte(c, k)) != (bytes[--j] & 0xFF))
+				{
+					return false;
+				}
+			}
+		}
+		return j == 0;
+	}
+
+	private static boolean isSeparator(char c)
+	{
+		return c == '/' || c == '\\';
+	}
+
+	private static int utf8Length(char c)
+	{
+		return c < 0x80 ? 1 : (c < 0x800 ? 2 : 3);
+	}
+
+	/**
+	 * @return The k-th byte of the UTF-8 encoding of the char, surrogates
+	 *         being encoded one by one
+	 */
+	private static int utf8Byte(char c, int k)
+	{
+		if (c < 0x80)
+		{
+			return c;
+		}
+		else if (c < 0x800)
+		{
+			return k == 0 ? 0xC0 | (c >> 6) : 0x80 | (c & 0x3F);
+		}
+		switch (k)
+		{
+			case 0:
+				return 0xE0 | (c >> 12);
+			case 1:
+				return 0x80 | ((c >> 6) & 0x3F);
+			default:
+				return 0x80 | (c & 0x3F);
+		}
+	}
+
+	/**
+	 * @return The unsigned byte, ASCII letters in lower case if the case is
+	 *         ignored
+	 */
+	private int fold(int b)
+	{
+		b &= 0xFF;
+		if (ignoreCase && b >= 'A' && b <= 'Z')
+		{
+			return b + ('a' - 'A');
+		}
+		return b;
+	}
+
+	private byte[] fold(byte[] bytes)
+	{
+		for (int i = 0; i < bytes.length; i++)
+		{
+			bytes[i] = (byte) fold(bytes[i]);
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,82 @@
+package com.optit.matcher;
+
+import com.optit.zip.ArchiveCursor;
+
+/**
+ * A search query compiled once per search. Matches file paths and archive
+ * entry names, the latter directly on their raw UTF-8 bytes.
+ * Matching doesn't allocate, matchers are safe to be shared by all search
+ * threads. The member, reference and annotation queries of this package are
+ * compiled and shared the same way.
+ */
+public abstract class NameMatcher
+{
+	/** The name doesn't match */
+	public static final int NO_MATCH = 0;
+	/** The name is the one of a matching class file */
+	public static final int CLASS_MATCH = 1;
+	/** The name is the one of a matching java source file */
+	public static final int SOURCE_MATCH = 2;
+
+	/**
+	 * Matches a file path or archive entry name. Both '/' and '\' are
+	 * accepted as separators.
+	 * @param name The path or name
+	 * @return CLASS_MATCH, SOURCE_MATCH or NO_MATCH
+	 */
+	public int match(String name)
+	{
+		return match(name, 0);
+	}
+
+	/**
+	 * Matches the end of a String from the given start on, e.g. the entry
+	 * name following the archive chain "x.jar!/a/B.class".
+	 * @param name The String holding the path or name
+	 * @param start The start of the path or name within the String
+	 * @return CLASS_MATCH, SOURCE_MATCH or NO_MATCH
+	 */
+	public abstract int match(String name, int start);
+
+	/**
+	 * Matches the name of the current entry of an archive on its raw bytes.
+	 * @param archive The archive positioned on the entry
+	 * @return CLASS_MATCH, SOURCE_MATCH or NO_MATCH
+	 */
+	public abstract int match(ArchiveCursor archive);
+
+	/**
+	 * Reads a character of a name for matching: the separator is
+	 * normalized to '/' and the case folded if requested.
+	 */
+	static char charAt(String name, int index, boolean ignoreCase)
+	{
+		char c = name.charAt(index);
+		if (c == '\\')
+		{
+			return '/';
+		}
+		return ignoreCase ? Character.toLowerCase(c) : c;
+	}
+
+	/**
+	 * Checks whether the name from start on ends with the given lower case
+	 * (if case is ignored) value.
+	 */
+	static boolean endsWith(String name, int start, String value, boolean ignoreCase)
+	{
+		int offset = name.length() - value.length();
+		if (offset < start)
+		{
+			return false;
+		}
+		for (int i = value.length() - 1; i >= 0; i--)
+		{
+			if (charAt(name, offset + i, ignoreCase) != value.charAt(i))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+}
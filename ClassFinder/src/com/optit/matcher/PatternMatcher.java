@@ -0,0 +1,235 @@
+package com.optit.matcher;
+
+import com.optit.zip.ArchiveCursor;
+import com.optit.zip.CentralDirectory;
+
+/**
+ * Matcher for class name patterns, either wildcards (e.g. *Servlet*Filter or
+ * org.apache.**.Log*) or regular expressions.
+ * <p>
+ * Like a plain class name, the pattern has to match the whole class name or
+ * the trailing packages plus class name, i.e. org.apache.**.Log* finds
+ * org/apache/commons/logging/Log.class as well as
+ * com/acme/org/apache/LogFactory.java. The pattern gets compiled into an
+ * {@link Automaton} that is run over the name once, byte by byte, and stops
+ * as soon as no match is possible anymore.
+ * <p>
+ * Wildcards:
+ * '*' matches any characters within a package or class name,
+ * '**' matches any number of packages,
+ * '?' matches one character,
+ * [abc] matches one of the characters within the brackets, [!abc] one that
+ * isn't.
+ */
+public class PatternMatcher extends NameMatcher
+{
+	private static final byte[] CLASS_EXTENSION = CentralDirectory.toBytes(".class");
+	private static final byte[] SOURCE_EXTENSION = CentralDirectory.toBytes(".java");
+
+	private final boolean ignoreCase;
+	private final Automaton automaton;
+
+	/**
+	 * @param regex The regular expression, matched against the name without
+	 *            extension
+	 * @param matchCase Whether the case has to match
+	 * @throws IllegalArgumentException If the expression is invalid or not
+	 *             supported
+	 */
+	private PatternMatcher(String regex, boolean matchCase)
+	{
+		this.ignoreCase = !matchCase;
+		// The pattern always matches up to the end of the name, a '$' there
+		// is redundant
+		if (regex.endsWith("$") && !isEscaped(regex, regex.length() - 1))
+		{
+			regex = regex.substring(0, regex.length() - 1);
+		}
+		// Anything up to a package boundary may precede the pattern, unless
+		// it is anchored at the start of the name
+		if (regex.startsWith("^"))
+		{
+			this.automaton = new Automaton("(?:" + regex.substring(1) + ")", ignoreCase);
+		}
+		else
+		{
+			this.automaton = new Automaton("(?:.*/)?(?:" + regex + ")", ignoreCase);
+		}
+	}
+
+	/**
+	 * @return Whether the character at the index is preceded by an odd
+	 *         number of backslashes
+	 */
+	private static boolean isEscaped(String regex, int index)
+	{
+		int backslashes = 0;
+		while (index - backslashes > 0 && regex.charAt(index - backslashes - 1) == '\\')
+		{
+			backslashes++;
+		}
+		return backslashes % 2 == 1;
+	}
+
+	/**
+	 * Compiles a wildcard pattern.
+	 * @param pattern The pattern, packages separated by '.'
+	 * @param matchCase Whether the case has to match
+	 * @return The matcher
+	 * @throws IllegalArgumentException If the pattern is invalid
+	 */
+	public static PatternMatcher forWildcards(String pattern, boolean matchCase)
+	{
+		StringBuilder regex = new StringBuilder();
+		for (int i = 0; i < pattern.length(); i++)
+		{
+			char c = pattern.charAt(i);
+			if (c == '*')
+			{
+				if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '*')
+				{
+					i++;
+					if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '.')
+					{
+						// "**." -> none, one or more packages
+						i++;
+						regex.append("(?:.*/)?");
+					}
+					else
+					{
+						regex.append(".*");
+					}
+				}
+				else
+				{
+					regex.append("[^/]*");
+				}
+			}
+			else if (c == '?')
+			{
+				regex.append("[^/]");
+			}
+			else if (c == '[')
+			{
+				int close = pattern.indexOf(']', i + 2);
+				if (close == -1)
+				{
+					throw new IllegalArgumentException("Unclosed character class: " + pattern);
+				}
+				String set = pattern.substring(i + 1, close);
+				regex.append('[');
+				if (set.charAt(0) == '!')
+				{
+					regex.append('^');
+					set = set.substring(1);
+				}
+				for (char s : set.toCharArray())
+				{
+					if (s == '\\' || s == '[' || s == '^')
+					{
+						regex.append('\\');
+					}
+					regex.append(s);
+				}
+				regex.append(']');
+				i = close;
+			}
+			else if (c == '.' || c == '/' || c == '\\')
+			{
+				regex.append('/');
+			}
+			else
+			{
+				if (!Character.isLetterOrDigit(c))
+				{
+					regex.append('\\');
+				}
+				regex.append(c);
+			}
+		}
+		return new PatternMatcher(regex.toString(), matchCase);
+	}
+
+	/**
+	 * Compiles a regular expression. See {@link Automaton} for the supported
+	 * syntax. A literal '.' matches the package separator. A leading '^'
+	 * anchors the expression at the start of the full name instead of at a
+	 * package boundary.
+	 * @param regex The expression
+	 * @param matchCase Whether the case has to match
+	 * @return The matcher
+	 * @throws IllegalArgumentException If the expression is invalid or not
+	 *             supported
+	 */
+	public static PatternMatcher forRegex(String regex, boolean matchCase)
+	{
+		return new PatternMatcher(regex, matchCase);
+	}
+
+	/**
+	 * @param classname The class name as given on the command line
+	 * @return Whether the class name contains wildcards
+	 */
+	public static boolean isWildcardPattern(String classname)
+	{
+		return classname.indexOf('*') != -1 || classname.indexOf('?') != -1
+				|| classname.indexOf('[') != -1;
+	}
+
+	@Override
+	public int match(String name, int start)
+	{
+		int kind;
+		int end;
+		if (endsWith(name, start, ".class", ignoreCase))
+		{
+			kind = CLASS_MATCH;
+			end = name.length() - 6;
+		}
+		else if (endsWith(name, start, ".java", ignoreCase))
+		{
+			kind = SOURCE_MATCH;
+			end = name.length() - 5;
+		}
+		else
+		{
+			return NO_MATCH;
+		}
+
+		int state = automaton.start();
+		for (int i = start; i < end && !Automaton.isDead(state); i++)
+		{
+			char c = name.charAt(i);
+			state = automaton.stepChar(state, c == '\\' ? '/' : c);
+		}
+		return automaton.isAccepting(state) ? kind : NO_MATCH;
+	}
+
+	@Override
+	public int match(ArchiveCursor archive)
+	{
+		int kind;
+		int end = archive.getNameLength();
+		if (archive.nameEndsWith(CLASS_EXTENSION, ignoreCase))
+		{
+			kind = CLASS_MATCH;
+			end -= CLASS_EXTENSION.length;
+		}
+		else if (archive.nameEndsWith(SOURCE_EXTENSION, ignoreCase))
+		{
+			kind = SOURCE_MATCH;
+			end -= SOURCE_EXTENSION.length;
+		}
+		else
+		{
+			return NO_MATCH;
+		}
+
+		int state = automaton.start();
+		for (int i = 0; i < end && !Automaton.isDead(state); i++)
+		{
+			state = automaton.step(state, archive.getNameByte(i));
+		}
+		return automaton.isAccepting(state) ? kind : NO_MATCH;
+	}
+}
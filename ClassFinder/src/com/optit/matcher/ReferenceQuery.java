@@ -0,0 +1,246 @@
+package com.optit.matcher;
+
+import java.nio.ByteBuffer;
+
+import com.sun.tools.classfile.Attribute;
+import com.sun.tools.classfile.Attributes;
+import com.sun.tools.classfile.ClassFile;
+import com.sun.tools.classfile.Code_attribute;
+import com.sun.tools.classfile.ConstantPool;
+import com.sun.tools.classfile.ConstantPool.CPInfo;
+import com.sun.tools.classfile.ConstantPool.CPRefInfo;
+import com.sun.tools.classfile.ConstantPoolException;
+import com.sun.tools.classfile.Descriptor;
+import com.sun.tools.classfile.Exceptions_attribute;
+import com.sun.tools.classfile.Field;
+import com.sun.tools.classfile.Instruction;
+import com.sun.tools.classfile.Method;
+import com.sun.tools.classfile.Signature_attribute;
+
+/**
+ * Query for the classes referencing a class, e.g. java.sql.DriverManager, or
+ * one of its members, e.g. java.sql.DriverManager#getConnection.
+ * <p>
+ * A class references a class when any entry of its constant pool names it:
+ * a CONSTANT_Class, the owner or the descriptor of a Fieldref, Methodref or
+ * InterfaceMethodref, a MethodType, or any descriptor or generic signature,
+ * annotations included. A class references a member only through the
+ * Fieldref, Methodref, InterfaceMethodref or MethodHandle naming it. The
+ * compiler names the class the member is accessed through, not the one
+ * declaring it, so e.g. junit.framework.TestCase#fail doesn't find calls of
+ * fail() through a subclass of TestCase. The type hierarchy is only known
+ * once all files are read, too late for the single pass of a search.
+ * <p>
+ * The members holding the references are found through the constant pool
+ * indexes of their instructions, exception handlers, throws clauses,
+ * descriptors and signatures. Those indexes are returned by
+ * {@link #findReferences(ClassFile)} for each class, the query itself keeps
+ * no state between classes.
+ */
+public class ReferenceQuery
+{
+	// Separates the class from the member in a query, e.g. "a.B#c"
+	public static final char MEMBER_SEPARATOR = '#';
+
+	// The internal name of the class, e.g. java/sql/DriverManager
+	private final String className;
+	// The member name, null if the class is searched for
+	private final String memberName;
+	// How the class appears within descriptors and signatures
+	private final String descriptorName;
+	private final String genericName;
+	// Both have to be in the class file for it to have a reference
+	private final ByteSearcher classPrefilter;
+	private final ByteSearcher memberPrefilter;
+
+	/**
+	 * @param target The class, e.g. java.sql.DriverManager, or the member,
+	 *            e.g. java.sql.DriverManager#getConnection
+	 * @throws IllegalArgumentException If no class is given
+	 */
+	public ReferenceQuery(String target)
+	{
+		int separator = target.indexOf(MEMBER_SEPARATOR);
+		String name = (separator == -1 ? target : target.substring(0, separator));
+		if (name.length() == 0)
+		{
+			throw new IllegalArgumentException("No class given: " + target);
+		}
+		className = name.replace('.', '/');
+		memberName = (separator == -1 || separator == target.length() - 1) ? null : target.substring(separator + 1);
+		descriptorName = "L" + className + ";";
+		genericName = "L" + className + "<";
+
+		classPrefilter = new ByteSearcher(ConstantPool.toModifiedUTF8(className));
+		memberPrefilter = memberName == null ? null : new ByteSearcher(ConstantPool.toModifiedUTF8(memberName));
+	}
+
+	/**
+	 * @param classBytes The class file from its position up to its limit
+	 * @return Whether the class may reference the target, false if it
+	 *         certainly doesn't
+	 */
+	public boolean mayMatchClass(ByteBuffer classBytes)
+	{
+		return classPrefilter.occursIn(classBytes)
+				&& (memberPrefilter == null || memberPrefilter.occursIn(classBytes));
+	}
+
+	/**
+	 * @param classFile The class file
+	 * @return The constant pool entries referencing the target, indexed like
+	 *         the constant pool; null if the class doesn't reference it or
+	 *         is the target class itself
+	 * @throws ConstantPoolException If the constant pool is broken
+	 */
+	public boolean[] findReferences(ClassFile classFile) throws ConstantPoolException
+	{
+		ConstantPool constant_pool = classFile.constant_pool;
+		if (className.equals(classFile.getName()))
+		{
+			return null;
+		}
+		boolean[] references = new boolean[constant_pool.size()];
+		boolean found = false;
+		for (int i = 1; i < constant_pool.size(); i += constant_pool.get(i).size())
+		{
+			references[i] = references(constant_pool, constant_pool.get(i));
+			found |= references[i];
+		}
+		return found ? references : null;
+	}
+
+	private boolean references(ConstantPool constant_pool, CPInfo info) throws ConstantPoolException
+	{
+		switch (info.getTag())
+		{
+		case ConstantPool.CONSTANT_Class:
+			return memberName == null
+					&& mentions(((ConstantPool.CONSTANT_Class_info) info).getName());
+		case ConstantPool.CONSTANT_Fieldref:
+		case ConstantPool.CONSTANT_Methodref:
+		case ConstantPool.CONSTANT_InterfaceMethodref:
+			return references((CPRefInfo) info);
+		case ConstantPool.CONSTANT_MethodHandle:
+			return references(((ConstantPool.CONSTANT_MethodHandle_info) info).getCPRefInfo());
+		case ConstantPool.CONSTANT_MethodType:
+			return memberName == null
+					&& mentions(((ConstantPool.CONSTANT_MethodType_info) info).getType());
+		case ConstantPool.CONSTANT_InvokeDynamic:
+			return memberName == null
+					&& mentions(((ConstantPool.CONSTANT_InvokeDynamic_info) info).getNameAndTypeInfo().getType());
+		case ConstantPool.CONSTANT_Utf8:
+			// Descriptors and signatures of the class itself, annotations
+			return memberName == null && mentions(((ConstantPool.CONSTANT_Utf8_info) info).value);
+		default:
+			return false;
+		}
+	}
+
+	private boolean references(CPRefInfo info) throws ConstantPoolException
+	{
+		if (memberName == null)
+		{
+			return mentions(info.getClassName()) || mentions(info.getNameAndTypeInfo().getType());
+		}
+		return className.equals(info.getClassName()) && memberName.equals(info.getNameAndTypeInfo().getName());
+	}
+
+	/**
+	 * @param value A class name, descriptor or signature
+	 * @return Whether it names the target class
+	 */
+	private boolean mentions(String value)
+	{
+		return value.equals(className) || value.indexOf(descriptorName) != -1 || value.indexOf(genericName) != -1;
+	}
+
+	/**
+	 * @param classFile The class file, read with at least the Signature
+	 *            attributes
+	 * @param field One of its fields
+	 * @param references The result of {@link #findReferences(ClassFile)}
+	 * @return Whether the type of the field references the target
+	 * @throws ConstantPoolException If the constant pool is broken
+	 */
+	public boolean references(ClassFile classFile, Field field, boolean[] references)
+			throws ConstantPoolException
+	{
+		return references(classFile.constant_pool, field.descriptor, field.attributes, references);
+	}
+
+	/**
+	 * @param classFile The class file, read with at least the Code,
+	 *            Exceptions and Signature attributes
+	 * @param method One of its methods
+	 * @param references The result of {@link #findReferences(ClassFile)}
+	 * @return Whether the signature or the code of the method references the
+	 *         target
+	 * @throws ConstantPoolException If the constant pool is broken
+	 */
+	public boolean references(ClassFile classFile, Method method, boolean[] references)
+			throws ConstantPoolException
+	{
+		if (references(classFile.constant_pool, method.descriptor, method.attributes, references))
+		{
+			return true;
+		}
+		Exceptions_attribute exceptions = (Exceptions_attribute) method.attributes.get(Attribute.Exceptions);
+		if (exceptions != null)
+		{
+			for (int index : exceptions.exception_index_table)
+			{
+				if (references[index])
+				{
+					return true;
+				}
+			}
+		}
+		Code_attribute code = (Code_attribute) method.attributes.get(Attribute.Code);
+		if (code == null)
+		{
+			return false;
+		}
+		for (Code_attribute.Exception_data handler : code.exception_table)
+		{
+			if (references[handler.catch_type])
+			{
+				return true;
+			}
+		}
+		for (Instruction instruction : code.getInstructions())
+		{
+			int index;
+			switch (instruction.getKind())
+			{
+			case CPREF:
+				index = instruction.getUnsignedByte(1);
+				break;
+			case CPREF_W:
+			case CPREF_W_UBYTE:
+			case CPREF_W_UBYTE_ZERO:
+				index = instruction.getUnsignedShort(1);
+				break;
+			default:
+				continue;
+			}
+			if (index < references.length && references[index])
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean references(ConstantPool constant_pool, Descriptor descriptor, Attributes attributes,
+			boolean[] references) throws ConstantPoolException
+	{
+		if (memberName != null)
+		{
+			return false;
+		}
+		Signature_attribute signature = (Signature_attribute) attributes.get(Attribute.Signature);
+		return references[descriptor.index]
+				|| (signature != null && references[signature.signature_index]);
+	}
+}
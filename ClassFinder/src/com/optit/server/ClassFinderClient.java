@@ -0,0 +1,107 @@
+package com.optit.server;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import com.optit.Parameters;
+import com.optit.logger.Logger;
+
+/**
+ * Sends a search to a {@link ClassFinderServer} running on the local
+ * machine and passes its output on.
+ */
+public class ClassFinderClient
+{
+	private ClassFinderClient()
+	{
+	}
+
+	/**
+	 * Runs a search on the server. Relative paths among the parameters are
+	 * resolved against the working directory of the client first.
+	 * @param port The port the server listens on
+	 * @param args The command line parameters of the search
+	 * @param logger The logger to pass the output of the search to
+	 * @return The exit code of the search
+	 * @throws IOException If the server can't be reached
+	 */
+	public static int search(int port, String[] args, Logger logger) throws IOException
+	{
+		Socket socket = new Socket(InetAddress.getByName(null), port);
+		try
+		{
+			Writer out = new OutputStreamWriter(socket.getOutputStream(), ClassFinderServer.CHARSET);
+			for (String arg : toAbsolutePaths(args))
+			{
+				out.write(arg);
+				out.write('\n');
+			}
+			out.write('\n');
+			out.flush();
+
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+					ClassFinderServer.CHARSET));
+			String line;
+			while ((line = in.readLine()) != null)
+			{
+				if (line.startsWith(StreamLogger.EXIT))
+				{
+					return Integer.parseInt(line.substring(StreamLogger.EXIT.length()));
+				}
+				else if (line.startsWith(StreamLogger.ERROR))
+				{
+					logger.logErr(line.substring(StreamLogger.ERROR.length()));
+				}
+				else if (line.startsWith(StreamLogger.OUTPUT))
+				{
+					logger.log(line.substring(StreamLogger.OUTPUT.length()));
+				}
+			}
+			throw new IOException("Connection closed by the server");
+		}
+		finally
+		{
+			socket.close();
+		}
+	}
+
+	/**
+	 * Makes the paths among the parameters absolute, the server would
+	 * resolve them against its own working directory otherwise.
+	 * @param args The command line parameters of the search
+	 * @return The parameters with absolute paths
+	 */
+	public static String[] toAbsolutePaths(String[] args)
+	{
+		String[] absolute = args.clone();
+		for (int i = 0; i < absolute.length - 1; i++)
+		{
+			if (absolute[i].equals(Parameters.directory))
+			{
+				// Several directories are separated by ';'
+				StringBuilder directories = new StringBuilder();
+				for (String directory : absolute[++i].split(";"))
+				{
+					if (directories.length() != 0)
+					{
+						directories.append(';');
+					}
+					directories.append(new File(directory).getAbsolutePath());
+				}
+				absolute[i] = directories.toString();
+			}
+			else if (absolute[i].equals(Parameters.classnameFile) || absolute[i].equals(Parameters.index))
+			{
+				i++;
+				absolute[i] = new File(absolute[i]).getAbsolutePath();
+			}
+		}
+		return absolute;
+	}
+}
@@ -0,0 +1,177 @@
+package com.optit.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.optit.ClassFinder;
+import com.optit.Parameters;
+import com.optit.index.ClassIndex;
+import com.optit.logger.Logger;
+
+/**
+ * Keeps the class index in memory and serves searches to clients on the
+ * local machine, so a search doesn't pay for JVM startup, class loading and
+ * a cold index.
+ * <p>
+ * Only the index is kept between searches. Every search still walks the
+ * directories given with -d, checks the size and modification time of every
+ * archive against the index and compiles its own matchers, so it takes as
+ * long as walking the tree. What it saves is reading the entry names of
+ * unchanged archives. Only searches are served: requests for a server,
+ * client, watcher or dependency graph are rejected.
+ * <p>
+ * Protocol: the client sends the command line parameters of the search,
+ * one per line, followed by an empty line. The server answers with the
+ * output of the search, every line tagged "O " (standard output) or "E "
+ * (error output), and ends with "X " and the exit code. See
+ * {@link ClassFinderClient}.
+ */
+public class ClassFinderServer
+{
+	static final String CHARSET = "UTF-8";
+
+	private final int port;
+	private final ClassIndex index;
+	private final Logger logger;
+	private ServerSocket serverSocket;
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	/**
+	 * @param port The port to listen on, 0 for any free port
+	 * @param index The index shared by all searches
+	 * @param logger The logger of the server itself
+	 */
+	public ClassFinderServer(int port, ClassIndex index, Logger logger)
+	{
+		this.port = port;
+		this.index = index;
+		this.logger = logger;
+	}
+
+	/**
+	 * Starts listening on the loopback interface, the server isn't reachable
+	 * from other machines.
+	 * @throws IOException If the port can't be bound
+	 */
+	public void start() throws IOException
+	{
+		serverSocket = new ServerSocket(port, 50, InetAddress.getByName(null));
+		logger.logVerbose("ClassFinder server listening on port " + getPort());
+	}
+
+	/**
+	 * @return The port the server listens on
+	 */
+	public int getPort()
+	{
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Accepts clients until the server is closed. Every client is served by a
+	 * thread of its own.
+	 */
+	public void serve()
+	{
+		while (!serverSocket.isClosed())
+		{
+			try
+			{
+				final Socket socket = serverSocket.accept();
+				executor.execute(new Runnable() {
+					public void run()
+					{
+						handle(socket);
+					}
+				});
+			} catch (SocketException e)
+			{
+				// Server got closed
+			} catch (IOException e)
+			{
+				logger.logErr("Error accepting client: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Stops accepting clients, searches that are running finish.
+	 */
+	public void close()
+	{
+		try
+		{
+			serverSocket.close();
+		} catch (IOException e)
+		{
+			// ignore
+		}
+		executor.shutdown();
+	}
+
+	/**
+	 * Reads the parameters of a search, runs it and sends the output back.
+	 */
+	private void handle(Socket socket)
+	{
+		try
+		{
+			try
+			{
+				BufferedReader in = new BufferedReader(new InputStreamReader(
+						socket.getInputStream(), CHARSET));
+				List<String> args = new ArrayList<String>();
+				String line;
+				while ((line = in.readLine()) != null && line.length() != 0)
+				{
+					args.add(line);
+				}
+				logger.logVerbose("Search " + args);
+
+				StreamLogger out = new StreamLogger(new PrintWriter(
+						new OutputStreamWriter(socket.getOutputStream(),
+								CHARSET)));
+				ClassFinder finder = new ClassFinder(out);
+				finder.setIndex(index);
+				if (!finder.parseArguments(args.toArray(new String[args.size()])))
+				{
+					out.exit(2);
+				}
+				else if (!finder.isSearch())
+				{
+					out.logErr("Only searches can be sent to the server, not "
+							+ Parameters.server + ", " + Parameters.port + ", "
+							+ Parameters.watch + " or "
+							+ Parameters.dependencyGraph);
+					out.exit(2);
+				}
+				else
+				{
+					finder.findClass();
+					boolean exists = args.contains(Parameters.exists);
+					out.exit((exists && finder.getMatchCount() == 0) ? 1 : 0);
+				}
+			} finally
+			{
+				socket.close();
+			}
+		} catch (IOException e)
+		{
+			logger.logErr("Error serving client: " + e.getMessage());
+		} catch (RuntimeException e)
+		{
+			logger.logErr("Error serving client: " + e);
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package com.optit.server;
+
+import java.io.PrintWriter;
+
+import com.optit.logger.CommandLineLogger;
+
+/**
+ * Logger that sends the output of a search to a client of the
+ * {@link ClassFinderServer}. Every line is tagged with its kind: "O " for
+ * standard output, "E " for error output.
+ */
+class StreamLogger extends CommandLineLogger
+{
+	static final String OUTPUT = "O ";
+	static final String ERROR = "E ";
+	static final String EXIT = "X ";
+
+	private final PrintWriter out;
+	// Every client has its own verbose setting
+	private boolean verbose = false;
+
+	/**
+	 * @param out The connection to the client
+	 */
+	StreamLogger(PrintWriter out)
+	{
+		this.out = out;
+	}
+
+	@Override
+	public void setVerbose(boolean verbose)
+	{
+		this.verbose = verbose;
+	}
+
+	@Override
+	public boolean getVerbose()
+	{
+		return verbose;
+	}
+
+	@Override
+	public void log(String line)
+	{
+		write(OUTPUT, line);
+	}
+
+	@Override
+	public void log()
+	{
+		write(OUTPUT, "");
+	}
+
+	@Override
+	public void logVerbose(String line)
+	{
+		if (verbose)
+		{
+			log(line);
+		}
+	}
+
+	@Override
+	public void logErr(String line)
+	{
+		write(ERROR, line);
+	}
+
+	/**
+	 * Ends the response with the exit code of the search.
+	 * @param exitCode The exit code for the client
+	 */
+	void exit(int exitCode)
+	{
+		write(EXIT, String.valueOf(exitCode));
+	}
+
+	private void write(String tag, String line)
+	{
+		// Lines of several search threads must not interleave; a line break
+		// within a line would break the protocol
+		line = line.replace('\n', ' ').replace('\r', ' ');
+		synchronized (out)
+		{
+			out.print(tag);
+			out.print(line);
+			out.print('\n');
+			out.flush();
+		}
+	}
+}
@@ -13,10 +13,26 @@ public class AllTest extends TestSuite
 	{
 		
 		TestSuite suite = new TestSuite("Test for all JUnit tests");
+		suite.addTestSuite(AnnotationQueryTest.class);
+		suite.addTestSuite(ArchiveClassReaderTest.class);
+		suite.addTestSuite(ByteSearcherTest.class);
+		suite.addTestSuite(ClassFileTest.class);
 		suite.addTestSuite(ClassFinderTest.class);
+		suite.addTestSuite(ClassFinderServerTest.class);
+		suite.addTestSuite(ClassIndexTest.class);
+		suite.addTestSuite(CentralDirectoryTest.class);
+		suite.addTestSuite(ClassNameMatcherTest.class);
 		suite.addTestSuite(CommandLineLoggerTest.class);
+		suite.addTestSuite(DependenciesTest.class);
+		suite.addTestSuite(DependencyGraphTest.class);
+		suite.addTestSuite(IndexWatcherTest.class);
+		suite.addTestSuite(MemberQueryTest.class);
+		suite.addTestSuite(MultiNameMatcherTest.class);
 		suite.addTestSuite(ParameterTest.class);
+		suite.addTestSuite(PatternMatcherTest.class);
+		suite.addTestSuite(ReferenceQueryTest.class);
 		suite.addTestSuite(SearchableFileFilterTest.class);
+		suite.addTestSuite(TypeHierarchyTest.class);
 		return suite;
 	}
 }
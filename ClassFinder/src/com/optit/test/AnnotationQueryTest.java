@@ -0,0 +1,90 @@
+package com.optit.test;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.optit.matcher.AnnotationQuery;
+import com.sun.tools.classfile.ClassFile;
+import com.sun.tools.classfile.Method;
+
+public class AnnotationQueryTest extends TestCase
+{
+	private ClassFile classFile;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		InputStream in = AnnotationQueryTest.class.getResourceAsStream("AnnotationQueryTest.class");
+		try
+		{
+			classFile = ClassFile.readLazily(in, AnnotationQuery.ATTRIBUTES);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	@Test
+	public void test_matches() throws Exception
+	{
+		AnnotationQuery query = new AnnotationQuery("java.lang.Deprecated; @org.junit.Test");
+		assertEquals(2, query.getTypeNames().size());
+		assertEquals("org.junit.Test", query.getTypeNames().get(1));
+		assertFalse(query.matches(classFile, classFile.attributes));
+		int annotated = 0;
+		for (Method method : classFile.methods)
+		{
+			if (query.matches(classFile, method.attributes))
+			{
+				annotated++;
+				assertTrue(method.getName(classFile.constant_pool).startsWith("test"));
+			}
+		}
+		assertEquals(4, annotated);
+		assertFalse(new AnnotationQuery("java.lang.Deprecated").matches(classFile, classFile.methods[1].attributes));
+	}
+
+	@Test
+	public void test_addTypeNames() throws Exception
+	{
+		Set<String> typeNames = new HashSet<String>();
+		AnnotationQuery.addTypeNames(classFile, classFile.attributes, typeNames);
+		assertTrue(typeNames.isEmpty());
+		for (Method method : classFile.methods)
+		{
+			AnnotationQuery.addTypeNames(classFile, method.attributes, typeNames);
+		}
+		assertEquals(1, typeNames.size());
+		assertTrue(typeNames.contains("org.junit.Test"));
+	}
+
+	@Test
+	public void test_prefilter() throws Exception
+	{
+		ByteBuffer bytes = ByteBuffer.wrap("\u0001\u0000\u0010Lorg/junit/Test;".getBytes("UTF-8"));
+		assertTrue(new AnnotationQuery("org.junit.Test").mayMatchClass(bytes));
+		assertFalse(new AnnotationQuery("org.junit").mayMatchClass(bytes));
+		assertFalse(new AnnotationQuery("javax.ws.rs.Path").mayMatchClass(bytes));
+	}
+
+	@Test
+	public void testNegative_noType()
+	{
+		try
+		{
+			new AnnotationQuery(" ; ");
+			fail("IllegalArgumentException expected");
+		}
+		catch (IllegalArgumentException e)
+		{
+			// expected
+		}
+	}
+}
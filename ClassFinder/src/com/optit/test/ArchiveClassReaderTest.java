@@ -0,0 +1,259 @@
+package com.optit.test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.optit.ClassFinder;
+import com.optit.Parameters;
+import com.optit.index.ArchiveClassReader;
+import com.optit.index.ClassIndex;
+import com.optit.matcher.ByteSearcher;
+import com.sun.tools.classfile.ClassFile;
+import com.sun.tools.classfile.Dependencies;
+import com.sun.tools.classfile.Dependencies.ClassFileNotFoundException;
+import com.sun.tools.classfile.Dependency;
+
+public class ArchiveClassReaderTest extends TestCase
+{
+	private static final String MATCHER_PACKAGE = "com/optit/matcher/";
+
+	private File war;
+	private File jar;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		war = File.createTempFile("ArchiveClassReaderTest", ".war");
+		jar = File.createTempFile("ArchiveClassReaderTest", ".jar");
+
+		// The matcher classes in a compressed jar within the war, one of
+		// them in WEB-INF/classes as well
+		ByteArrayOutputStream lib = new ByteArrayOutputStream();
+		JarOutputStream libOut = new JarOutputStream(lib);
+		File[] classFiles = new File(ByteSearcher.class.getResource("ByteSearcher.class").toURI()).getParentFile()
+				.listFiles();
+		for (File classFile : classFiles)
+		{
+			writeEntry(libOut, MATCHER_PACKAGE + classFile.getName(), readClass(MATCHER_PACKAGE + classFile.getName()));
+		}
+		libOut.close();
+
+		JarOutputStream out = new JarOutputStream(new FileOutputStream(war));
+		writeEntry(out, "WEB-INF/classes/com/optit/matcher/MemberQuery.class",
+				readClass("com/optit/matcher/MemberQuery.class"));
+		writeEntry(out, "WEB-INF/lib/matcher.jar", lib.toByteArray());
+		out.close();
+
+		out = new JarOutputStream(new FileOutputStream(jar));
+		writeEntry(out, "com/optit/matcher/ByteSearcher.class", readClass("com/optit/matcher/ByteSearcher.class"));
+		out.close();
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		war.delete();
+		jar.delete();
+	}
+
+	private static byte[] readClass(String entryName) throws IOException
+	{
+		InputStream in = ArchiveClassReaderTest.class.getResourceAsStream("/" + entryName);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] chunk = new byte[4096];
+		int read;
+		while ((read = in.read(chunk)) != -1)
+		{
+			bytes.write(chunk, 0, read);
+		}
+		in.close();
+		return bytes.toByteArray();
+	}
+
+	private static void writeEntry(JarOutputStream out, String entryName, byte[] content) throws IOException
+	{
+		out.putNextEntry(new ZipEntry(entryName));
+		out.write(content);
+		out.closeEntry();
+	}
+
+	@Test
+	public void test_getClassFile() throws Exception
+	{
+		ArchiveClassReader reader = new ArchiveClassReader(Arrays.asList(war), new ClassIndex(null), 1 << 20);
+		try
+		{
+			ClassFile classFile = reader.getClassFile("com/optit/matcher/ByteSearcher");
+			assertEquals("com/optit/matcher/ByteSearcher", classFile.getName());
+			assertEquals("WEB-INF/lib/matcher.jar!/com/optit/matcher/ByteSearcher.class",
+					reader.getEntryName("com/optit/matcher/ByteSearcher"));
+			assertSame(classFile, reader.getClassFile("com/optit/matcher/ByteSearcher"));
+
+			// WEB-INF/classes comes before WEB-INF/lib
+			assertEquals("com/optit/matcher/MemberQuery", reader.getClassFile("com/optit/matcher/MemberQuery").getName());
+			assertEquals("WEB-INF/classes/com/optit/matcher/MemberQuery.class",
+					reader.getEntryName("com/optit/matcher/MemberQuery"));
+			assertEquals(war, reader.getLocation("com/optit/matcher/MemberQuery"));
+			assertTrue(reader.getClassNames().contains("com/optit/matcher/Automaton"));
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	@Test
+	public void test_classpathOrder() throws Exception
+	{
+		ArchiveClassReader reader = new ArchiveClassReader(Arrays.asList(jar, war), new ClassIndex(null), 1 << 20);
+		try
+		{
+			assertEquals(jar, reader.getLocation("com/optit/matcher/ByteSearcher"));
+			assertEquals("com/optit/matcher/ByteSearcher", reader.getClassFile("com/optit/matcher/ByteSearcher")
+					.getName());
+			assertEquals(war, reader.getLocation("com/optit/matcher/Automaton"));
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	@Test
+	public void test_cacheBound() throws Exception
+	{
+		// Too small for more than the most recent class
+		ArchiveClassReader reader = new ArchiveClassReader(Arrays.asList(war), new ClassIndex(null), 1);
+		try
+		{
+			ClassFile classFile = reader.getClassFile("com/optit/matcher/ByteSearcher");
+			assertSame(classFile, reader.getClassFile("com/optit/matcher/ByteSearcher"));
+			reader.getClassFile("com/optit/matcher/Automaton");
+			ClassFile reread = reader.getClassFile("com/optit/matcher/ByteSearcher");
+			assertNotSame(classFile, reread);
+			assertEquals(classFile.getName(), reread.getName());
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	@Test
+	public void test_dependencies() throws Exception
+	{
+		ArchiveClassReader reader = new ArchiveClassReader(Arrays.asList(war), new ClassIndex(null), 1 << 20);
+		try
+		{
+			Dependencies dependencies = new Dependencies();
+			dependencies.setFilter(Dependencies.getPackageFilter(Collections.singleton("com/optit/matcher"), false));
+			Set<String> targets = new HashSet<String>();
+			for (Dependency dependency : dependencies.findAllDependencies(reader,
+					Collections.singleton("com/optit/matcher/MemberQuery"), true))
+			{
+				targets.add(dependency.getTarget().getClassName());
+			}
+			assertTrue(targets.contains("com/optit/matcher/ByteSearcher"));
+			assertTrue(targets.contains("com/optit/matcher/Automaton"));
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	@Test
+	public void test_deploymentDirectory() throws Exception
+	{
+		// Loose classes below the directory given, like in a deployment tree
+		File dir = new File(System.getProperty("java.io.tmpdir"), "ArchiveClassReaderTest");
+		File[] files = { new File(dir, "classes/" + MATCHER_PACKAGE + "MemberQuery.class"),
+				new File(dir, "classes/" + MATCHER_PACKAGE + "ByteSearcher.class"), new File(dir, "Broken.class") };
+		for (int i = 0; i < files.length; i++)
+		{
+			files[i].getParentFile().mkdirs();
+			FileOutputStream out = new FileOutputStream(files[i]);
+			out.write(i < 2 ? readClass(MATCHER_PACKAGE + files[i].getName()) : new byte[] {1, 2, 3});
+			out.close();
+		}
+		File graph = new File(dir, "graph");
+		try
+		{
+			ArchiveClassReader reader = new ArchiveClassReader(Arrays.asList(dir), new ClassIndex(null), 1 << 20);
+			try
+			{
+				assertEquals(new HashSet<String>(Arrays.asList("com/optit/matcher/MemberQuery",
+						"com/optit/matcher/ByteSearcher")), reader.getClassNames());
+				assertEquals("classes/com/optit/matcher/MemberQuery.class",
+						reader.getEntryName("com/optit/matcher/MemberQuery"));
+				assertEquals("com/optit/matcher/MemberQuery", reader.getClassFile("com/optit/matcher/MemberQuery")
+						.getName());
+			}
+			finally
+			{
+				reader.close();
+			}
+
+			// The dependencies between the loose classes are kept
+			ClassFinder.main(new String[] { Parameters.directory, dir.getPath(), Parameters.recursiveSearch,
+					Parameters.dependencyGraph, graph.getPath() });
+			BufferedReader csv = new BufferedReader(new FileReader(graph.getPath() + "-classes.csv"));
+			Set<String> lines = new HashSet<String>();
+			String line;
+			while ((line = csv.readLine()) != null)
+			{
+				lines.add(line);
+			}
+			csv.close();
+			assertTrue(lines.contains("com.optit.matcher.MemberQuery,com.optit.matcher.ByteSearcher"));
+		}
+		finally
+		{
+			for (File file : files)
+			{
+				file.delete();
+			}
+			for (String suffix : new String[] { ".graph", ".csv", ".dot" })
+			{
+				for (String graphName : new String[] { "-classes", "-packages", "-archives" })
+				{
+					new File(graph.getPath() + graphName + suffix).delete();
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testNegative_classNotFound() throws Exception
+	{
+		ArchiveClassReader reader = new ArchiveClassReader(Arrays.asList(war), new ClassIndex(null), 1 << 20);
+		try
+		{
+			reader.getClassFile("com/optit/matcher/Missing");
+			fail("ClassFileNotFoundException expected");
+		}
+		catch (ClassFileNotFoundException e)
+		{
+			assertEquals("com/optit/matcher/Missing", e.className);
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package com.optit.test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.optit.matcher.ByteSearcher;
+
+public class ByteSearcherTest extends TestCase
+{
+	private static ByteBuffer bytes(String value) throws Exception
+	{
+		return ByteBuffer.wrap(value.getBytes("UTF-8"));
+	}
+
+	@Test
+	public void test_indexIn() throws Exception
+	{
+		ByteSearcher searcher = new ByteSearcher("toString".getBytes("UTF-8"));
+		assertEquals(7, searcher.indexIn(bytes("\u0001\u0000\u0008()V\u0001toString\u0001")));
+		assertEquals(0, searcher.indexIn(bytes("toString")));
+		assertEquals(-1, searcher.indexIn(bytes("toStrin")));
+		assertEquals(-1, searcher.indexIn(bytes("tostring")));
+		assertEquals(-1, searcher.indexIn(bytes("")));
+	}
+
+	@Test
+	public void test_severalPatterns() throws Exception
+	{
+		ByteSearcher searcher = new ByteSearcher("findClass".getBytes("UTF-8"), "\\u".getBytes("UTF-8"));
+		assertTrue(searcher.occursIn(bytes("void findClass()")));
+		assertEquals(6, searcher.indexIn(bytes("void f\\u0069ndClass()")));
+		assertEquals(-1, searcher.indexIn(bytes("void findclass()")));
+		// the first match counts, whichever pattern it is
+		assertEquals(2, searcher.indexIn(bytes("a findClass \\u")));
+	}
+
+	@Test
+	public void test_position() throws Exception
+	{
+		ByteSearcher searcher = new ByteSearcher("ab".getBytes("UTF-8"));
+		ByteBuffer buffer = bytes("abxxabxxab");
+		buffer.position(1).limit(9);
+		assertEquals(4, searcher.indexIn(buffer));
+		assertEquals(1, buffer.position());
+		buffer.position(5);
+		assertEquals(-1, searcher.indexIn(buffer));
+	}
+
+	@Test
+	public void test_againstNaiveSearch()
+	{
+		Random random = new Random(42);
+		for (int round = 0; round < 500; round++)
+		{
+			// Few distinct bytes, so that partial matches are frequent
+			byte[] text = randomBytes(random, random.nextInt(200));
+			byte[][] patterns = new byte[1 + random.nextInt(3)][];
+			for (int i = 0; i < patterns.length; i++)
+			{
+				patterns[i] = randomBytes(random, 1 + random.nextInt(5));
+			}
+			assertEquals(naiveIndexOf(text, patterns),
+					new ByteSearcher(patterns).indexIn(ByteBuffer.wrap(text)));
+		}
+	}
+
+	private static byte[] randomBytes(Random random, int length)
+	{
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++)
+		{
+			bytes[i] = (byte) (0xFE + random.nextInt(3));
+		}
+		return bytes;
+	}
+
+	private static int naiveIndexOf(byte[] text, byte[][] patterns)
+	{
+		for (int start = 0; start < text.length; start++)
+		{
+			for (byte[] pattern : patterns)
+			{
+				int i = 0;
+				while (i < pattern.length && start + i < text.length && text[start + i] == pattern[i])
+				{
+					i++;
+				}
+				if (i == pattern.length)
+				{
+					return start;
+				}
+			}
+		}
+		return -1;
+	}
+
+	@Test
+	public void testNegative_emptyPattern()
+	{
+		try
+		{
+			new ByteSearcher(new byte[0]);
+			fail("IllegalArgumentException expected");
+		}
+		catch (IllegalArgumentException e)
+		{
+			// expected
+		}
+	}
+}
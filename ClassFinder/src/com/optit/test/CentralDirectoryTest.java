@@ -0,0 +1,228 @@
+package com.optit.test;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.optit.zip.ArchiveCursor;
+import com.optit.zip.CentralDirectory;
+
+public class CentralDirectoryTest extends TestCase
+{
+	private File jar;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		jar = File.createTempFile("CentralDirectoryTest", ".jar");
+		JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+		out.setComment("a comment at the end");
+		out.putNextEntry(new ZipEntry("org/test/"));
+		out.closeEntry();
+		out.putNextEntry(new ZipEntry("org/test/Foo.class"));
+		out.write(new byte[100]);
+		out.closeEntry();
+		ZipEntry stored = new ZipEntry("org/test/Bar.java");
+		stored.setMethod(ZipEntry.STORED);
+		stored.setSize(0);
+		stored.setCrc(0);
+		out.putNextEntry(stored);
+		out.closeEntry();
+		out.close();
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		jar.delete();
+	}
+
+	@Test
+	public void test_read() throws Exception
+	{
+		CentralDirectory cd = CentralDirectory.open(jar);
+		assertEquals(3, cd.size());
+
+		ArrayList<String> names = new ArrayList<String>();
+		while (cd.next())
+		{
+			names.add(cd.getName());
+		}
+		assertEquals("org/test/", names.get(0));
+		assertEquals("org/test/Foo.class", names.get(1));
+		assertEquals("org/test/Bar.java", names.get(2));
+		cd.close();
+	}
+
+	@Test
+	public void test_entryAttributes() throws Exception
+	{
+		CentralDirectory cd = CentralDirectory.open(jar);
+		assertTrue(cd.next());
+		assertTrue(cd.isDirectory());
+		assertTrue(cd.next());
+		assertFalse(cd.isDirectory());
+		assertEquals(CentralDirectory.DEFLATED, cd.getMethod());
+		assertEquals(100, cd.getSize());
+		assertTrue(cd.getLocalHeaderOffset() > 0);
+		assertTrue(cd.next());
+		assertEquals(CentralDirectory.STORED, cd.getMethod());
+		assertFalse(cd.next());
+		cd.close();
+	}
+
+	@Test
+	public void test_nameMatching() throws Exception
+	{
+		CentralDirectory cd = CentralDirectory.open(jar);
+		cd.next();
+		cd.next();
+		assertTrue(cd.nameEndsWith("/Foo.class".getBytes("UTF-8"), false));
+		assertFalse(cd.nameEndsWith("/foo.class".getBytes("UTF-8"), false));
+		assertTrue(cd.nameEndsWith("/foo.class".getBytes("UTF-8"), true));
+		assertTrue(cd.nameEquals("org/test/foo.class".getBytes("UTF-8"), true));
+		assertFalse(cd.nameEquals("Foo.class".getBytes("UTF-8"), false));
+		assertFalse(cd.nameEndsWith("a/very/long/org/test/Foo.class".getBytes("UTF-8"), false));
+
+		cd.reset();
+		assertTrue(cd.next());
+		assertEquals("org/test/", cd.getName());
+		cd.close();
+	}
+
+	@Test
+	public void test_openEntry() throws Exception
+	{
+		CentralDirectory cd = CentralDirectory.open(jar);
+		cd.next();
+		cd.next();
+		InputStream in = cd.openEntry();
+		int length = 0;
+		while (in.read() != -1)
+		{
+			length++;
+		}
+		in.close();
+		assertEquals(100, length);
+		cd.close();
+	}
+
+	@Test
+	public void test_openNested() throws Exception
+	{
+		File war = File.createTempFile("CentralDirectoryTest", ".war");
+		try
+		{
+			byte[] inner = toByteArray(jar);
+			ZipOutputStream out = new ZipOutputStream(new FileOutputStream(war));
+			ZipEntry stored = new ZipEntry("WEB-INF/lib/stored.jar");
+			stored.setMethod(ZipEntry.STORED);
+			stored.setSize(inner.length);
+			CRC32 crc = new CRC32();
+			crc.update(inner);
+			stored.setCrc(crc.getValue());
+			out.putNextEntry(stored);
+			out.write(inner);
+			out.closeEntry();
+			out.putNextEntry(new ZipEntry("WEB-INF/lib/deflated.jar"));
+			out.write(inner);
+			out.closeEntry();
+			out.close();
+
+			CentralDirectory cd = CentralDirectory.open(war);
+			while (cd.next())
+			{
+				assertTrue(cd.isArchive());
+				ArchiveCursor nested = cd.openNested();
+				ArrayList<String> names = new ArrayList<String>();
+				while (nested.next())
+				{
+					names.add(nested.getName());
+				}
+				nested.close();
+				assertEquals(3, names.size());
+				assertEquals("org/test/Foo.class", names.get(1));
+			}
+			cd.close();
+		}
+		finally
+		{
+			war.delete();
+		}
+	}
+
+	@Test
+	public void test_fingerprint() throws Exception
+	{
+		File copy = File.createTempFile("CentralDirectoryTest", ".jar");
+		File other = File.createTempFile("CentralDirectoryTest", ".jar");
+		try
+		{
+			FileOutputStream out = new FileOutputStream(copy);
+			out.write(toByteArray(jar));
+			out.close();
+			JarOutputStream jarOut = new JarOutputStream(new FileOutputStream(other));
+			jarOut.putNextEntry(new ZipEntry("org/test/Foo.class"));
+			jarOut.write(new byte[101]);
+			jarOut.closeEntry();
+			jarOut.close();
+
+			CentralDirectory cd = CentralDirectory.open(jar);
+			CentralDirectory cdCopy = CentralDirectory.open(copy);
+			CentralDirectory cdOther = CentralDirectory.open(other);
+			assertEquals(cd.getFingerprint(), cdCopy.getFingerprint());
+			assertFalse(cd.getFingerprint().equals(cdOther.getFingerprint()));
+			cd.close();
+			cdCopy.close();
+			cdOther.close();
+		}
+		finally
+		{
+			copy.delete();
+			other.delete();
+		}
+	}
+
+	private static byte[] toByteArray(File file) throws Exception
+	{
+		byte[] bytes = new byte[(int) file.length()];
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		in.readFully(bytes);
+		in.close();
+		return bytes;
+	}
+
+	@Test
+	public void testNegative_notAnArchive() throws Exception
+	{
+		File file = File.createTempFile("CentralDirectoryTest", ".jar");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(new byte[100]);
+		out.close();
+		try
+		{
+			CentralDirectory.open(file);
+			fail("ZipException expected");
+		}
+		catch (ZipException e)
+		{
+			// expected
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+}
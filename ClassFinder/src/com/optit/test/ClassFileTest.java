@@ -0,0 +1,200 @@
+package com.optit.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.optit.ClassFinder;
+import com.sun.tools.classfile.Attribute;
+import com.sun.tools.classfile.ClassFile;
+import com.sun.tools.classfile.ConstantPool;
+import com.sun.tools.classfile.Exceptions_attribute;
+import com.sun.tools.classfile.Method;
+
+public class ClassFileTest extends TestCase
+{
+	private static final String CLASS_FILE = "/com/optit/ClassFinder.class";
+
+	private ClassFile readEagerly() throws Exception
+	{
+		InputStream in = ClassFinder.class.getResourceAsStream(CLASS_FILE);
+		try
+		{
+			return ClassFile.read(in);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private ClassFile readLazily(String... attributeNames) throws Exception
+	{
+		InputStream in = ClassFinder.class.getResourceAsStream(CLASS_FILE);
+		try
+		{
+			return ClassFile.readLazily(in, attributeNames);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	@Test
+	public void test_readLazily() throws Exception
+	{
+		ClassFile eager = readEagerly();
+		ClassFile lazy = readLazily(Attribute.Signature, Attribute.Exceptions);
+
+		assertEquals(eager.getName(), lazy.getName());
+		assertEquals(eager.fields.length, lazy.fields.length);
+		assertEquals(eager.methods.length, lazy.methods.length);
+		int withExceptions = 0;
+		for (int i = 0; i < eager.methods.length; i++)
+		{
+			Method method = eager.methods[i];
+			Method lazyMethod = lazy.methods[i];
+			assertEquals(method.getName(eager.constant_pool), lazyMethod.getName(lazy.constant_pool));
+			assertNotNull(method.attributes.get(Attribute.Code));
+			assertNull(lazyMethod.attributes.get(Attribute.Code));
+
+			Exceptions_attribute exceptions = (Exceptions_attribute) method.attributes.get(Attribute.Exceptions);
+			Exceptions_attribute lazyExceptions = (Exceptions_attribute) lazyMethod.attributes.get(Attribute.Exceptions);
+			if (exceptions == null)
+			{
+				assertNull(lazyExceptions);
+			}
+			else
+			{
+				withExceptions++;
+				assertEquals(exceptions.number_of_exceptions, lazyExceptions.number_of_exceptions);
+				assertSame(lazyExceptions, lazyMethod.attributes.get(Attribute.Exceptions));
+			}
+		}
+		assertTrue(withExceptions > 0);
+	}
+
+	@Test
+	public void test_readBuffer() throws Exception
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		InputStream in = ClassFinder.class.getResourceAsStream(CLASS_FILE);
+		byte[] chunk = new byte[4096];
+		int read;
+		while ((read = in.read(chunk)) != -1)
+		{
+			bytes.write(chunk, 0, read);
+		}
+		in.close();
+
+		// The class file in the middle of a direct buffer
+		ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.size() + 20);
+		buffer.position(10);
+		buffer.put(bytes.toByteArray());
+		buffer.position(10).limit(10 + bytes.size());
+
+		ClassFile eager = readEagerly();
+		ClassFile fromBuffer = ClassFile.read(buffer);
+		assertEquals(10, buffer.position());
+		assertEquals(eager.getName(), fromBuffer.getName());
+		assertEquals(eager.byteLength(), fromBuffer.byteLength());
+		assertEquals(eager.constant_pool.size(), fromBuffer.constant_pool.size());
+		for (int i = 0; i < eager.methods.length; i++)
+		{
+			assertEquals(eager.methods[i].getName(eager.constant_pool),
+					fromBuffer.methods[i].getName(fromBuffer.constant_pool));
+			assertEquals(eager.methods[i].attributes.size(), fromBuffer.methods[i].attributes.size());
+		}
+
+		ClassFile lazy = ClassFile.readLazily(buffer, Attribute.Exceptions);
+		assertEquals(eager.methods.length, lazy.methods.length);
+	}
+
+	@Test
+	public void test_constantPoolUTF8() throws Exception
+	{
+		ClassFile classFile = readLazily();
+		ConstantPool constant_pool = classFile.constant_pool;
+		for (Method method : classFile.methods)
+		{
+			byte[] name = ConstantPool.toModifiedUTF8(method.getName(constant_pool));
+			assertTrue(constant_pool.equalsUTF8(method.name_index, name));
+			assertFalse(constant_pool.equalsUTF8(method.name_index, ConstantPool.toModifiedUTF8("x")));
+		}
+		int index = constant_pool.getUTF8Index("findClass");
+		assertEquals("findClass", constant_pool.getUTF8Value(index));
+		try
+		{
+			constant_pool.equalsUTF8(classFile.this_class, new byte[0]);
+			fail("UnexpectedEntry expected");
+		}
+		catch (ConstantPool.UnexpectedEntry e)
+		{
+			// expected
+		}
+		for (int invalid : new int[] {0, -1, constant_pool.size()})
+		{
+			try
+			{
+				constant_pool.equalsUTF8(invalid, new byte[0]);
+				fail("InvalidIndex expected");
+			}
+			catch (ConstantPool.InvalidIndex e)
+			{
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void test_toModifiedUTF8() throws Exception
+	{
+		String value = "a\u0000\u00e9\u20ac\ud83d\ude00";
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new DataOutputStream(bytes).writeUTF(value);
+		byte[] expected = bytes.toByteArray();
+		assertTrue(Arrays.equals(Arrays.copyOfRange(expected, 2, expected.length),
+				ConstantPool.toModifiedUTF8(value)));
+	}
+
+	@Test
+	public void testNegative_readTruncated() throws Exception
+	{
+		InputStream in = ClassFinder.class.getResourceAsStream(CLASS_FILE);
+		byte[] truncated = new byte[100];
+		int length = 0;
+		while (length < truncated.length)
+		{
+			length += in.read(truncated, length, truncated.length - length);
+		}
+		in.close();
+		try
+		{
+			ClassFile.read(ByteBuffer.wrap(truncated));
+			fail("EOFException expected");
+		}
+		catch (EOFException e)
+		{
+			// expected
+		}
+	}
+
+	@Test
+	public void test_readLazilyNothingRetained() throws Exception
+	{
+		ClassFile lazy = readLazily();
+		assertEquals(0, lazy.attributes.size());
+		for (Method method : lazy.methods)
+		{
+			assertEquals(0, method.attributes.size());
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package com.optit.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.optit.Parameters;
+import com.optit.index.ClassIndex;
+import com.optit.logger.CommandLineLogger;
+import com.optit.server.ClassFinderClient;
+import com.optit.server.ClassFinderServer;
+
+public class ClassFinderServerTest extends TestCase
+{
+	private File jar;
+	private ClassIndex index;
+	private ClassFinderServer server;
+
+	/**
+	 * Collects the output passed on by the client
+	 */
+	private static class CollectingLogger extends CommandLineLogger
+	{
+		final List<String> lines = new ArrayList<String>();
+		final List<String> errors = new ArrayList<String>();
+
+		@Override
+		public void log(String line)
+		{
+			lines.add(line);
+		}
+
+		@Override
+		public void logErr(String line)
+		{
+			errors.add(line);
+		}
+	}
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		jar = File.createTempFile("ClassFinderServerTest", ".jar");
+		ClassIndexTest.writeJar(jar, new String[] { "org/test/Foo.class", "org/test/Bar.class" });
+		index = new ClassIndex(null);
+		server = new ClassFinderServer(0, index, new CommandLineLogger());
+		server.start();
+		new Thread(new Runnable() {
+			public void run()
+			{
+				server.serve();
+			}
+		}).start();
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		server.close();
+		jar.delete();
+	}
+
+	@Test
+	public void test_search() throws Exception
+	{
+		CollectingLogger logger = new CollectingLogger();
+		int exitCode = ClassFinderClient.search(server.getPort(), new String[] {
+				Parameters.directory, jar.getAbsolutePath(), Parameters.classname, "Foo" }, logger);
+		assertEquals(0, exitCode);
+		assertEquals(1, logger.lines.size());
+		assertTrue(logger.lines.get(0).startsWith("Class \"org/test/Foo.class\" found at"));
+		// The archive is in the index of the server now
+		assertTrue(index.isUpToDate(jar));
+	}
+
+	@Test
+	public void test_exists() throws Exception
+	{
+		CollectingLogger logger = new CollectingLogger();
+		assertEquals(1, ClassFinderClient.search(server.getPort(), new String[] {
+				Parameters.directory, jar.getAbsolutePath(), Parameters.classname, "Baz", Parameters.exists }, logger));
+		assertEquals(0, ClassFinderClient.search(server.getPort(), new String[] {
+				Parameters.directory, jar.getAbsolutePath(), Parameters.classname, "Bar", Parameters.exists }, logger));
+	}
+
+	@Test
+	public void test_relativePaths() throws Exception
+	{
+		String[] args = ClassFinderClient.toAbsolutePaths(new String[] { Parameters.directory, "lib;/opt/lib",
+				Parameters.classname, "lib", Parameters.index, "index.idx", Parameters.classnameFile, "names.txt" });
+		assertEquals(new File("lib").getAbsolutePath() + ";" + new File("/opt/lib").getAbsolutePath(), args[1]);
+		assertEquals("lib", args[3]);
+		assertEquals(new File("index.idx").getAbsolutePath(), args[5]);
+		assertEquals(new File("names.txt").getAbsolutePath(), args[7]);
+
+		// A jar relative to the working directory is found by the server
+		File workingDirectory = new File("").getAbsoluteFile();
+		File relativeJar = File.createTempFile("ClassFinderServerTest", ".jar", workingDirectory);
+		try
+		{
+			ClassIndexTest.writeJar(relativeJar, new String[] { "org/test/Foo.class" });
+			CollectingLogger logger = new CollectingLogger();
+			assertEquals(0, ClassFinderClient.search(server.getPort(), new String[] { Parameters.directory,
+					relativeJar.getName(), Parameters.classname, "Foo", Parameters.exists }, logger));
+		}
+		finally
+		{
+			relativeJar.delete();
+		}
+	}
+
+	@Test
+	public void testNegative_invalidParameters() throws Exception
+	{
+		CollectingLogger logger = new CollectingLogger();
+		assertEquals(2, ClassFinderClient.search(server.getPort(), new String[] {
+				Parameters.directory, jar.getAbsolutePath(), Parameters.threads, "none" }, logger));
+		assertTrue(logger.lines.get(0).startsWith("Invalid number of threads"));
+	}
+
+	@Test
+	public void testNegative_noSearch() throws Exception
+	{
+		// Only searches are run by the server, the classes don't get listed
+		// instead
+		String[][] requests = { { Parameters.dependencyGraph, "graph" }, { Parameters.watch, "1000" },
+				{ Parameters.server, "1" }, { Parameters.port, "1", Parameters.classname, "Foo" } };
+		for (String[] request : requests)
+		{
+			List<String> args = new ArrayList<String>(Arrays.asList(Parameters.directory, jar.getAbsolutePath()));
+			args.addAll(Arrays.asList(request));
+			CollectingLogger logger = new CollectingLogger();
+			assertEquals(2, ClassFinderClient.search(server.getPort(), args.toArray(new String[args.size()]), logger));
+			assertTrue(logger.lines.isEmpty());
+			assertEquals(1, logger.errors.size());
+			assertTrue(logger.errors.get(0).startsWith("Only searches"));
+		}
+		assertFalse(new File("graph-classes.csv").exists());
+	}
+}
@@ -1,6 +1,11 @@
 package com.optit.test;
 
 import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 
 import junit.framework.TestCase;
 
@@ -80,6 +85,174 @@ public class ClassFinderTest extends TestCase
 		finder.findClass();
 	}
 	
+	@Test
+	public void test_findClassParallel() throws Exception
+	{
+		// The compiled classes of this project
+		String dir = new File(ClassFinderTest.class.getResource("ClassFinderTest.class").toURI()).getParentFile().getParent();
+		List<String> sequential = findClasses(new String[] {Parameters.directory, dir, Parameters.classname, "*Test", Parameters.recursiveSearch});
+		List<String> parallel = findClasses(new String[] {Parameters.directory, dir, Parameters.classname, "*Test", Parameters.recursiveSearch, Parameters.threads, "4"});
+		assertTrue(sequential.contains("ClassFinderTest.class"));
+		assertEquals(sequential, parallel);
+	}
+
+	@Test
+	public void test_findClassPipelined() throws Exception
+	{
+		// More files than fit into the queue between the directory walker
+		// and the search threads
+		File dir = new File(System.getProperty("java.io.tmpdir"), "ClassFinderPipelineTest");
+		File empty = new File(dir, "empty");
+		empty.mkdirs();
+		List<File> files = new ArrayList<File>();
+		for (int i = 0; i < 3000; i++)
+		{
+			File file = new File(dir, "p" + (i % 10) + "/" + (i % 2 == 0 ? "Found" : "Other") + i + ".class");
+			file.getParentFile().mkdirs();
+			file.createNewFile();
+			files.add(file);
+		}
+		try
+		{
+			for (String threads : new String[] {"1", "4"})
+			{
+				List<String> found = findClasses(new String[] {Parameters.directory, dir.getPath(), Parameters.classname, "Found*", Parameters.recursiveSearch, Parameters.threads, threads});
+				assertEquals(1500, found.size());
+				assertEquals(1500, new HashSet<String>(found).size());
+				assertTrue(findClasses(new String[] {Parameters.directory, empty.getPath(), Parameters.classname, "Found*", Parameters.recursiveSearch, Parameters.threads, threads}).isEmpty());
+			}
+		}
+		finally
+		{
+			for (File file : files)
+			{
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * Searches on another thread, so that a search that never ends fails
+	 * 
+	 * @return The names of the classes found, sorted
+	 */
+	private static List<String> findClasses(String[] args) throws InterruptedException
+	{
+		final List<String> found = Collections.synchronizedList(new ArrayList<String>());
+		final ClassFinder finder = new ClassFinder(new CommandLineLogger()
+		{
+			@Override
+			public void log(String className, String location)
+			{
+				found.add(className);
+			}
+		});
+		assertTrue(finder.parseArguments(args));
+		Thread search = new Thread()
+		{
+			public void run()
+			{
+				finder.findClass();
+			}
+		};
+		search.setDaemon(true);
+		search.start();
+		search.join(60000);
+		assertFalse("The search didn't end", search.isAlive());
+		Collections.sort(found);
+		return found;
+	}
+	
+	@Test
+	public void test_findClassLimit()
+	{
+		ClassFinder finder = new ClassFinder();
+		assertTrue(finder.parseArguments(new String[] {Parameters.directory, ".", Parameters.classname, "**", Parameters.recursiveSearch, Parameters.threads, "4", Parameters.limit, "3"}));
+		finder.findClass();
+		assertTrue(finder.getMatchCount() <= 3);
+	}
+
+	@Test
+	public void test_findMethodInSource() throws Exception
+	{
+		File dir = new File(System.getProperty("java.io.tmpdir"), "ClassFinderTest");
+		File[] sources = new File[8];
+		for (int i = 0; i < sources.length; i++)
+		{
+			sources[i] = new File(dir, "p/Colors" + i + ".java");
+			sources[i].getParentFile().mkdirs();
+			FileWriter out = new FileWriter(sources[i]);
+			out.write("package p;\n"
+					+ "public enum Colors" + i + " implements Runnable {\n"
+					+ "  RED { public void run() { } },\n"
+					+ "  GREEN;\n"
+					+ "  public void run() { for (int i = 0; i < 3; i++) { System.out.println(i); } }\n"
+					+ "  interface Inner { void run(); }\n"
+					+ "  @interface Marker { String run() default \"\"; }\n"
+					+ "  static class Nested { private static synchronized void run(String s) { } }\n"
+					+ "}\n");
+			out.close();
+		}
+
+		// The sources get parsed by several threads at once
+		final List<String> methods = Collections.synchronizedList(new ArrayList<String>());
+		ClassFinder finder = new ClassFinder(new CommandLineLogger()
+		{
+			@Override
+			public void log(String className, String location, String method)
+			{
+				methods.add(method);
+			}
+		});
+		assertTrue(finder.parseArguments(new String[] {Parameters.directory, dir.getPath(), Parameters.classname, "Colors*", Parameters.recursiveSearch, Parameters.matchMethodName, "run", Parameters.threads, "4"}));
+		finder.findClass();
+		for (File source : sources)
+		{
+			source.delete();
+		}
+
+		// The enum, its constant body, the nested interface and class, but
+		// not the annotation member
+		assertEquals(4 * sources.length, methods.size());
+		assertTrue(methods.contains("private static synchronized void run (String s)"));
+		assertTrue(methods.contains("void run ()"));
+	}
+
+	@Test
+	public void testNegative_parseArgumentsLimits()
+	{
+		assertFalse(new ClassFinder().parseArguments(new String[] {Parameters.directory, ".", Parameters.classname, "Test", Parameters.limit, "0"}));
+		assertFalse(new ClassFinder().parseArguments(new String[] {Parameters.directory, ".", Parameters.classname, "Test", Parameters.timeBudget, "soon"}));
+	}
+
+	@Test
+	public void testNegative_parseArgumentsThreads()
+	{
+		assertFalse(new ClassFinder().parseArguments(new String[] {Parameters.directory, ".", Parameters.classname, "Test", Parameters.threads, "0"}));
+	}
+
+	@Test
+	public void testNegative_parseArgumentsClassnameFile()
+	{
+		assertFalse(new ClassFinder().parseArguments(new String[] {Parameters.directory, ".", Parameters.classnameFile, "IDoNotExist.txt"}));
+		assertFalse(new ClassFinder().parseArguments(new String[] {Parameters.directory, ".", Parameters.classname, "Test", Parameters.classname, "*Case"}));
+	}
+
+	@Test
+	public void testNegative_parseArgumentsPattern()
+	{
+		assertTrue(new ClassFinder().parseArguments(new String[] {Parameters.directory, ".", Parameters.classname, "(Test|Case)+", Parameters.regex}));
+		assertFalse(new ClassFinder().parseArguments(new String[] {Parameters.directory, ".", Parameters.classname, "(Test", Parameters.regex}));
+	}
+
+	@Test
+	public void test_parseArgumentsWithoutClassname()
+	{
+		assertFalse(new ClassFinder().parseArguments(new String[] {Parameters.directory, ".", Parameters.recursiveSearch}));
+		assertTrue(new ClassFinder().parseArguments(new String[] {Parameters.directory, ".", Parameters.subtypesOf, "junit.framework.Test"}));
+		assertTrue(new ClassFinder().parseArguments(new String[] {Parameters.directory, ".", Parameters.referencesTo, "junit.framework.Assert", Parameters.regex}));
+	}
+	
 	@Test
 	public void test_mainGUIStart()
 	{
@@ -0,0 +1,240 @@
+package com.optit.test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.optit.index.ClassIndex;
+import com.optit.index.TypeHierarchy;
+
+public class ClassIndexTest extends TestCase
+{
+	private File jar;
+	private File indexFile;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		jar = File.createTempFile("ClassIndexTest", ".jar");
+		indexFile = File.createTempFile("ClassIndexTest", ".idx");
+		indexFile.delete();
+		writeJar(jar, new String[] {"META-INF/MANIFEST.MF", "org/test/", "org/test/Foo.class", "org/test/Bar.java"});
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		jar.delete();
+		indexFile.delete();
+	}
+
+	@Test
+	public void test_getEntryNames() throws Exception
+	{
+		ClassIndex index = ClassIndex.open(indexFile);
+		assertEquals(0, index.size());
+		assertFalse(index.isUpToDate(jar));
+
+		String[] names = index.getEntryNames(jar);
+		assertEquals(2, names.length);
+		assertEquals("org/test/Foo.class", names[0]);
+		assertEquals("org/test/Bar.java", names[1]);
+		assertTrue(index.isUpToDate(jar));
+		assertTrue(index.isModified());
+	}
+
+	@Test
+	public void test_saveAndLoad() throws Exception
+	{
+		ClassIndex index = ClassIndex.open(indexFile);
+		index.getEntryNames(jar);
+		index.save();
+		assertFalse(index.isModified());
+
+		ClassIndex reloaded = ClassIndex.open(indexFile);
+		assertEquals(1, reloaded.size());
+		assertTrue(reloaded.isUpToDate(jar));
+		String[] names = reloaded.getEntryNames(jar);
+		assertEquals("org/test/Foo.class", names[0]);
+		assertEquals("org/test/Bar.java", names[1]);
+		assertFalse(reloaded.isModified());
+	}
+
+	@Test
+	public void test_concurrentSave() throws Exception
+	{
+		// Like the watcher thread and a server shutdown hook
+		final ClassIndex index = ClassIndex.open(indexFile);
+		index.getEntryNames(jar);
+		final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++)
+		{
+			threads[i] = new Thread() {
+				public void run()
+				{
+					try
+					{
+						for (int j = 0; j < 50; j++)
+						{
+							index.save();
+						}
+					}
+					catch (Throwable t)
+					{
+						failures.add(t);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+		assertEquals(Collections.emptyList(), failures);
+		assertFalse(new File(indexFile.getAbsolutePath() + ".tmp").exists());
+		ClassIndex reloaded = new ClassIndex(indexFile);
+		reloaded.load();
+		assertTrue(reloaded.isUpToDate(jar));
+	}
+
+	@Test
+	public void test_rescanChangedArchive() throws Exception
+	{
+		ClassIndex index = ClassIndex.open(indexFile);
+		index.getEntryNames(jar);
+
+		writeJar(jar, new String[] {"org/test/Foo.class", "org/test/Baz.class", "org/test/Qux.class"});
+		jar.setLastModified(jar.lastModified() + 2000);
+		assertFalse(index.isUpToDate(jar));
+		assertEquals(3, index.getEntryNames(jar).length);
+	}
+
+	@Test
+	public void testNegative_corruptIndex() throws Exception
+	{
+		FileOutputStream out = new FileOutputStream(indexFile);
+		out.write(new byte[] {1, 2, 3});
+		out.close();
+
+		ClassIndex index = ClassIndex.open(indexFile);
+		assertEquals(0, index.size());
+		assertEquals(2, index.getEntryNames(jar).length);
+	}
+
+	@Test
+	public void testNegative_corruptCounts() throws Exception
+	{
+		// Negative and huge entry counts, and a front coding prefix longer
+		// than the previous entry name
+		int[][] entries = { {-1}, {Integer.MAX_VALUE}, {2, 0, 1} };
+		for (int[] corruption : entries)
+		{
+			DataOutputStream out = new DataOutputStream(new FileOutputStream(indexFile));
+			out.writeInt(0x43464958);
+			out.writeInt(4);
+			out.writeInt(1);
+			out.writeUTF(jar.getAbsolutePath());
+			out.writeLong(jar.length());
+			out.writeLong(jar.lastModified());
+			out.writeInt(corruption[0]);
+			for (int i = 1; i < corruption.length; i++)
+			{
+				out.writeShort(corruption[i] == 0 ? 0 : 100);
+				out.writeUTF("org/test/Foo.class");
+			}
+			out.writeBoolean(false);
+			out.close();
+
+			ClassIndex index = ClassIndex.open(indexFile);
+			assertEquals(0, index.size());
+			assertEquals(2, index.getEntryNames(jar).length);
+		}
+	}
+
+	/**
+	 * Writes this class next to a broken one
+	 */
+	private void writeClassJar() throws IOException
+	{
+		JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+		out.putNextEntry(new ZipEntry("org/test/Foo.class"));
+		out.closeEntry();
+		out.putNextEntry(new ZipEntry("com/optit/test/ClassIndexTest.class"));
+		InputStream in = ClassIndexTest.class.getResourceAsStream("ClassIndexTest.class");
+		byte[] chunk = new byte[4096];
+		int read;
+		while ((read = in.read(chunk)) != -1)
+		{
+			out.write(chunk, 0, read);
+		}
+		in.close();
+		out.closeEntry();
+		out.close();
+	}
+
+	@Test
+	public void test_annotations() throws Exception
+	{
+		// A class with annotated methods
+		writeClassJar();
+
+		ClassIndex index = ClassIndex.open(indexFile);
+		String[] annotated = index.getClassesWithAnnotatedMembers(jar, "org.junit.Test");
+		assertEquals(1, annotated.length);
+		assertEquals("com/optit/test/ClassIndexTest.class", annotated[0]);
+		assertEquals(0, index.getAnnotatedClasses(jar, "org.junit.Test").length);
+		assertEquals(0, index.getClassesWithAnnotatedMembers(jar, "java.lang.Deprecated").length);
+		index.save();
+
+		ClassIndex reloaded = ClassIndex.open(indexFile);
+		assertEquals("com/optit/test/ClassIndexTest.class",
+				reloaded.getClassesWithAnnotatedMembers(jar, "org.junit.Test")[0]);
+		assertFalse(reloaded.isModified());
+	}
+
+	@Test
+	public void test_addTypes() throws Exception
+	{
+		writeClassJar();
+		ClassIndex index = ClassIndex.open(indexFile);
+		TypeHierarchy hierarchy = new TypeHierarchy();
+		index.addTypes(jar, hierarchy, false);
+		index.save();
+
+		int id = hierarchy.getId("com.optit.test.ClassIndexTest");
+		assertEquals("com/optit/test/ClassIndexTest.class", hierarchy.getEntryNames(id)[0]);
+		assertEquals(jar.getAbsolutePath(), hierarchy.getLocations(id)[0]);
+		int[] supertypes = hierarchy.getSupertypes(id);
+		assertEquals("junit.framework.TestCase", hierarchy.getName(supertypes[0]));
+
+		// Served from the index file
+		TypeHierarchy reloaded = new TypeHierarchy();
+		ClassIndex.open(indexFile).addTypes(jar, reloaded, false);
+		assertEquals(hierarchy.size(), reloaded.size());
+		assertEquals(1, reloaded.getSubtypes(reloaded.getId("junit.framework.TestCase")).length);
+	}
+
+	static void writeJar(File file, String[] entryNames) throws IOException
+	{
+		JarOutputStream out = new JarOutputStream(new FileOutputStream(file));
+		for (String entryName : entryNames)
+		{
+			out.putNextEntry(new ZipEntry(entryName));
+			out.closeEntry();
+		}
+		out.close();
+	}
+}
@@ -0,0 +1,49 @@
+package com.optit.test;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.optit.matcher.ClassNameMatcher;
+import com.optit.matcher.NameMatcher;
+
+public class ClassNameMatcherTest extends TestCase
+{
+	@Test
+	public void test_simpleName()
+	{
+		NameMatcher matcher = new ClassNameMatcher("Random", true);
+		assertEquals(NameMatcher.CLASS_MATCH, matcher.match("org/apache/commons/Random.class"));
+		assertEquals(NameMatcher.SOURCE_MATCH, matcher.match("org/apache/commons/Random.java"));
+		assertEquals(NameMatcher.CLASS_MATCH, matcher.match("Random.class"));
+		assertEquals(NameMatcher.NO_MATCH, matcher.match("org/apache/commons/MyRandom.class"));
+		assertEquals(NameMatcher.NO_MATCH, matcher.match("org/apache/commons/random.class"));
+		assertEquals(NameMatcher.NO_MATCH, matcher.match("org/apache/commons/Random.txt"));
+	}
+
+	@Test
+	public void test_packageQualifiedName()
+	{
+		NameMatcher matcher = new ClassNameMatcher("commons.Random", true);
+		assertEquals(NameMatcher.CLASS_MATCH, matcher.match("org/apache/commons/Random.class"));
+		assertEquals(NameMatcher.CLASS_MATCH, matcher.match("C:\\classes\\org\\apache\\commons\\Random.class"));
+		assertEquals(NameMatcher.NO_MATCH, matcher.match("org/apache/Random.class"));
+	}
+
+	@Test
+	public void test_ignoreCase()
+	{
+		NameMatcher matcher = new ClassNameMatcher("apache.commons.RANDOM", false);
+		assertEquals(NameMatcher.CLASS_MATCH, matcher.match("org/Apache/commons/Random.class"));
+		assertEquals(NameMatcher.SOURCE_MATCH, matcher.match("ORG/APACHE/COMMONS/RANDOM.JAVA"));
+	}
+
+	@Test
+	public void test_matchFromStart()
+	{
+		NameMatcher matcher = new ClassNameMatcher("B", true);
+		String chain = "WEB-INF/lib/x.jar!/B.class";
+		assertEquals(NameMatcher.CLASS_MATCH, matcher.match(chain, chain.indexOf("!/") + 2));
+		assertEquals(NameMatcher.NO_MATCH, matcher.match("xAB.class", 1));
+	}
+}
@@ -33,6 +33,24 @@ public class CommandLineLoggerTest extends TestCase
 		new CommandLineLogger().log("MyClass", "InThis.jar");
 	}
 	
+	@Test
+	public void test_logMembers()
+	{
+		final StringBuilder lines = new StringBuilder();
+		CommandLineLogger logger = new CommandLineLogger()
+		{
+			@Override
+			public void log(String line)
+			{
+				lines.append(line).append('\n');
+			}
+		};
+		logger.log("MyClass", "InThis.jar", "void run()");
+		logger.logField("MyClass", "InThis.jar", "int count");
+		assertEquals("Class \"MyClass\" found at \"InThis.jar and Method \"void run()\"\n"
+				+ "Class \"MyClass\" found at \"InThis.jar and Field \"int count\"\n", lines.toString());
+	}
+	
 	@Test
 	public void test_logErr() throws Exception
 	{
@@ -0,0 +1,196 @@
+package com.optit.test;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.sun.tools.classfile.ClassFile;
+import com.sun.tools.classfile.Dependencies;
+import com.sun.tools.classfile.Dependencies.ClassFileNotFoundException;
+import com.sun.tools.classfile.Dependency;
+
+public class DependenciesTest extends TestCase
+{
+	private static final Set<String> ROOTS = Collections.singleton("com/optit/ClassFinder");
+
+	/**
+	 * Reads the classes of the class path, counting the reads
+	 */
+	private static class ResourceReader implements Dependencies.ClassFileReader
+	{
+		final AtomicInteger reads = new AtomicInteger();
+
+		public ClassFile getClassFile(String className) throws ClassFileNotFoundException
+		{
+			InputStream in = DependenciesTest.class.getResourceAsStream("/" + className + ".class");
+			if (in == null)
+			{
+				throw new ClassFileNotFoundException(className);
+			}
+			reads.incrementAndGet();
+			try
+			{
+				try
+				{
+					return ClassFile.read(in);
+				}
+				finally
+				{
+					in.close();
+				}
+			}
+			catch (Exception e)
+			{
+				throw new ClassFileNotFoundException(className, e);
+			}
+		}
+	}
+
+	private static Dependencies optitDependencies()
+	{
+		Dependencies dependencies = new Dependencies();
+		dependencies.setFilter(Dependencies.getPackageFilter(
+				new HashSet<String>(Arrays.asList("com/optit", "com/optit/matcher", "com/optit/index")), false));
+		return dependencies;
+	}
+
+	@Test
+	public void test_parallelClosure() throws Exception
+	{
+		Set<Dependency> sequential = optitDependencies().findAllDependencies(new ResourceReader(), ROOTS, true);
+
+		final Set<Dependency> parallel = Collections.synchronizedSet(new HashSet<Dependency>());
+		optitDependencies().findAllDependencies(new ResourceReader(), ROOTS, true, new Dependencies.Recorder()
+		{
+			public void addDependency(Dependency d)
+			{
+				parallel.add(d);
+			}
+		}, 4);
+		assertTrue(sequential.size() > 0);
+		assertEquals(sequential, parallel);
+	}
+
+	@Test
+	public void test_parallelReads() throws Exception
+	{
+		// Slow reads, so that the searches overlap if they can
+		final AtomicInteger reading = new AtomicInteger();
+		final AtomicInteger maxReading = new AtomicInteger();
+		ResourceReader reader = new ResourceReader()
+		{
+			@Override
+			public ClassFile getClassFile(String className) throws ClassFileNotFoundException
+			{
+				int now = reading.incrementAndGet();
+				while (now > maxReading.get())
+				{
+					maxReading.compareAndSet(maxReading.get(), now);
+				}
+				try
+				{
+					Thread.sleep(20);
+					return super.getClassFile(className);
+				}
+				catch (InterruptedException e)
+				{
+					throw new ClassFileNotFoundException(className, e);
+				}
+				finally
+				{
+					reading.decrementAndGet();
+				}
+			}
+		};
+		optitDependencies().findAllDependencies(reader, ROOTS, true, new Dependencies.Recorder()
+		{
+			public void addDependency(Dependency d)
+			{
+				// ignore
+			}
+		}, 4);
+		assertTrue(maxReading.get() > 1);
+	}
+
+	@Test
+	public void test_cache() throws Exception
+	{
+		Dependencies dependencies = optitDependencies();
+		dependencies.setCacheSize(1000);
+		ResourceReader reader = new ResourceReader();
+		Set<Dependency> first = dependencies.findAllDependencies(reader, ROOTS, true);
+		int reads = reader.reads.get();
+		assertTrue(reads > 1);
+
+		// Nothing is read again, whether sequential or parallel
+		assertEquals(first, dependencies.findAllDependencies(reader, ROOTS, true));
+		dependencies.findAllDependencies(reader, ROOTS, true, new Dependencies.Recorder()
+		{
+			public void addDependency(Dependency d)
+			{
+				// ignore
+			}
+		}, 2);
+		assertEquals(reads, reader.reads.get());
+
+		dependencies.clearCache();
+		dependencies.findAllDependencies(reader, ROOTS, false);
+		assertEquals(reads + 1, reader.reads.get());
+
+		// Another reader may see other class files
+		ResourceReader other = new ResourceReader();
+		dependencies.findAllDependencies(other, ROOTS, false);
+		assertEquals(1, other.reads.get());
+		dependencies.findAllDependencies(reader, ROOTS, false);
+		assertEquals(reads + 2, reader.reads.get());
+	}
+
+	@Test
+	public void test_cacheOptIn() throws Exception
+	{
+		// Nothing is remembered by default
+		Dependencies dependencies = optitDependencies();
+		ResourceReader reader = new ResourceReader();
+		dependencies.findAllDependencies(reader, ROOTS, true);
+		int reads = reader.reads.get();
+		dependencies.findAllDependencies(reader, ROOTS, true);
+		assertEquals(reads * 2, reader.reads.get());
+
+		// Only the most recent class is remembered, the root is read again
+		dependencies.setCacheSize(1);
+		reader.reads.set(0);
+		dependencies.findAllDependencies(reader, ROOTS, true);
+		dependencies.findAllDependencies(reader, ROOTS, false);
+		assertEquals(reads + 1, reader.reads.get());
+		dependencies.findAllDependencies(reader, ROOTS, false);
+		assertEquals(reads + 1, reader.reads.get());
+	}
+
+	@Test
+	public void testNegative_classNotFound() throws Exception
+	{
+		try
+		{
+			new Dependencies().findAllDependencies(new ResourceReader(), Collections.singleton("com/optit/Missing"),
+					true, new Dependencies.Recorder()
+					{
+						public void addDependency(Dependency d)
+						{
+							// ignore
+						}
+					}, 2);
+			fail("ClassFileNotFoundException expected");
+		}
+		catch (ClassFileNotFoundException e)
+		{
+			assertEquals("com/optit/Missing", e.className);
+		}
+	}
+}
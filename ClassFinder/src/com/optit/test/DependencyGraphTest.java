@@ -0,0 +1,155 @@
+package com.optit.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.optit.index.DependencyGraph;
+
+public class DependencyGraphTest extends TestCase
+{
+	private DependencyGraph graph;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		graph = new DependencyGraph();
+		int impl = graph.addClass("b.Impl", "one.jar");
+		int base = graph.addClass("a.Base", "one.jar");
+		int service = graph.addClass("a.Service", "one.jar");
+		int other = graph.addClass("c.Other", "two.jar");
+		graph.addDependencies(impl, new int[] {base, service, impl, base}, 4);
+		graph.addDependencies(base, new int[] {service}, 1);
+		graph.addDependencies(other, new int[] {impl, service}, 2);
+		// Added again by another thread
+		graph.addDependencies(base, new int[] {service}, 1);
+	}
+
+	private String dependencies(DependencyGraph graph, String name)
+	{
+		StringBuilder names = new StringBuilder();
+		for (int id : graph.getDependencies(graph.getId(name)))
+		{
+			names.append(names.length() == 0 ? "" : " ").append(graph.getName(id));
+		}
+		return names.toString();
+	}
+
+	@Test
+	public void test_dependencies()
+	{
+		assertEquals(4, graph.size());
+		assertEquals(5, graph.getDependencyCount());
+		// Numbered by name, distinct, without the class itself
+		assertEquals("a.Base", graph.getName(0));
+		assertEquals("a.Base a.Service", dependencies(graph, "b.Impl"));
+		assertEquals("a.Service", dependencies(graph, "a.Base"));
+		assertEquals("", dependencies(graph, "a.Service"));
+		assertEquals("two.jar", graph.getArchive(graph.getId("c.Other")));
+		assertEquals(-1, graph.getId("d.Missing"));
+	}
+
+	@Test
+	public void test_addAfterBuild()
+	{
+		assertEquals(5, graph.getDependencyCount());
+		// A new class and dependencies of a built graph
+		int extra = graph.addClass("a.Extra", "two.jar");
+		graph.addDependencies(graph.getId("a.Service"), new int[] {extra, graph.getId("a.Base")}, 2);
+		graph.addDependencies(graph.getId("a.Base"), new int[] {graph.getId("a.Service")}, 1);
+		assertEquals(5, graph.size());
+		assertEquals(7, graph.getDependencyCount());
+		assertEquals("a.Base a.Extra", dependencies(graph, "a.Service"));
+		assertEquals("a.Service", dependencies(graph, "a.Base"));
+		assertEquals("a.Base a.Service", dependencies(graph, "b.Impl"));
+		assertEquals("a.Service b.Impl", dependencies(graph, "c.Other"));
+	}
+
+	@Test
+	public void test_rollUp()
+	{
+		DependencyGraph packages = graph.getPackageGraph();
+		assertEquals(3, packages.size());
+		assertEquals("a", dependencies(packages, "b"));
+		assertEquals("a b", dependencies(packages, "c"));
+		assertEquals("", dependencies(packages, "a"));
+
+		DependencyGraph archives = graph.getArchiveGraph();
+		assertEquals(2, archives.size());
+		assertEquals(1, archives.getDependencyCount());
+		assertEquals("one.jar", dependencies(archives, "two.jar"));
+	}
+
+	@Test
+	public void test_writeAndRead() throws Exception
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		graph.write(new DataOutputStream(bytes));
+		DependencyGraph read = DependencyGraph.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		assertEquals(graph.size(), read.size());
+		assertEquals(graph.getDependencyCount(), read.getDependencyCount());
+		assertEquals("a.Base a.Service", dependencies(read, "b.Impl"));
+		assertEquals("a.Service b.Impl", dependencies(read, "c.Other"));
+	}
+
+	@Test
+	public void test_csvAndDot() throws Exception
+	{
+		StringWriter csv = new StringWriter();
+		graph.writeCsv(csv);
+		assertEquals("origin,target\na.Base,a.Service\nb.Impl,a.Base\nb.Impl,a.Service\n"
+				+ "c.Other,a.Service\nc.Other,b.Impl\n", csv.toString());
+
+		StringWriter dot = new StringWriter();
+		graph.getArchiveGraph().writeDot(dot, "archives");
+		assertEquals("digraph \"archives\" {\n\t\"one.jar\";\n\t\"two.jar\";\n\t\"two.jar\" -> \"one.jar\";\n}\n",
+				dot.toString());
+	}
+
+	@Test
+	public void testNegative_readUnknownFormat() throws Exception
+	{
+		try
+		{
+			DependencyGraph.read(new DataInputStream(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5, 6, 7, 8})));
+			fail("IOException expected");
+		}
+		catch (IOException e)
+		{
+			// expected
+		}
+	}
+
+	@Test
+	public void testNegative_readCorrupt() throws Exception
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		graph.write(new DataOutputStream(bytes));
+		// A negative class count, and a front coding prefix for the first name
+		int[][] corruptions = { {8, 0xFF, 0xFF, 0xFF, 0xFF}, {12, 0, 1} };
+		for (int[] corruption : corruptions)
+		{
+			byte[] corrupt = bytes.toByteArray();
+			for (int i = 1; i < corruption.length; i++)
+			{
+				corrupt[corruption[0] + i - 1] = (byte) corruption[i];
+			}
+			try
+			{
+				DependencyGraph.read(new DataInputStream(new ByteArrayInputStream(corrupt)));
+				fail("IOException expected");
+			}
+			catch (IOException e)
+			{
+				assertEquals("Corrupt dependency graph", e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package com.optit.test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.optit.index.ClassIndex;
+import com.optit.index.IndexWatcher;
+import com.optit.logger.CommandLineLogger;
+
+public class IndexWatcherTest extends TestCase
+{
+	private File directory;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		directory = File.createTempFile("IndexWatcherTest", "");
+		directory.delete();
+		directory.mkdir();
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		for (File file : directory.listFiles())
+		{
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void test_poll() throws Exception
+	{
+		File first = new File(directory, "first.jar");
+		ClassIndexTest.writeJar(first, new String[] { "a/A.class" });
+		ClassIndex index = new ClassIndex(null);
+		IndexWatcher watcher = new IndexWatcher(index, Arrays.asList(directory), false, 1000,
+				new CommandLineLogger());
+
+		// Initial round indexes everything
+		assertEquals(1, watcher.poll());
+		assertTrue(index.isUpToDate(first));
+		assertEquals(0, watcher.poll());
+
+		// New archives get indexed once they stopped changing
+		File second = new File(directory, "second.war");
+		ClassIndexTest.writeJar(second, new String[] { "b/B.class", "b/C.class" });
+		assertEquals(0, watcher.poll());
+		assertFalse(index.isUpToDate(second));
+		assertEquals(1, watcher.poll());
+		assertTrue(index.isUpToDate(second));
+		assertEquals(2, index.getEntryNames(second).length);
+
+		// Deleted archives get removed right away
+		first.delete();
+		assertEquals(1, watcher.poll());
+		assertEquals(1, index.size());
+	}
+
+	@Test
+	public void test_notWatched() throws Exception
+	{
+		ClassIndex index = new ClassIndex(null);
+		File elsewhere = File.createTempFile("IndexWatcherTest", ".jar");
+		try
+		{
+			ClassIndexTest.writeJar(elsewhere, new String[] { "a/A.class" });
+			index.getEntryNames(elsewhere);
+			IndexWatcher watcher = new IndexWatcher(index, Arrays.asList(directory), true, 1000,
+					new CommandLineLogger());
+			assertEquals(0, watcher.poll());
+			assertTrue(index.isUpToDate(elsewhere));
+		}
+		finally
+		{
+			elsewhere.delete();
+		}
+	}
+}
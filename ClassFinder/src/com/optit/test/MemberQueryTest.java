@@ -0,0 +1,112 @@
+package com.optit.test;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.optit.ClassFinder;
+import com.optit.matcher.MemberQuery;
+import com.sun.tools.classfile.Attribute;
+import com.sun.tools.classfile.ClassFile;
+import com.sun.tools.classfile.Field;
+import com.sun.tools.classfile.Method;
+
+public class MemberQueryTest extends TestCase
+{
+	private ClassFile classFile;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		InputStream in = ClassFinder.class.getResourceAsStream("/com/optit/ClassFinder.class");
+		try
+		{
+			classFile = ClassFile.readLazily(in, Attribute.Signature);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private List<String> find(MemberQuery query) throws Exception
+	{
+		List<String> members = new ArrayList<String>();
+		for (Field field : classFile.fields)
+		{
+			if (query.matches(classFile, field))
+			{
+				members.add(field.getName(classFile.constant_pool));
+			}
+		}
+		for (Method method : classFile.methods)
+		{
+			if (query.matches(classFile, method))
+			{
+				members.add(method.getName(classFile.constant_pool) + "()");
+			}
+		}
+		return members;
+	}
+
+	@Test
+	public void test_names() throws Exception
+	{
+		List<String> members = find(new MemberQuery("parseArguments", "logger", null));
+		assertEquals(2, members.size());
+		assertTrue(members.contains("logger"));
+		assertTrue(members.contains("parseArguments()"));
+		assertTrue(find(new MemberQuery(null, "parseArguments", "")).isEmpty());
+	}
+
+	@Test
+	public void test_descriptor() throws Exception
+	{
+		List<String> members = find(new MemberQuery(null, null, "(*)Z"));
+		assertTrue(members.contains("parseArguments()"));
+		assertTrue(members.contains("isPositiveNumber()"));
+		assertFalse(members.contains("sharedIndex"));
+
+		members = find(new MemberQuery(null, null, "(Ljava.lang.String;)Z"));
+		assertTrue(members.contains("isPositiveNumber()"));
+		assertFalse(members.contains("parseArguments()"));
+		assertTrue(find(new MemberQuery("run", null, "(*)Z")).isEmpty());
+		// Generic signatures match too
+		assertEquals("[queue]", find(new MemberQuery(null, "queue", "*<Ljava/io/File;>;")).toString());
+	}
+
+	@Test
+	public void test_prefilter() throws Exception
+	{
+		ByteBuffer bytes = ByteBuffer.wrap("\u0001\u0000\u0006logger\u0001".getBytes("UTF-8"));
+		assertTrue(new MemberQuery(null, "logger", null).mayMatchClass(bytes));
+		assertFalse(new MemberQuery("run", "index", null).mayMatchClass(bytes));
+		assertTrue(new MemberQuery(null, null, "*").mayMatchClass(bytes));
+		assertFalse(new MemberQuery(null, null, "(*)Ljava.sql.Connection;").mayMatchClass(bytes));
+
+		ByteBuffer source = ByteBuffer.wrap("private Logger logger;".getBytes());
+		assertTrue(new MemberQuery(null, "logger", null).mayMatchSource(source));
+		assertFalse(new MemberQuery("run", null, null).mayMatchSource(source));
+		// Descriptors aren't searched for in sources
+		assertFalse(new MemberQuery(null, "logger", "*").mayMatchSource(source));
+	}
+
+	@Test
+	public void testNegative_nothingToMatch()
+	{
+		try
+		{
+			new MemberQuery("", null, "");
+			fail("IllegalArgumentException expected");
+		}
+		catch (IllegalArgumentException e)
+		{
+			// expected
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package com.optit.test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.optit.matcher.ClassNameMatcher;
+import com.optit.matcher.MultiNameMatcher;
+import com.optit.matcher.NameMatcher;
+
+public class MultiNameMatcherTest extends TestCase
+{
+	private static final String[] NAMES = {
+		"org/apache/commons/Random.class",
+		"org/apache/commons/Random.java",
+		"java/util/Random.class",
+		"Random.class",
+		"org/apache/commons/MyRandom.class",
+		"C:\\classes\\org\\Apache\\Commons\\LOG.class",
+		"x.jar!/org/apache/commons/Log.class",
+		"org/apache/commons/Log.txt",
+		"\u00e9t\u00e9/Caf\u00e9.class"
+	};
+
+	@Test
+	public void test_sameAsSingleQueries()
+	{
+		List<String> classnames = Arrays.asList("commons.Random", "java.util.Random", "Log",
+				"apache/commons/Log", "Caf\u00e9", "commons.Random");
+		for (boolean matchCase : new boolean[] { true, false })
+		{
+			NameMatcher batch = new MultiNameMatcher(classnames, matchCase);
+			for (String name : NAMES)
+			{
+				int expected = NameMatcher.NO_MATCH;
+				for (String classname : classnames)
+				{
+					int match = new ClassNameMatcher(classname, matchCase).match(name);
+					if (match != NameMatcher.NO_MATCH)
+					{
+						expected = match;
+					}
+				}
+				assertEquals(name, expected, batch.match(name));
+			}
+		}
+	}
+
+	@Test
+	public void test_notFound()
+	{
+		MultiNameMatcher matcher = new MultiNameMatcher(Arrays.asList("Random", "Log", "Missing"), true);
+		assertEquals(Arrays.asList("Random", "Log", "Missing"), matcher.getNotFound());
+		matcher.match(NAMES[0]);
+		matcher.match(NAMES[6], 6);
+		assertEquals(Arrays.asList("Missing"), matcher.getNotFound());
+	}
+
+	@Test
+	public void test_split()
+	{
+		assertEquals(Arrays.asList("A", "b.C"), MultiNameMatcher.split(" A;;b.C ;"));
+	}
+}
@@ -31,5 +31,25 @@ public class ParameterTest extends TestCase
 		assertEquals("-c", Parameters.classname);
 		assertEquals("-m", Parameters.matchCase);
 		assertEquals("-v", Parameters.verbose);
+		assertEquals("-o", Parameters.matchMethodName);
+		assertEquals("-a", Parameters.matchFieldName);
+		assertEquals("-y", Parameters.memberDescriptor);
+		assertEquals("-g", Parameters.referencesTo);
+		assertEquals("-q", Parameters.annotatedWith);
+		assertEquals("-u", Parameters.subtypesOf);
+		assertEquals("-k", Parameters.supertypesOf);
+		assertEquals("-j", Parameters.dependencyGraph);
+		assertEquals("-z", Parameters.apiAccess);
+		assertEquals("-t", Parameters.threads);
+		assertEquals("-i", Parameters.index);
+		assertEquals("-n", Parameters.searchNested);
+		assertEquals("-x", Parameters.regex);
+		assertEquals("-f", Parameters.classnameFile);
+		assertEquals("-l", Parameters.limit);
+		assertEquals("-b", Parameters.timeBudget);
+		assertEquals("-e", Parameters.exists);
+		assertEquals("-s", Parameters.server);
+		assertEquals("-p", Parameters.port);
+		assertEquals("-w", Parameters.watch);
 	}
 }
@@ -0,0 +1,142 @@
+package com.optit.test;
+
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.optit.matcher.NameMatcher;
+import com.optit.matcher.PatternMatcher;
+
+public class PatternMatcherTest extends TestCase
+{
+	private static final String[] NAMES = {
+		"org/apache/commons/logging/Log.class",
+		"org/apache/commons/logging/LogFactory.class",
+		"org/apache/Log4j.java",
+		"com/acme/org/apache/LogFactory.class",
+		"org/apache/catalina/filters/RemoteAddrFilter.class",
+		"javax/servlet/http/HttpServletRequestFilter.class",
+		"javax/servlet/Filter.class",
+		"Outer$Inner.class",
+		"org/apache/commons/logging/Log.txt",
+		"\u00e9t\u00e9/Caf\u00e9.class"
+	};
+
+	@Test
+	public void test_wildcards()
+	{
+		NameMatcher matcher = PatternMatcher.forWildcards("org.apache.**.Log*", true);
+		assertEquals(NameMatcher.CLASS_MATCH, matcher.match(NAMES[0]));
+		assertEquals(NameMatcher.CLASS_MATCH, matcher.match(NAMES[1]));
+		assertEquals(NameMatcher.SOURCE_MATCH, matcher.match(NAMES[2]));
+		assertEquals(NameMatcher.CLASS_MATCH, matcher.match(NAMES[3]));
+		assertEquals(NameMatcher.NO_MATCH, matcher.match(NAMES[4]));
+		assertEquals(NameMatcher.NO_MATCH, matcher.match(NAMES[8]));
+
+		matcher = PatternMatcher.forWildcards("*Servlet*Filter", true);
+		assertEquals(NameMatcher.CLASS_MATCH, matcher.match(NAMES[5]));
+		assertEquals(NameMatcher.NO_MATCH, matcher.match(NAMES[6]));
+
+		matcher = PatternMatcher.forWildcards("*$Inner", true);
+		assertEquals(NameMatcher.CLASS_MATCH, matcher.match(NAMES[7]));
+
+		matcher = PatternMatcher.forWildcards("Caf?", true);
+		assertEquals(NameMatcher.CLASS_MATCH, matcher.match(NAMES[9]));
+	}
+
+	@Test
+	public void test_wildcardsStayWithinPackage()
+	{
+		NameMatcher matcher = PatternMatcher.forWildcards("apache.*Filter", true);
+		assertEquals(NameMatcher.NO_MATCH, matcher.match(NAMES[4]));
+		matcher = PatternMatcher.forWildcards("apache.*.*.*Filter", true);
+		assertEquals(NameMatcher.CLASS_MATCH, matcher.match(NAMES[4]));
+		matcher = PatternMatcher.forWildcards("[!L]og*", true);
+		assertEquals(NameMatcher.NO_MATCH, matcher.match(NAMES[0]));
+	}
+
+	@Test
+	public void test_ignoreCase()
+	{
+		NameMatcher matcher = PatternMatcher.forWildcards("*servlet*filter", false);
+		assertEquals(NameMatcher.CLASS_MATCH, matcher.match(NAMES[5]));
+		matcher = PatternMatcher.forWildcards("*servlet*filter", true);
+		assertEquals(NameMatcher.NO_MATCH, matcher.match(NAMES[5]));
+	}
+
+	@Test
+	public void test_regexAgainstJavaRegex()
+	{
+		String[] expressions = {
+			"Log.*",
+			"org\\.apache\\..*",
+			"(Log|Filter)(Factory)?",
+			"[A-Z][a-z]+\\d?",
+			"\\w+[$]\\w+",
+			"(?:[a-z]+\\.){2}Log\\w*",
+			"Lo?g{1,2}[^F]*",
+			"[^a-z]og4j",
+			"Caf.",
+			"(a|b|c|L)o[gh]"
+		};
+		for (String expression : expressions)
+		{
+			for (boolean matchCase : new boolean[] { true, false })
+			{
+				NameMatcher matcher = PatternMatcher.forRegex(expression, matchCase);
+				Pattern pattern = Pattern.compile("(.*/)?(" + expression.replace("\\.", "/") + ")",
+						matchCase ? 0 : Pattern.CASE_INSENSITIVE);
+				for (String name : NAMES)
+				{
+					String stem = name.substring(0, name.lastIndexOf('.'));
+					boolean expected = name.endsWith(".class") || name.endsWith(".java");
+					expected &= pattern.matcher(stem).matches();
+					assertEquals(expression + " " + name, expected,
+							matcher.match(name) != NameMatcher.NO_MATCH);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void test_anchoredRegex()
+	{
+		NameMatcher matcher = PatternMatcher.forRegex("^Filter$", true);
+		assertEquals(NameMatcher.NO_MATCH, matcher.match(NAMES[6]));
+		matcher = PatternMatcher.forRegex("Filter$", true);
+		assertEquals(NameMatcher.CLASS_MATCH, matcher.match(NAMES[6]));
+		assertEquals(NameMatcher.NO_MATCH, matcher.match(NAMES[5]));
+
+		// Anchored at the start of the full name, not at a package boundary
+		matcher = PatternMatcher.forRegex("^org\\.apache\\..*Factory$", true);
+		assertEquals(NameMatcher.CLASS_MATCH, matcher.match(NAMES[1]));
+		assertEquals(NameMatcher.NO_MATCH, matcher.match(NAMES[3]));
+		matcher = PatternMatcher.forRegex("^Outer\\$Inner", true);
+		assertEquals(NameMatcher.CLASS_MATCH, matcher.match(NAMES[7]));
+
+		// An escaped '$' at the end is a literal
+		matcher = PatternMatcher.forRegex("Outer\\$", true);
+		assertEquals(NameMatcher.NO_MATCH, matcher.match(NAMES[7]));
+		assertEquals(NameMatcher.CLASS_MATCH, matcher.match("a/Outer$.class"));
+	}
+
+	@Test
+	public void testNegative_unsupportedRegex()
+	{
+		String[] expressions = { "(Log", "Log)", "a(?=b)", "(a)\\1", "*a", "a{2,1}", "[b-a]", "a^b" };
+		for (String expression : expressions)
+		{
+			try
+			{
+				PatternMatcher.forRegex(expression, true);
+				fail("IllegalArgumentException expected for " + expression);
+			}
+			catch (IllegalArgumentException e)
+			{
+				// expected
+			}
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package com.optit.test;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.optit.ClassFinder;
+import com.optit.matcher.ReferenceQuery;
+import com.sun.tools.classfile.Attribute;
+import com.sun.tools.classfile.ClassFile;
+import com.sun.tools.classfile.Field;
+import com.sun.tools.classfile.Method;
+
+public class ReferenceQueryTest extends TestCase
+{
+	private ClassFile classFile;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		InputStream in = ClassFinder.class.getResourceAsStream("/com/optit/ClassFinder.class");
+		try
+		{
+			classFile = ClassFile.readLazily(in, Attribute.Code, Attribute.Signature, Attribute.Exceptions);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private List<String> find(ReferenceQuery query) throws Exception
+	{
+		List<String> members = new ArrayList<String>();
+		boolean[] references = query.findReferences(classFile);
+		if (references == null)
+		{
+			return members;
+		}
+		for (Field field : classFile.fields)
+		{
+			if (query.references(classFile, field, references))
+			{
+				members.add(field.getName(classFile.constant_pool));
+			}
+		}
+		for (Method method : classFile.methods)
+		{
+			if (query.references(classFile, method, references))
+			{
+				members.add(method.getName(classFile.constant_pool) + "()");
+			}
+		}
+		return members;
+	}
+
+	@Test
+	public void test_classReferences() throws Exception
+	{
+		// Through the type of the field and the code of the methods
+		List<String> members = find(new ReferenceQuery("java.util.concurrent.BlockingQueue"));
+		assertTrue(members.contains("queue"));
+		assertTrue(members.contains("findClass()"));
+		assertFalse(members.contains("parseArguments()"));
+
+		// Through the generic signature only
+		members = find(new ReferenceQuery("java/io/File"));
+		assertTrue(members.contains("queue"));
+		assertTrue(members.contains("files"));
+
+		assertTrue(find(new ReferenceQuery("java.sql.DriverManager")).isEmpty());
+		// The class itself doesn't count
+		assertNull(new ReferenceQuery("com.optit.ClassFinder").findReferences(classFile));
+	}
+
+	@Test
+	public void test_memberReferences() throws Exception
+	{
+		List<String> members = find(new ReferenceQuery("java.lang.System#exit"));
+		assertTrue(members.contains("parseArguments()"));
+		assertFalse(members.contains("findClass()"));
+
+		// Only the member, not the class
+		assertFalse(find(new ReferenceQuery("java.lang.System#currentTimeMillis")).contains("parseArguments()"));
+		assertTrue(find(new ReferenceQuery("java.lang.System#gc")).isEmpty());
+	}
+
+	@Test
+	public void test_prefilter() throws Exception
+	{
+		ByteBuffer bytes = ByteBuffer.wrap("\u0001\u0000\u0010java/lang/System\u0001\u0000\u0004exit".getBytes("UTF-8"));
+		assertTrue(new ReferenceQuery("java.lang.System").mayMatchClass(bytes));
+		assertTrue(new ReferenceQuery("java.lang.System#exit").mayMatchClass(bytes));
+		assertFalse(new ReferenceQuery("java.lang.System#gc").mayMatchClass(bytes));
+		assertFalse(new ReferenceQuery("java.lang.Runtime#exit").mayMatchClass(bytes));
+	}
+
+	@Test
+	public void testNegative_noClass()
+	{
+		try
+		{
+			new ReferenceQuery("#exit");
+			fail("IllegalArgumentException expected");
+		}
+		catch (IllegalArgumentException e)
+		{
+			// expected
+		}
+	}
+}
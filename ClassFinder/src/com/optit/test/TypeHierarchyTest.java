@@ -0,0 +1,70 @@
+package com.optit.test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.optit.index.TypeHierarchy;
+
+public class TypeHierarchyTest extends TestCase
+{
+	private TypeHierarchy hierarchy;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		hierarchy = new TypeHierarchy();
+		hierarchy.add("a.Base", "java.lang.Object", new String[] {"a.Service"}, "a/Base.class", "one.jar");
+		hierarchy.add("a.Impl", "a.Base", new String[] {"java.io.Serializable"}, "a/Impl.class", "one.jar");
+		hierarchy.add("b.Other", "java.lang.Object", new String[] {"a.Service", "java.io.Serializable"},
+				"b/Other.class", "two.jar");
+		hierarchy.add("a.Service", null, new String[0], "a/Service.class", "one.jar");
+		// The same class in another archive
+		hierarchy.add("a.Impl", "a.Base", new String[] {"java.io.Serializable"}, "a/Impl.class", "two.jar");
+	}
+
+	private Set<String> names(int[] ids)
+	{
+		Set<String> names = new HashSet<String>();
+		for (int id : ids)
+		{
+			names.add(hierarchy.getName(id));
+		}
+		return names;
+	}
+
+	@Test
+	public void test_subtypes()
+	{
+		assertEquals(new HashSet<String>(Arrays.asList("a.Base", "a.Impl", "b.Other")),
+				names(hierarchy.getSubtypes(hierarchy.getId("a.Service"))));
+		assertEquals(new HashSet<String>(Arrays.asList("a.Impl")), names(hierarchy.getSubtypes(hierarchy.getId("a.Base"))));
+		assertEquals(0, hierarchy.getSubtypes(hierarchy.getId("a.Impl")).length);
+	}
+
+	@Test
+	public void test_supertypes()
+	{
+		assertEquals(new HashSet<String>(Arrays.asList("a.Base", "a.Service", "java.lang.Object", "java.io.Serializable")),
+				names(hierarchy.getSupertypes(hierarchy.getId("a.Impl"))));
+	}
+
+	@Test
+	public void test_definitions()
+	{
+		int impl = hierarchy.getId("a.Impl");
+		assertEquals(2, hierarchy.getEntryNames(impl).length);
+		assertEquals(new HashSet<String>(Arrays.asList("one.jar", "two.jar")),
+				new HashSet<String>(Arrays.asList(hierarchy.getLocations(impl))));
+		assertEquals(0, hierarchy.getEntryNames(hierarchy.getId("java.lang.Object")).length);
+		assertEquals(-1, hierarchy.getId("c.Unknown"));
+
+		// Classes added after a query show up in the next one
+		hierarchy.add("c.Sub", "a.Impl", new String[0], "c/Sub.class", "three.jar");
+		assertTrue(names(hierarchy.getSubtypes(hierarchy.getId("a.Base"))).contains("c.Sub"));
+	}
+}
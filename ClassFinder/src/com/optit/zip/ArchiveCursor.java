@@ -0,0 +1,137 @@
+package com.optit.zip;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.optit.SearchableFileFilter;
+
+/**
+ * Cursor over the entries of an archive. Archives on disk and archives that
+ * are stored uncompressed within other archives are read through their
+ * {@link CentralDirectory}, compressed archives within archives are streamed
+ * by {@link StreamArchive}.
+ * <p>
+ * Entry names can be matched against raw UTF-8 bytes, Strings are only
+ * created on request.
+ */
+public abstract class ArchiveCursor
+{
+	private static final byte[][] ARCHIVE_SUFFIXES;
+	static
+	{
+		String[] extensions = SearchableFileFilter.ARCHIVE_EXTENSIONS;
+		ARCHIVE_SUFFIXES = new byte[extensions.length][];
+		for (int i = 0; i < extensions.length; i++)
+		{
+			ARCHIVE_SUFFIXES[i] = CentralDirectory.toBytes(extensions[i]);
+		}
+	}
+
+	/**
+	 * Moves the cursor to the next entry.
+	 * @return False if there are no more entries
+	 * @throws IOException If the archive can't be read
+	 */
+	public abstract boolean next() throws IOException;
+
+	/**
+	 * Checks whether the name of the current entry ends with the given bytes.
+	 * @param suffix The UTF-8 bytes, lower case if the case is ignored
+	 * @param ignoreCase Whether ASCII letters are compared case insensitive
+	 * @return True if the name ends with the suffix
+	 */
+	public abstract boolean nameEndsWith(byte[] suffix, boolean ignoreCase);
+
+	/**
+	 * Checks whether the name of the current entry equals the given bytes.
+	 * @param name The UTF-8 bytes, lower case if the case is ignored
+	 * @param ignoreCase Whether ASCII letters are compared case insensitive
+	 * @return True if the name is equal
+	 */
+	public abstract boolean nameEquals(byte[] name, boolean ignoreCase);
+
+	/**
+	 * @return The length in bytes of the current entry's name
+	 */
+	public abstract int getNameLength();
+
+	/**
+	 * @param index The index within the name, 0 to getNameLength() - 1
+	 * @return The raw UTF-8 byte of the current entry's name
+	 */
+	public abstract byte getNameByte(int index);
+
+	/**
+	 * @return The name of the current entry
+	 */
+	public abstract String getName();
+
+	/**
+	 * @return Whether the current entry is a directory
+	 */
+	public abstract boolean isDirectory();
+
+	/**
+	 * Opens the content of the current entry. The stream must be closed
+	 * before the cursor is moved on.
+	 * @return The uncompressed content
+	 * @throws IOException If the entry can't be read
+	 */
+	public abstract InputStream openEntry() throws IOException;
+
+	/**
+	 * Opens the archive stored in the current entry. The nested cursor must
+	 * be closed before this cursor is moved on.
+	 * @return A cursor over the nested archive
+	 * @throws IOException If the nested archive can't be read
+	 */
+	public abstract ArchiveCursor openNested() throws IOException;
+
+	/**
+	 * Identifies the content of the archive without reading all of it. Two
+	 * archives with the same fingerprint hold the same entries.
+	 * @return The fingerprint, null if it isn't known up front
+	 */
+	public abstract String getFingerprint();
+
+	/**
+	 * Releases the resources held by the cursor.
+	 * @throws IOException If closing fails
+	 */
+	public abstract void close() throws IOException;
+
+	/**
+	 * @return Whether the current entry is an archive itself (jar, war, ...)
+	 */
+	public boolean isArchive()
+	{
+		for (byte[] suffix : ARCHIVE_SUFFIXES)
+		{
+			if (nameEndsWith(suffix, false))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Compares a region of a byte array with the given bytes.
+	 */
+	static boolean regionMatches(byte[] buffer, int offset, byte[] bytes, boolean ignoreCase)
+	{
+		for (int i = bytes.length - 1; i >= 0; i--)
+		{
+			byte b = buffer[offset + i];
+			if (ignoreCase && b >= 'A' && b <= 'Z')
+			{
+				b += 'a' - 'A';
+			}
+			if (b != bytes[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,550 @@
+package com.optit.zip;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Reader for the central directory of a zip archive (jar, war, ear, ...).
+ * The end of the archive is memory mapped and the central directory records
+ * are parsed in place. Entry names are matched against raw bytes, so no
+ * objects are created for entries that don't match.
+ * <p>
+ * The directory is walked with a cursor:
+ * <pre>
+ * CentralDirectory cd = CentralDirectory.open(file);
+ * try {
+ *     while (cd.next())
+ *         if (cd.nameEndsWith(suffix, true))
+ *             ... cd.getName() ...
+ * } finally {
+ *     cd.close();
+ * }
+ * </pre>
+ * A CentralDirectory is not thread safe, every search thread reads its own.
+ */
+public class CentralDirectory extends ArchiveCursor
+{
+	private static final int END_SIG = 0x06054b50;
+	private static final int END_SIZE = 22;
+	private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+	private static final int ZIP64_LOCATOR_SIZE = 20;
+	private static final int ZIP64_END_SIG = 0x06064b50;
+	private static final int CEN_SIG = 0x02014b50;
+	private static final int CEN_SIZE = 46;
+	private static final int LOC_SIG = 0x04034b50;
+	private static final int LOC_SIZE = 30;
+	private static final int ZIP64_EXTRA_ID = 0x0001;
+	private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+	/** Compression methods */
+	public static final int STORED = 0;
+	public static final int DEFLATED = 8;
+
+	private final FileChannel channel;
+	// Set if the directory owns the file
+	private RandomAccessFile file;
+	private final ByteBuffer cen;
+	private final int entryCount;
+	// Offset of the archive start within the file: data in front of the
+	// archive (self extracting archives) or start of an embedded archive
+	private final long base;
+	private final long length;
+
+	// Cursor
+	private int entry = -1;
+	private int position = 0;
+	private int nameLength;
+	private int extraLength;
+
+	private CentralDirectory(FileChannel channel, ByteBuffer cen, int entryCount, long base, long length)
+	{
+		this.channel = channel;
+		this.cen = cen;
+		this.entryCount = entryCount;
+		this.base = base;
+		this.length = length;
+	}
+
+	/**
+	 * Opens an archive file and reads its central directory. The file stays
+	 * open for reading entries until the directory is closed.
+	 * @param file The archive
+	 * @return The central directory
+	 * @throws ZipException If the file isn't a zip archive
+	 * @throws IOException If the file can't be read
+	 */
+	public static CentralDirectory open(File file) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			CentralDirectory cd = read(channel, 0, channel.size());
+			cd.file = raf;
+			return cd;
+		}
+		catch (IOException e)
+		{
+			raf.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads the central directory of an archive that is stored within a
+	 * region of a file, e.g. a jar stored uncompressed within a war.
+	 * @param channel The file channel
+	 * @param start The start of the archive within the file
+	 * @param length The length of the archive
+	 * @return The central directory
+	 * @throws ZipException If the region isn't a zip archive
+	 * @throws IOException If the file can't be read
+	 */
+	public static CentralDirectory read(FileChannel channel, long start, long length) throws IOException
+	{
+		if (length < END_SIZE)
+		{
+			throw new ZipException("zip file is empty");
+		}
+
+		// The end record sits at the very end, followed by a comment of up to 64k
+		int tailLength = (int) Math.min(length, END_SIZE + 0xFFFF);
+		long tailStart = start + length - tailLength;
+		ByteBuffer tail = channel.map(FileChannel.MapMode.READ_ONLY, tailStart, tailLength);
+		tail.order(ByteOrder.LITTLE_ENDIAN);
+
+		int end = -1;
+		for (int i = tailLength - END_SIZE; i >= 0; i--)
+		{
+			if (tail.getInt(i) == END_SIG && i + END_SIZE + (tail.getShort(i + 20) & 0xFFFF) == tailLength)
+			{
+				end = i;
+				break;
+			}
+		}
+		if (end == -1)
+		{
+			throw new ZipException("zip END header not found");
+		}
+
+		long endPosition = tailStart + end;
+		long entryCount = tail.getShort(end + 10) & 0xFFFF;
+		long cenLength = tail.getInt(end + 12) & ZIP64_MAGIC;
+		long cenOffset = tail.getInt(end + 16) & ZIP64_MAGIC;
+
+		// Zip64 archives keep the real values in a record in front of the end record
+		if ((entryCount == 0xFFFF || cenLength == ZIP64_MAGIC || cenOffset == ZIP64_MAGIC)
+				&& end >= ZIP64_LOCATOR_SIZE && tail.getInt(end - ZIP64_LOCATOR_SIZE) == ZIP64_LOCATOR_SIG)
+		{
+			long zip64End = start + tail.getLong(end - ZIP64_LOCATOR_SIZE + 8);
+			ByteBuffer zip64 = channel.map(FileChannel.MapMode.READ_ONLY, zip64End, 56);
+			zip64.order(ByteOrder.LITTLE_ENDIAN);
+			if (zip64.getInt(0) != ZIP64_END_SIG)
+			{
+				throw new ZipException("invalid zip64 END header");
+			}
+			entryCount = zip64.getLong(32);
+			cenLength = zip64.getLong(40);
+			cenOffset = zip64.getLong(48);
+			endPosition = zip64End;
+		}
+
+		// Locate the directory relative to the end record, data in front of
+		// the archive would offset the recorded position
+		long cenPosition = endPosition - cenLength;
+		if (cenPosition < start || cenLength > Integer.MAX_VALUE || entryCount > Integer.MAX_VALUE)
+		{
+			throw new ZipException("invalid END header (bad central directory offset)");
+		}
+
+		ByteBuffer cen;
+		if (cenPosition >= tailStart)
+		{
+			// Small archive, the directory is already mapped
+			ByteBuffer slice = tail.duplicate();
+			slice.position((int) (cenPosition - tailStart));
+			slice.limit((int) (cenPosition - tailStart + cenLength));
+			cen = slice.slice();
+		}
+		else
+		{
+			cen = channel.map(FileChannel.MapMode.READ_ONLY, cenPosition, cenLength);
+		}
+		cen.order(ByteOrder.LITTLE_ENDIAN);
+
+		return new CentralDirectory(channel, cen, (int) entryCount, cenPosition - cenOffset, length);
+	}
+
+	/**
+	 * @return The number of entries in the archive
+	 */
+	public int size()
+	{
+		return entryCount;
+	}
+
+	/**
+	 * Moves the cursor to the next entry.
+	 * @return False if there are no more entries
+	 * @throws ZipException If the directory is corrupt
+	 */
+	@Override
+	public boolean next() throws ZipException
+	{
+		if (entry >= 0)
+		{
+			position += CEN_SIZE + nameLength + extraLength + (cen.getShort(position + 32) & 0xFFFF);
+		}
+		if (++entry >= entryCount)
+		{
+			return false;
+		}
+		if (position + CEN_SIZE > cen.limit() || cen.getInt(position) != CEN_SIG)
+		{
+			throw new ZipException("invalid CEN header (bad signature)");
+		}
+		nameLength = cen.getShort(position + 28) & 0xFFFF;
+		extraLength = cen.getShort(position + 30) & 0xFFFF;
+		if (position + CEN_SIZE + nameLength + extraLength > cen.limit())
+		{
+			throw new ZipException("invalid CEN header (bad header size)");
+		}
+		return true;
+	}
+
+	/**
+	 * Moves the cursor back in front of the first entry.
+	 */
+	public void reset()
+	{
+		entry = -1;
+		position = 0;
+	}
+
+	/**
+	 * The directory holds name, CRC and sizes of every entry, hashed together
+	 * with the length of the archive it identifies the content.
+	 */
+	@Override
+	public String getFingerprint()
+	{
+		// FNV-1a over 8 byte words
+		long hash = 0xcbf29ce484222325L;
+		int limit = cen.limit();
+		int i = 0;
+		for (; i + 8 <= limit; i += 8)
+		{
+			hash = (hash ^ cen.getLong(i)) * 0x100000001b3L;
+		}
+		for (; i < limit; i++)
+		{
+			hash = (hash ^ cen.get(i)) * 0x100000001b3L;
+		}
+		return "cen:" + length + ":" + Long.toHexString(hash);
+	}
+
+	/**
+	 * @return The buffer holding the raw directory, for matching names in place
+	 */
+	public ByteBuffer getBuffer()
+	{
+		return cen;
+	}
+
+	/**
+	 * @return The offset of the current entry's name within {@link #getBuffer()}
+	 */
+	public int getNameOffset()
+	{
+		return position + CEN_SIZE;
+	}
+
+	@Override
+	public int getNameLength()
+	{
+		return nameLength;
+	}
+
+	@Override
+	public byte getNameByte(int index)
+	{
+		return cen.get(getNameOffset() + index);
+	}
+
+	@Override
+	public boolean nameEndsWith(byte[] suffix, boolean ignoreCase)
+	{
+		if (suffix.length > nameLength)
+		{
+			return false;
+		}
+		return regionMatches(getNameOffset() + nameLength - suffix.length, suffix, ignoreCase);
+	}
+
+	@Override
+	public boolean nameEquals(byte[] name, boolean ignoreCase)
+	{
+		return name.length == nameLength && regionMatches(getNameOffset(), name, ignoreCase);
+	}
+
+	private boolean regionMatches(int offset, byte[] bytes, boolean ignoreCase)
+	{
+		for (int i = bytes.length - 1; i >= 0; i--)
+		{
+			byte b = cen.get(offset + i);
+			if (ignoreCase && b >= 'A' && b <= 'Z')
+			{
+				b += 'a' - 'A';
+			}
+			if (b != bytes[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String getName()
+	{
+		byte[] name = new byte[nameLength];
+		ByteBuffer slice = cen.duplicate();
+		slice.position(getNameOffset());
+		slice.get(name);
+		try
+		{
+			return new String(name, "UTF-8");
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			// UTF-8 is always supported
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Opens the content of the current entry. Stored entries are read
+	 * straight from the file, deflated ones are inflated on the fly.
+	 */
+	@Override
+	public InputStream openEntry() throws IOException
+	{
+		InputStream in = new ChannelInputStream(channel, getDataOffset(), getCompressedSize());
+		switch (getMethod())
+		{
+		case STORED:
+			return in;
+		case DEFLATED:
+			return new EntryInflaterInputStream(in, (int) Math.min(Math.max(getCompressedSize(), 64), 8192));
+		default:
+			in.close();
+			throw new ZipException("invalid compression method " + getMethod() + " of entry " + getName());
+		}
+	}
+
+	/**
+	 * Opens the archive stored in the current entry. An archive that is
+	 * stored uncompressed gets its central directory read in place, without
+	 * copying the archive. Compressed archives are streamed.
+	 */
+	@Override
+	public ArchiveCursor openNested() throws IOException
+	{
+		if (getMethod() == STORED)
+		{
+			return read(channel, getDataOffset(), getCompressedSize());
+		}
+		// A compressed archive can't be fingerprinted by its directory, the
+		// CRC of the entry identifies it
+		return new StreamArchive(openEntry(), "crc:" + getSize() + ":" + Long.toHexString(getCrc()));
+	}
+
+	/**
+	 * Closes the archive file if it got opened by {@link #open(File)}.
+	 * Directories of nested archives share the file with their parent.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (file != null)
+		{
+			file.close();
+			file = null;
+		}
+	}
+
+	/**
+	 * @return The position of the current entry's data within the file
+	 * @throws IOException If the local header can't be read
+	 */
+	private long getDataOffset() throws IOException
+	{
+		long offset = getLocalHeaderOffset();
+		ByteBuffer header = ByteBuffer.allocate(LOC_SIZE);
+		header.order(ByteOrder.LITTLE_ENDIAN);
+		while (header.hasRemaining())
+		{
+			if (channel.read(header, offset + header.position()) < 0)
+			{
+				throw new EOFException("Unexpected end of file reading " + getName());
+			}
+		}
+		if (header.getInt(0) != LOC_SIG)
+		{
+			throw new ZipException("invalid LOC header (bad signature) of entry " + getName());
+		}
+		// The local header has its own name and extra field lengths
+		return offset + LOC_SIZE + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+	}
+
+	/**
+	 * Encodes a String for matching against raw entry names.
+	 * @param value The String
+	 * @return The UTF-8 bytes
+	 */
+	public static byte[] toBytes(String value)
+	{
+		try
+		{
+			return value.getBytes("UTF-8");
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			// UTF-8 is always supported
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public boolean isDirectory()
+	{
+		return nameLength > 0 && cen.get(getNameOffset() + nameLength - 1) == '/';
+	}
+
+	/**
+	 * @return The compression method of the current entry
+	 */
+	public int getMethod()
+	{
+		return cen.getShort(position + 10) & 0xFFFF;
+	}
+
+	/**
+	 * @return The CRC-32 of the current entry's data
+	 */
+	public long getCrc()
+	{
+		return cen.getInt(position + 16) & ZIP64_MAGIC;
+	}
+
+	/**
+	 * @return The compressed size of the current entry
+	 */
+	public long getCompressedSize()
+	{
+		return getZip64Value(position + 20, 1);
+	}
+
+	/**
+	 * @return The uncompressed size of the current entry
+	 */
+	public long getSize()
+	{
+		return getZip64Value(position + 24, 0);
+	}
+
+	/**
+	 * @return The position of the current entry's local header, relative to
+	 *         the file the directory got read from
+	 */
+	public long getLocalHeaderOffset()
+	{
+		return base + getZip64Value(position + 42, 2);
+	}
+
+	/**
+	 * Reads a 32 bit size or offset field, taking the value from the zip64
+	 * extra field if it overflowed.
+	 * @param offset The offset of the 32 bit field
+	 * @param slot The index of the value within the zip64 extra field
+	 *        (0: size, 1: compressed size, 2: local header offset)
+	 */
+	private long getZip64Value(int offset, int slot)
+	{
+		long value = cen.getInt(offset) & ZIP64_MAGIC;
+		if (value != ZIP64_MAGIC)
+		{
+			return value;
+		}
+
+		// Values present in the extra field are the ones that overflowed, in order
+		int index = 0;
+		if (slot > 0 && (cen.getInt(position + 24) & ZIP64_MAGIC) == ZIP64_MAGIC)
+			index++;
+		if (slot > 1 && (cen.getInt(position + 20) & ZIP64_MAGIC) == ZIP64_MAGIC)
+			index++;
+
+		int extra = getNameOffset() + nameLength;
+		int extraEnd = extra + extraLength;
+		while (extra + 4 <= extraEnd)
+		{
+			int id = cen.getShort(extra) & 0xFFFF;
+			int size = cen.getShort(extra + 2) & 0xFFFF;
+			if (id == ZIP64_EXTRA_ID && 8 * (index + 1) <= size)
+			{
+				return cen.getLong(extra + 4 + 8 * index);
+			}
+			extra += 4 + size;
+		}
+		return value;
+	}
+
+	/**
+	 * Inflates raw deflate data through a bounded buffer and releases the
+	 * native inflater on close.
+	 */
+	private static class EntryInflaterInputStream extends InflaterInputStream
+	{
+		private boolean eof = false;
+
+		EntryInflaterInputStream(InputStream in, int size)
+		{
+			super(in, new Inflater(true), size);
+		}
+
+		@Override
+		protected void fill() throws IOException
+		{
+			if (eof)
+			{
+				throw new EOFException("Unexpected end of ZLIB input stream");
+			}
+			len = in.read(buf, 0, buf.length);
+			if (len == -1)
+			{
+				// The inflater may need one byte past the end of raw deflate data
+				buf[0] = 0;
+				len = 1;
+				eof = true;
+			}
+			inf.setInput(buf, 0, len);
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			inf.end();
+			super.close();
+		}
+	}
+}
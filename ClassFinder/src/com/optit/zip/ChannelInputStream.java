@@ -0,0 +1,110 @@
+package com.optit.zip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a region of a file with positional reads. The channel position isn't
+ * touched, so any number of these streams can read from one channel.
+ */
+class ChannelInputStream extends InputStream
+{
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private long position;
+	private long remaining;
+
+	/**
+	 * @param channel The file channel
+	 * @param start The start of the region
+	 * @param length The length of the region
+	 */
+	ChannelInputStream(FileChannel channel, long start, long length)
+	{
+		this.channel = channel;
+		this.position = start;
+		this.remaining = length;
+		this.buffer = ByteBuffer.allocate((int) Math.min(length, 8192));
+		this.buffer.flip();
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		if (!fill())
+		{
+			return -1;
+		}
+		return buffer.get() & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException
+	{
+		if (len == 0)
+		{
+			return 0;
+		}
+		if (!fill())
+		{
+			return -1;
+		}
+		len = Math.min(len, buffer.remaining());
+		buffer.get(b, off, len);
+		return len;
+	}
+
+	@Override
+	public long skip(long n)
+	{
+		long skipped = Math.min(n, buffer.remaining() + remaining);
+		if (skipped <= buffer.remaining())
+		{
+			buffer.position(buffer.position() + (int) skipped);
+		}
+		else
+		{
+			long fromFile = skipped - buffer.remaining();
+			buffer.position(buffer.limit());
+			position += fromFile;
+			remaining -= fromFile;
+		}
+		return skipped;
+	}
+
+	@Override
+	public int available()
+	{
+		return (int) Math.min(Integer.MAX_VALUE, buffer.remaining() + remaining);
+	}
+
+	private boolean fill() throws IOException
+	{
+		if (buffer.hasRemaining())
+		{
+			return true;
+		}
+		if (remaining <= 0)
+		{
+			return false;
+		}
+		buffer.clear();
+		if (remaining < buffer.capacity())
+		{
+			buffer.limit((int) remaining);
+		}
+		int read = channel.read(buffer, position);
+		buffer.flip();
+		if (read <= 0)
+		{
+			// Truncated file
+			remaining = 0;
+			return false;
+		}
+		position += read;
+		remaining -= read;
+		return true;
+	}
+}
@@ -0,0 +1,128 @@
+package com.optit.zip;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Cursor over an archive that can only be read front to back, e.g. a jar
+ * that is stored compressed within a war. The archive is inflated on the fly
+ * through the bounded buffers of the underlying streams, nothing gets
+ * extracted to disk.
+ */
+public class StreamArchive extends ArchiveCursor
+{
+	private final ZipInputStream in;
+	private final String fingerprint;
+	private ZipEntry entry;
+	private byte[] name;
+
+	/**
+	 * @param in The content of the archive
+	 */
+	public StreamArchive(InputStream in)
+	{
+		this(in, null);
+	}
+
+	/**
+	 * @param in The content of the archive
+	 * @param fingerprint Identifies the content, e.g. by the CRC of the entry
+	 *            holding the archive, or null
+	 */
+	public StreamArchive(InputStream in, String fingerprint)
+	{
+		this.in = new ZipInputStream(in);
+		this.fingerprint = fingerprint;
+	}
+
+	@Override
+	public boolean next() throws IOException
+	{
+		entry = in.getNextEntry();
+		if (entry == null)
+		{
+			name = null;
+			return false;
+		}
+		name = CentralDirectory.toBytes(entry.getName());
+		return true;
+	}
+
+	@Override
+	public boolean nameEndsWith(byte[] suffix, boolean ignoreCase)
+	{
+		return suffix.length <= name.length && regionMatches(name, name.length - suffix.length, suffix, ignoreCase);
+	}
+
+	@Override
+	public boolean nameEquals(byte[] bytes, boolean ignoreCase)
+	{
+		return bytes.length == name.length && regionMatches(name, 0, bytes, ignoreCase);
+	}
+
+	@Override
+	public int getNameLength()
+	{
+		return name.length;
+	}
+
+	@Override
+	public byte getNameByte(int index)
+	{
+		return name[index];
+	}
+
+	@Override
+	public String getName()
+	{
+		return entry.getName();
+	}
+
+	@Override
+	public boolean isDirectory()
+	{
+		return entry.isDirectory();
+	}
+
+	@Override
+	public InputStream openEntry()
+	{
+		// Closing the entry must not close the archive stream
+		return new FilterInputStream(in)
+		{
+			@Override
+			public void close()
+			{
+				// the archive stream stays open
+			}
+		};
+	}
+
+	@Override
+	public ArchiveCursor openNested()
+	{
+		// Sizes and CRC are only known up front if the entry header has
+		// them, not for entries followed by a data descriptor
+		String fingerprint = null;
+		if (entry.getCrc() != -1 && entry.getSize() != -1)
+		{
+			fingerprint = "crc:" + entry.getSize() + ":" + Long.toHexString(entry.getCrc());
+		}
+		return new StreamArchive(openEntry(), fingerprint);
+	}
+
+	@Override
+	public String getFingerprint()
+	{
+		return fingerprint;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		in.close();
+	}
+}
@@ -74,6 +74,21 @@ public abstract class Attribute {
 
         public Attribute createAttribute(ClassReader cr, int name_index, byte[] data)
                 throws IOException {
+            Attribute attr = createStandardAttribute(cr, name_index, data.length);
+            return attr != null ? attr : new DefaultAttribute(cr, name_index, data);
+        }
+
+        /**
+         * Creates the attribute from the body the class reader is limited to,
+         * copying the body only for a {@link DefaultAttribute}.
+         */
+        public Attribute createAttribute(ClassReader cr, int name_index, int length)
+                throws IOException {
+            Attribute attr = createStandardAttribute(cr, name_index, length);
+            return attr != null ? attr : new DefaultAttribute(cr, name_index, cr.readAttributeData(length));
+        }
+
+        private Attribute createStandardAttribute(ClassReader cr, int name_index, int length) {
             if (standardAttributes == null)
                 init();
 
@@ -85,7 +100,7 @@ public abstract class Attribute {
                     try {
                         Class<?>[] constrArgTypes = {ClassReader.class, int.class, int.class};
                         Constructor<? extends Attribute> constr = attrClass.getDeclaredConstructor(constrArgTypes);
-                        return constr.newInstance(new Object[] { cr, name_index, data.length });
+                        return constr.newInstance(new Object[] { cr, name_index, length });
                     } catch (Throwable t) {
                         // fall through and use DefaultAttribute
                         // t.printStackTrace();
@@ -94,7 +109,7 @@ public abstract class Attribute {
             } catch (ConstantPoolException e) {
                 // fall through and use DefaultAttribute
             }
-            return new DefaultAttribute(cr, name_index, data);
+            return null;
         }
 
         protected void init() {
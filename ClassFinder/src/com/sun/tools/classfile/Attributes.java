@@ -41,6 +41,10 @@ public class Attributes implements Iterable<Attribute> {
     Attributes(ClassReader cr) throws IOException {
         map = new HashMap<String,Attribute>();
         int attrs_count = cr.readUnsignedShort();
+        if (cr.isLazy()) {
+            attrs = readLazily(cr, attrs_count);
+            return;
+        }
         attrs = new Attribute[attrs_count];
         for (int i = 0; i < attrs_count; i++) {
             Attribute attr = Attribute.read(cr);
@@ -66,19 +70,89 @@ public class Attributes implements Iterable<Attribute> {
         }
     }
 
+    /**
+     * Remembers where the bodies of the retained attributes are and skips
+     * all attribute bodies.
+     * @return the slots for the retained attributes, filled on first access
+     */
+    private Attribute[] readLazily(ClassReader cr, int attrs_count) throws IOException {
+        ConstantPool constant_pool = cr.getConstantPool();
+        int count = 0;
+        for (int i = 0; i < attrs_count; i++) {
+            int name_index = cr.readUnsignedShort();
+            int length = cr.readInt();
+            String name;
+            try {
+                name = constant_pool.getUTF8Value(name_index);
+            } catch (ConstantPoolException e) {
+                name = null;
+            }
+            if (name == null || !cr.isRetained(name)) {
+                cr.skipFully(length);
+                continue;
+            }
+            if (pending_names == null) {
+                pending_names = new String[attrs_count - i];
+                pending_name_indexes = new int[attrs_count - i];
+                pending_offsets = new int[attrs_count - i];
+                pending_lengths = new int[attrs_count - i];
+            }
+            pending_names[count] = name;
+            pending_name_indexes[count] = name_index;
+            pending_offsets[count] = cr.getPosition();
+            pending_lengths[count] = length;
+            count++;
+            cr.skipFully(length);
+        }
+        reader = cr;
+        return new Attribute[count];
+    }
+
+    private Attribute create(int index) {
+        if (attrs[index] == null) {
+            try {
+                attrs[index] = reader.createAttribute(pending_name_indexes[index],
+                        pending_offsets[index], pending_lengths[index]);
+            } catch (IOException e) {
+                // the bodies were checked to be within the class file when skipped
+                throw new IllegalStateException(e);
+            }
+            map.put(pending_names[index], attrs[index]);
+        }
+        return attrs[index];
+    }
+
+    private void createAll() {
+        if (reader != null) {
+            for (int i = 0; i < attrs.length; i++)
+                create(i);
+        }
+    }
+
     public Iterator<Attribute> iterator() {
+        createAll();
         return Arrays.asList(attrs).iterator();
     }
 
     public Attribute get(int index) {
+        if (reader != null)
+            return create(index);
         return attrs[index];
     }
 
     public Attribute get(String name) {
+        if (reader != null) {
+            for (int i = 0; i < attrs.length; i++) {
+                if (pending_names[i].equals(name))
+                    return create(i);
+            }
+            return null;
+        }
         return map.get(name);
     }
 
     public int getIndex(ConstantPool constant_pool, String name) {
+        createAll();
         for (int i = 0; i < attrs.length; i++) {
             Attribute attr = attrs[i];
             try {
@@ -96,12 +170,24 @@ public class Attributes implements Iterable<Attribute> {
     }
 
     public int byteLength() {
+        createAll();
         int length = 2;
         for (Attribute a: attrs)
             length += a.byteLength();
         return length;
     }
 
+    /**
+     * When read lazily, holds only the retained attributes, each created on
+     * first access; {@link #map} then holds the ones created so far.
+     */
     public final Attribute[] attrs;
     public final Map<String, Attribute> map;
+
+    // set when read lazily
+    private ClassReader reader;
+    private String[] pending_names;
+    private int[] pending_name_indexes;
+    private int[] pending_offsets;
+    private int[] pending_lengths;
 }
@@ -29,6 +29,11 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 import static com.sun.tools.classfile.AccessFlags.*;
 
@@ -48,9 +53,69 @@ public class ClassFile {
 
     public static ClassFile read(File file, Attribute.Factory attributeFactory)
             throws IOException, ConstantPoolException {
+        return new ClassFile(readBuffer(file), attributeFactory, null);
+    }
+
+    public static ClassFile read(InputStream in)
+            throws IOException, ConstantPoolException {
+        return new ClassFile(in, new Attribute.Factory());
+    }
+
+    public static ClassFile read(InputStream in, Attribute.Factory attributeFactory)
+            throws IOException, ConstantPoolException {
+        return new ClassFile(in, attributeFactory);
+    }
+
+    /**
+     * Reads the class file from the position of the buffer up to its limit,
+     * without copying it. The position of the buffer is left untouched.
+     */
+    public static ClassFile read(ByteBuffer buffer)
+            throws IOException, ConstantPoolException {
+        return new ClassFile(buffer, new Attribute.Factory(), null);
+    }
+
+    /**
+     * Reads the constant pool and the field and method tables, but keeps
+     * only the named attributes and skips the bodies of all others, e.g.
+     * Code or LineNumberTable. The kept attributes are created on first
+     * access, see {@link Attributes#get(String)}.
+     */
+    public static ClassFile readLazily(InputStream in, String... attributeNames)
+            throws IOException, ConstantPoolException {
+        return readLazily(ClassReader.readAll(in), attributeNames);
+    }
+
+    /**
+     * Like {@link #readLazily(InputStream, String...)}, from the position of
+     * the buffer up to its limit. The kept attributes are created from the
+     * buffer, so it must not be reused while they are accessed.
+     */
+    public static ClassFile readLazily(ByteBuffer buffer, String... attributeNames)
+            throws IOException, ConstantPoolException {
+        Set<String> retained = new HashSet<String>(Arrays.asList(attributeNames));
+        return new ClassFile(buffer, new Attribute.Factory(), retained);
+    }
+
+    /**
+     * Reads a class file for {@link #read(ByteBuffer)}. Big class files
+     * get mapped into memory, smaller ones are cheaper to read than to map
+     * and unmap.
+     */
+    public static ByteBuffer readBuffer(File file) throws IOException {
         FileInputStream in = new FileInputStream(file);
         try {
-            return new ClassFile(in, attributeFactory);
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("class file too large: " + file);
+            if (size >= MAP_THRESHOLD)
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) != -1)
+                ;
+            buffer.flip();
+            return buffer;
         } finally {
             try {
                 in.close();
@@ -60,18 +125,15 @@ public class ClassFile {
         }
     }
 
-    public static ClassFile read(InputStream in)
-            throws IOException, ConstantPoolException {
-        return new ClassFile(in, new Attribute.Factory());
-    }
+    private static final int MAP_THRESHOLD = 64 * 1024;
 
-    public static ClassFile read(InputStream in, Attribute.Factory attributeFactory)
-            throws IOException, ConstantPoolException {
-        return new ClassFile(in, attributeFactory);
+    ClassFile(InputStream in, Attribute.Factory attributeFactory) throws IOException, ConstantPoolException {
+        this(ClassReader.readAll(in), attributeFactory, null);
     }
 
-    ClassFile(InputStream in, Attribute.Factory attributeFactory) throws IOException, ConstantPoolException {
-        ClassReader cr = new ClassReader(this, in, attributeFactory);
+    ClassFile(ByteBuffer buffer, Attribute.Factory attributeFactory, Set<String> retainedAttributes)
+            throws IOException, ConstantPoolException {
+        ClassReader cr = new ClassReader(this, buffer, attributeFactory, retainedAttributes);
         magic = cr.readInt();
         minor_version = cr.readUnsignedShort();
         major_version = cr.readUnsignedShort();
@@ -25,13 +25,20 @@
 
 package com.sun.tools.classfile;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Set;
 
 /**
+ * Reads the class file from a single {@link ByteBuffer}, heap, direct or
+ * memory-mapped, by position. An attribute is read by limiting the buffer
+ * to the attribute body instead of copying the body.
+ *
  *  <p><b>This is NOT part of any supported API.
  *  If you write code that depends on this, you do so at your own risk.
  *  This code and its internal interfaces are subject to change or
@@ -39,13 +46,41 @@ import java.io.InputStream;
  */
 public class ClassReader {
     ClassReader(ClassFile classFile, InputStream in, Attribute.Factory attributeFactory) throws IOException {
+        this(classFile, readAll(in), attributeFactory, null);
+    }
+
+    /**
+     * @param buffer the class file from its position up to its limit; the
+     *          position of the buffer is left untouched
+     * @param retainedAttributes the names of the attributes to keep when
+     *          reading lazily, or null to read all attributes eagerly
+     */
+    ClassReader(ClassFile classFile, ByteBuffer buffer, Attribute.Factory attributeFactory,
+            Set<String> retainedAttributes) {
         // null checks
         classFile.getClass();
         attributeFactory.getClass();
 
         this.classFile = classFile;
-        this.in = new DataInputStream(new BufferedInputStream(in));
+        this.buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
         this.attributeFactory = attributeFactory;
+        this.retainedAttributes = retainedAttributes;
+    }
+
+    /**
+     * Reads the stream up to its end, available() can't be relied on for
+     * the size of inflated content.
+     */
+    static ByteBuffer readAll(InputStream in) throws IOException {
+        byte[] bytes = new byte[Math.max(in.available(), 8192)];
+        int length = 0;
+        int read;
+        while ((read = in.read(bytes, length, bytes.length - length)) != -1) {
+            length += read;
+            if (length == bytes.length)
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        }
+        return ByteBuffer.wrap(bytes, 0, length);
     }
 
     ClassFile getClassFile() {
@@ -56,54 +91,184 @@ public class ClassReader {
         return classFile.constant_pool;
     }
 
+    boolean isLazy() {
+        return retainedAttributes != null;
+    }
+
+    boolean isRetained(String attributeName) {
+        return retainedAttributes.contains(attributeName);
+    }
+
+    /**
+     * @return the position of the next byte, for {@link #createAttribute}
+     */
+    int getPosition() {
+        return buffer.position();
+    }
+
     public Attribute readAttribute() throws IOException {
         int name_index = readUnsignedShort();
         int length = readInt();
-        byte[] data = new byte[length];
-        readFully(data);
+        int offset = buffer.position();
+        Attribute attr = createAttribute(name_index, offset, length);
+        buffer.position(offset + length);
+        return attr;
+    }
 
-        DataInputStream prev = in;
-        in = new DataInputStream(new ByteArrayInputStream(data));
+    /**
+     * Creates the attribute whose body starts at the offset, reading no
+     * further than the body.
+     */
+    Attribute createAttribute(int name_index, int offset, int length) throws IOException {
+        if (length < 0 || length > buffer.limit() - offset)
+            throw new EOFException();
+        int prevPosition = buffer.position();
+        int prevLimit = buffer.limit();
+        buffer.limit(offset + length).position(offset);
         try {
-            return attributeFactory.createAttribute(this, name_index, data);
+            return attributeFactory.createAttribute(this, name_index, length);
         } finally {
-            in = prev;
+            buffer.limit(prevLimit).position(prevPosition);
         }
     }
 
+    /**
+     * @return a copy of the body of the attribute being created
+     */
+    byte[] readAttributeData(int length) throws IOException {
+        buffer.position(buffer.limit() - length);
+        byte[] data = new byte[length];
+        readFully(data);
+        return data;
+    }
+
     public void readFully(byte[] b) throws IOException {
-        in.readFully(b);
+        require(b.length);
+        buffer.get(b);
+    }
+
+    public void skipFully(int n) throws IOException {
+        require(n);
+        buffer.position(buffer.position() + n);
     }
 
     public int readUnsignedByte() throws IOException {
-        return in.readUnsignedByte();
+        require(1);
+        return buffer.get() & 0xFF;
     }
 
     public int readUnsignedShort() throws IOException {
-        return in.readUnsignedShort();
+        require(2);
+        return buffer.getShort() & 0xFFFF;
     }
 
     public int readInt() throws IOException {
-        return in.readInt();
+        require(4);
+        return buffer.getInt();
     }
 
     public long readLong() throws IOException {
-        return in.readLong();
+        require(8);
+        return buffer.getLong();
     }
 
     public float readFloat() throws IOException {
-        return in.readFloat();
+        require(4);
+        return buffer.getFloat();
     }
 
     public double readDouble() throws IOException {
-        return in.readDouble();
+        require(8);
+        return buffer.getDouble();
     }
 
+    /**
+     * Decodes the modified UTF-8 of the JVMS, like DataInput.readUTF().
+     */
     public String readUTF() throws IOException {
-        return in.readUTF();
+        int length = readUnsignedShort();
+        require(length);
+        int offset = buffer.position();
+        buffer.position(offset + length);
+        return decodeUTF(buffer, offset, length);
+    }
+
+    /**
+     * Skips a modified UTF-8 string, checking that it can be decoded later.
+     */
+    public void skipUTF() throws IOException {
+        int length = readUnsignedShort();
+        require(length);
+        int offset = buffer.position();
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            int b = buffer.get(i++) & 0xFF;
+            if (b < 0x80) {
+                continue;
+            } else if ((b & 0xE0) == 0xC0) {
+                continuation(buffer, i++, end);
+            } else if ((b & 0xF0) == 0xE0) {
+                continuation(buffer, i++, end);
+                continuation(buffer, i++, end);
+            } else {
+                throw new UTFDataFormatException("malformed input around byte " + (i - 1 - offset));
+            }
+        }
+        buffer.position(end);
+    }
+
+    /**
+     * Decodes modified UTF-8 by absolute position, leaving the position of
+     * the buffer untouched.
+     */
+    static String decodeUTF(ByteBuffer buffer, int offset, int length) throws UTFDataFormatException {
+        int end = offset + length;
+        char[] chars = new char[length];
+        int count = 0;
+        int i = offset;
+        while (i < end) {
+            int b = buffer.get(i++) & 0xFF;
+            if (b < 0x80) {
+                chars[count++] = (char) b;
+            } else if ((b & 0xE0) == 0xC0) {
+                int b2 = continuation(buffer, i++, end);
+                chars[count++] = (char) (((b & 0x1F) << 6) | b2);
+            } else if ((b & 0xF0) == 0xE0) {
+                int b2 = continuation(buffer, i++, end);
+                int b3 = continuation(buffer, i++, end);
+                chars[count++] = (char) (((b & 0x0F) << 12) | (b2 << 6) | b3);
+            } else {
+                throw new UTFDataFormatException("malformed input around byte " + (i - 1 - offset));
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    private static int continuation(ByteBuffer buffer, int i, int end) throws UTFDataFormatException {
+        if (i >= end)
+            throw new UTFDataFormatException("malformed input: partial character at end");
+        int b = buffer.get(i) & 0xFF;
+        if ((b & 0xC0) != 0x80)
+            throw new UTFDataFormatException("malformed input around byte " + i);
+        return b & 0x3F;
+    }
+
+    /**
+     * @return a buffer over the whole class file for reading by absolute
+     *          position
+     */
+    ByteBuffer duplicateBuffer() {
+        return buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    private void require(int n) throws IOException {
+        if (n < 0 || buffer.remaining() < n)
+            throw new EOFException();
     }
 
-    private DataInputStream in;
+    private final ByteBuffer buffer;
     private ClassFile classFile;
     private Attribute.Factory attributeFactory;
+    private Set<String> retainedAttributes;
 }
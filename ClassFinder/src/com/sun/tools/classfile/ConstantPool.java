@@ -28,6 +28,9 @@ package com.sun.tools.classfile;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Iterator;
 
 /**
@@ -163,68 +166,50 @@ public class ConstantPool {
         }
     }
 
+    /**
+     * Only records the tag and position of each entry; the entries are
+     * created from the class bytes on first access and strings are decoded
+     * only then.
+     */
     ConstantPool(ClassReader cr) throws IOException, InvalidEntry {
         int count = cr.readUnsignedShort();
         pool = new CPInfo[count];
+        tags = new byte[count];
+        offsets = new int[count];
+        buffer = cr.duplicateBuffer();
         for (int i = 1; i < count; i++) {
             int tag = cr.readUnsignedByte();
+            tags[i] = (byte) tag;
+            offsets[i] = cr.getPosition();
             switch (tag) {
             case CONSTANT_Class:
-                pool[i] = new CONSTANT_Class_info(this, cr);
+            case CONSTANT_MethodType:
+            case CONSTANT_String:
+                cr.skipFully(2);
                 break;
 
-            case CONSTANT_Double:
-                pool[i] = new CONSTANT_Double_info(cr);
-                i++;
+            case CONSTANT_MethodHandle:
+                cr.skipFully(3);
                 break;
 
             case CONSTANT_Fieldref:
-                pool[i] = new CONSTANT_Fieldref_info(this, cr);
-                break;
-
             case CONSTANT_Float:
-                pool[i] = new CONSTANT_Float_info(cr);
-                break;
-
             case CONSTANT_Integer:
-                pool[i] = new CONSTANT_Integer_info(cr);
-                break;
-
             case CONSTANT_InterfaceMethodref:
-                pool[i] = new CONSTANT_InterfaceMethodref_info(this, cr);
-                break;
-
             case CONSTANT_InvokeDynamic:
-                pool[i] = new CONSTANT_InvokeDynamic_info(this, cr);
-                break;
-
-            case CONSTANT_Long:
-                pool[i] = new CONSTANT_Long_info(cr);
-                i++;
-                break;
-
-            case CONSTANT_MethodHandle:
-                pool[i] = new CONSTANT_MethodHandle_info(this, cr);
-                break;
-
-            case CONSTANT_MethodType:
-                pool[i] = new CONSTANT_MethodType_info(this, cr);
-                break;
-
             case CONSTANT_Methodref:
-                pool[i] = new CONSTANT_Methodref_info(this, cr);
-                break;
-
             case CONSTANT_NameAndType:
-                pool[i] = new CONSTANT_NameAndType_info(this, cr);
+                cr.skipFully(4);
                 break;
 
-            case CONSTANT_String:
-                pool[i] = new CONSTANT_String_info(this, cr);
+            case CONSTANT_Double:
+            case CONSTANT_Long:
+                cr.skipFully(8);
+                i++;
                 break;
 
             case CONSTANT_Utf8:
-                pool[i] = new CONSTANT_Utf8_info(cr);
+                cr.skipUTF();
                 break;
 
             default:
@@ -235,6 +220,60 @@ public class ConstantPool {
 
     public ConstantPool(CPInfo[] pool) {
         this.pool = pool;
+        this.tags = null;
+        this.offsets = null;
+        this.buffer = null;
+    }
+
+    /**
+     * Creates the entry from the class bytes. Only reads by absolute
+     * position, so entries can be created by several threads at once.
+     */
+    private CPInfo read(int index) {
+        int offset = offsets[index];
+        switch (tags[index]) {
+        case CONSTANT_Class:
+            return new CONSTANT_Class_info(this, u2(offset));
+        case CONSTANT_Double:
+            return new CONSTANT_Double_info(buffer.getDouble(offset));
+        case CONSTANT_Fieldref:
+            return new CONSTANT_Fieldref_info(this, u2(offset), u2(offset + 2));
+        case CONSTANT_Float:
+            return new CONSTANT_Float_info(buffer.getFloat(offset));
+        case CONSTANT_Integer:
+            return new CONSTANT_Integer_info(buffer.getInt(offset));
+        case CONSTANT_InterfaceMethodref:
+            return new CONSTANT_InterfaceMethodref_info(this, u2(offset), u2(offset + 2));
+        case CONSTANT_InvokeDynamic:
+            return new CONSTANT_InvokeDynamic_info(this, u2(offset), u2(offset + 2));
+        case CONSTANT_Long:
+            return new CONSTANT_Long_info(buffer.getLong(offset));
+        case CONSTANT_MethodHandle:
+            return new CONSTANT_MethodHandle_info(this,
+                    RefKind.getRefkind(buffer.get(offset) & 0xFF), u2(offset + 1));
+        case CONSTANT_MethodType:
+            return new CONSTANT_MethodType_info(this, u2(offset));
+        case CONSTANT_Methodref:
+            return new CONSTANT_Methodref_info(this, u2(offset), u2(offset + 2));
+        case CONSTANT_NameAndType:
+            return new CONSTANT_NameAndType_info(this, u2(offset), u2(offset + 2));
+        case CONSTANT_String:
+            return new CONSTANT_String_info(this, u2(offset));
+        case CONSTANT_Utf8:
+            try {
+                return new CONSTANT_Utf8_info(ClassReader.decodeUTF(buffer, offset + 2, u2(offset)));
+            } catch (UTFDataFormatException e) {
+                // checked when the entry was skipped
+                throw new IllegalStateException(e);
+            }
+        default:
+            // the "second half" of an 8 byte constant
+            return null;
+        }
+    }
+
+    private int u2(int offset) {
+        return buffer.getShort(offset) & 0xFFFF;
     }
 
     public int size() {
@@ -244,26 +283,38 @@ public class ConstantPool {
     public int byteLength() {
         int length = 2;
         for (int i = 1; i < size(); ) {
-            CPInfo cpInfo = pool[i];
+            CPInfo cpInfo = entry(i);
             length += cpInfo.byteLength();
             i += cpInfo.size();
         }
         return length;
     }
 
+    private CPInfo entry(int index) {
+        CPInfo info = pool[index];
+        if (info == null && tags != null) {
+            info = read(index);
+            pool[index] = info;
+        }
+        return info;
+    }
+
     public CPInfo get(int index) throws InvalidIndex {
         if (index <= 0 || index >= pool.length)
             throw new InvalidIndex(index);
-        CPInfo info = pool[index];
+        CPInfo info = entry(index);
         if (info == null) {
             // this occurs for indices referencing the "second half" of an
             // 8 byte constant, such as CONSTANT_Double or CONSTANT_Long
             throw new InvalidIndex(index);
         }
-        return pool[index];
+        return info;
     }
 
     private CPInfo get(int index, int expected_type) throws InvalidIndex, UnexpectedEntry {
+        if (tags != null && index > 0 && index < tags.length
+                && tags[index] != 0 && tags[index] != expected_type)
+            throw new UnexpectedEntry(index, expected_type, tags[index]);
         CPInfo info = get(index);
         if (info.getTag() != expected_type)
             throw new UnexpectedEntry(index, expected_type, info.getTag());
@@ -286,7 +337,40 @@ public class ConstantPool {
         return getUTF8Info(index).value;
     }
 
+    /**
+     * Compares a UTF-8 entry with the modified UTF-8 bytes of a value, see
+     * {@link #toModifiedUTF8(String)}, without decoding the entry.
+     */
+    public boolean equalsUTF8(int index, byte[] value) throws InvalidIndex, UnexpectedEntry {
+        if (index <= 0 || index >= pool.length)
+            throw new InvalidIndex(index);
+        if (tags == null || pool[index] != null)
+            return Arrays.equals(toModifiedUTF8(getUTF8Value(index)), value);
+        get(index, CONSTANT_Utf8);
+        return equalsUTF8At(index, value);
+    }
+
+    private boolean equalsUTF8At(int index, byte[] value) {
+        int offset = offsets[index];
+        if (u2(offset) != value.length)
+            return false;
+        offset += 2;
+        for (int i = 0; i < value.length; i++) {
+            if (buffer.get(offset + i) != value[i])
+                return false;
+        }
+        return true;
+    }
+
     public int getUTF8Index(String value) throws EntryNotFound {
+        if (tags != null) {
+            byte[] bytes = toModifiedUTF8(value);
+            for (int i = 1; i < pool.length; i++) {
+                if (tags[i] == CONSTANT_Utf8 && equalsUTF8At(i, bytes))
+                    return i;
+            }
+            throw new EntryNotFound(value);
+        }
         for (int i = 1; i < pool.length; i++) {
             CPInfo info = pool[i];
             if (info instanceof CONSTANT_Utf8_info &&
@@ -296,6 +380,33 @@ public class ConstantPool {
         throw new EntryNotFound(value);
     }
 
+    /**
+     * Encodes a string the way the class file stores it, see JVMS 4.4.7.
+     */
+    public static byte[] toModifiedUTF8(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            length += (c >= 0x0001 && c <= 0x007F) ? 1 : (c <= 0x07FF ? 2 : 3);
+        }
+        byte[] bytes = new byte[length];
+        int j = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                bytes[j++] = (byte) c;
+            } else if (c <= 0x07FF) {
+                bytes[j++] = (byte) (0xC0 | (c >> 6));
+                bytes[j++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                bytes[j++] = (byte) (0xE0 | (c >> 12));
+                bytes[j++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[j++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return bytes;
+    }
+
     public Iterable<CPInfo> entries() {
         return new Iterable<CPInfo>() {
             public Iterator<CPInfo> iterator() {
@@ -306,7 +417,7 @@ public class ConstantPool {
                     }
 
                     public CPInfo next() {
-                        current = pool[next];
+                        current = entry(next);
                         switch (current.getTag()) {
                             case CONSTANT_Double:
                             case CONSTANT_Long:
@@ -330,7 +441,12 @@ public class ConstantPool {
         };
     }
 
-    private CPInfo[] pool;
+    private final CPInfo[] pool;
+    // set when read from a class file: the tag and the position of the
+    // contents of each entry, the entries are created from the buffer
+    private final byte[] tags;
+    private final int[] offsets;
+    private final ByteBuffer buffer;
 
     public interface Visitor<R,P> {
         R visitClass(CONSTANT_Class_info info, P p);
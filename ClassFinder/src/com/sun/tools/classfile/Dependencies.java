@@ -24,13 +24,22 @@
  */
 package com.sun.tools.classfile;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Deque;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 
 import com.sun.tools.classfile.Dependency.Finder;
@@ -59,6 +68,10 @@ import static com.sun.tools.classfile.ConstantPool.*;
  *
  * Dependencies that are found may be passed to a {@link Dependencies.Recorder
  * recorder} so that the dependencies can be stored in a custom data structure.
+ *
+ * The dependencies found in the classes may optionally be remembered, see
+ * {@link #setCacheSize}, so that later searches with the same class file
+ * reader don't read the classes again.
  */
 public class Dependencies {
     /**
@@ -159,6 +172,34 @@ public class Dependencies {
     public void setFinder(Finder f) {
         f.getClass(); // null check
         finder = f;
+        clearCache();
+    }
+
+    /**
+     * Remember the dependencies found in up to the given number of classes,
+     * the least recently used are forgotten first. The cache only serves
+     * searches with the class file reader it was filled with, it is dropped
+     * when another reader is used, when a new finder is set or with
+     * {@link #clearCache}. By default nothing is remembered.
+     * @param maxClasses the number of classes to remember, 0 for none
+     */
+    public void setCacheSize(int maxClasses) {
+        if (maxClasses < 0)
+            throw new IllegalArgumentException("maxClasses: " + maxClasses);
+        synchronized (dependencyCache) {
+            cacheSize = maxClasses;
+            dependencyCache.clear();
+        }
+    }
+
+    /**
+     * Forget the dependencies found so far, e.g. when the class files have
+     * changed.
+     */
+    public void clearCache() {
+        synchronized (dependencyCache) {
+            dependencyCache.clear();
+        }
     }
 
     /**
@@ -270,38 +311,207 @@ public class Dependencies {
             ClassFileReader classFinder, Set<String> rootClassNames,
             boolean transitiveClosure, Recorder recorder)
             throws ClassFileNotFoundException {
-        Set<String> doneClasses = new HashSet<String>();
+        Set<String> doneClasses = new HashSet<String>(rootClassNames);
 
         getFinder();  // ensure initialized
         getFilter();  // ensure initialized
 
         // Work queue of names of classfiles to be searched.
-        // Entries will be unique, and for classes that do not yet have
-        // dependencies in the results map.
+        // Entries will be unique, they are marked done when queued.
         Deque<String> deque = new LinkedList<String>(rootClassNames);
 
         String className;
         while ((className = deque.poll()) != null) {
-            assert (!doneClasses.contains(className));
-            doneClasses.add(className);
-
-            ClassFile cf = classFinder.getClassFile(className);
-
             // The following code just applies the filter to the dependencies
             // followed for the transitive closure.
-            for (Dependency d: finder.findDependencies(cf)) {
+            for (Dependency d: getDependencies(classFinder, className)) {
                 recorder.addDependency(d);
                 if (transitiveClosure && filter.accepts(d)) {
                     String cn = d.getTarget().getClassName();
-                    if (!doneClasses.contains(cn))
+                    if (doneClasses.add(cn))
                         deque.add(cn);
                 }
             }
         }
     }
 
+    /**
+     * Find the dependencies of a class like
+     * {@link #findAllDependencies(ClassFileReader, Set, boolean, Recorder)},
+     * with several threads at once. Each class of the transitive closure is
+     * searched by the next free thread as soon as it is found, and the
+     * dependencies are passed to the recorder as they are found, in no
+     * particular order.
+     * The class file reader, the filter and the recorder are called by
+     * several threads at once and have to be thread safe.
+     * @param classFinder a finder to locate class files
+     * @param rootClassNames the names of the root classes from which to begin
+     *      searching
+     * @param transitiveClosure whether or not to also search those classes
+     *      named in any filtered dependencies that are found.
+     * @param recorder a recorder for handling the results
+     * @param threads the number of threads to search with
+     * @throws ClassFileNotFoundException if a required class file cannot be found
+     * @throws ClassFileError if an error occurs while processing a class file,
+     *      such as an error in the internal class file structure.
+     */
+    public void findAllDependencies(
+            ClassFileReader classFinder, Set<String> rootClassNames,
+            boolean transitiveClosure, Recorder recorder, int threads)
+            throws ClassFileNotFoundException {
+        getFinder();  // ensure initialized
+        getFilter();  // ensure initialized
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        ParallelSearch search = new ParallelSearch(executor, classFinder,
+                transitiveClosure, recorder);
+        try {
+            for (String className: rootClassNames)
+                search.submit(className);
+            search.await();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The state of a search with several threads.
+     */
+    private class ParallelSearch {
+        ParallelSearch(ExecutorService executor, ClassFileReader classFinder,
+                boolean transitiveClosure, Recorder recorder) {
+            this.executor = executor;
+            this.classFinder = classFinder;
+            this.transitiveClosure = transitiveClosure;
+            this.recorder = recorder;
+        }
+
+        /**
+         * Search a class unless it has been already.
+         */
+        void submit(final String className) {
+            if (doneClasses.putIfAbsent(className, Boolean.TRUE) != null)
+                return;
+            pending.incrementAndGet();
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        search(className);
+                    } catch (ClassFileNotFoundException e) {
+                        failure.compareAndSet(null, e);
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                    } catch (Error e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        if (pending.decrementAndGet() == 0)
+                            done.countDown();
+                    }
+                }
+            });
+        }
+
+        private void search(String className) throws ClassFileNotFoundException {
+            // Once a search failed, the pending ones only wind down
+            if (failure.get() != null)
+                return;
+            for (Dependency d: getDependencies(classFinder, className)) {
+                recorder.addDependency(d);
+                if (transitiveClosure && filter.accepts(d))
+                    submit(d.getTarget().getClassName());
+            }
+        }
+
+        /**
+         * Wait until all classes found are searched, or one of them failed.
+         */
+        void await() throws ClassFileNotFoundException {
+            // release the count held while the roots were submitted
+            if (pending.decrementAndGet() == 0)
+                done.countDown();
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ClassFileError(e);
+            }
+            Throwable t = failure.get();
+            if (t instanceof ClassFileNotFoundException)
+                throw (ClassFileNotFoundException) t;
+            if (t instanceof RuntimeException)
+                throw (RuntimeException) t;
+            if (t instanceof Error)
+                throw (Error) t;
+        }
+
+        private final ExecutorService executor;
+        private final ClassFileReader classFinder;
+        private final boolean transitiveClosure;
+        private final Recorder recorder;
+        private final ConcurrentMap<String,Boolean> doneClasses =
+                new ConcurrentHashMap<String,Boolean>();
+        // searches submitted but not finished yet, plus one until all roots
+        // are submitted, so that the search can't end in between
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final AtomicReference<Throwable> failure =
+                new AtomicReference<Throwable>();
+    }
+
+    /**
+     * Get the dependencies found by the finder in a class, reading the class
+     * only if it isn't cached for the reader.
+     */
+    private List<Dependency> getDependencies(ClassFileReader classFinder,
+            String className) throws ClassFileNotFoundException {
+        synchronized (dependencyCache) {
+            if (cacheSize > 0) {
+                if (cacheReader != classFinder) {
+                    dependencyCache.clear();
+                    cacheReader = classFinder;
+                }
+                List<Dependency> deps = dependencyCache.get(className);
+                if (deps != null)
+                    return deps;
+            }
+        }
+        // classes are read and parsed outside of the lock, by several
+        // threads at once
+        List<Dependency> deps = findDependencies(classFinder, className);
+        synchronized (dependencyCache) {
+            // the cache may have been cleared or handed to another reader
+            // in between
+            if (cacheSize > 0 && cacheReader == classFinder)
+                dependencyCache.put(className, deps);
+        }
+        return deps;
+    }
+
+    private List<Dependency> findDependencies(ClassFileReader classFinder,
+            String className) throws ClassFileNotFoundException {
+        ClassFile cf = classFinder.getClassFile(className);
+        List<Dependency> found = new ArrayList<Dependency>();
+        for (Dependency d: finder.findDependencies(cf))
+            found.add(d);
+        return Collections.unmodifiableList(found);
+    }
+
     private Filter filter;
     private Finder finder;
+    // the dependencies found in the classes searched with cacheReader, by
+    // class name in least recently used order; guards the cache fields
+    private final LinkedHashMap<String,List<Dependency>> dependencyCache =
+            new LinkedHashMap<String,List<Dependency>>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String,List<Dependency>> eldest) {
+                    return size() > cacheSize;
+                }
+            };
+    private int cacheSize;
+    private ClassFileReader cacheReader;
 
     /**
      * A location identifying a class.
@@ -532,12 +742,17 @@ public class Dependencies {
     }
 
     static abstract class BasicDependencyFinder implements Finder {
-        private Map<String,Location> locations = new HashMap<String,Location>();
+        // shared by the threads of a parallel search
+        private ConcurrentMap<String,Location> locations = new ConcurrentHashMap<String,Location>();
 
         Location getLocation(String className) {
             Location l = locations.get(className);
-            if (l == null)
-                locations.put(className, l = new SimpleLocation(className));
+            if (l == null) {
+                Location created = new SimpleLocation(className);
+                l = locations.putIfAbsent(className, created);
+                if (l == null)
+                    l = created;
+            }
             return l;
         }
 